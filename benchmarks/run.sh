@@ -0,0 +1,8 @@
+#!/usr/bin/env bash
+# Builds the benchmark jar and runs it with the GC profiler (allocation rate per op).
+# Extra arguments go to JMH, e.g. ./benchmarks/run.sh StorageFormatConverterBenchmark -f 1
+# After the first build has cached the dependencies, pass MAVEN_ARGS=-o to stay offline.
+set -euo pipefail
+cd "$(dirname "$0")"
+mvn -q ${MAVEN_ARGS:-} package
+java -jar target/benchmarks.jar -prof gc "$@"
@@ -0,0 +1,116 @@
+package com.rag.mcp.bench;
+
+import com.rag.mcp.confluence.StorageFormatConverter;
+import com.rag.mcp.model.ConfluencePage;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+// Deterministic synthetic Confluence content shaped like real spaces: storage-format pages with
+// headings, entity-heavy prose, nested lists, tables, code macros, links and inline macros; page
+// trees built from them; and long LLM answers in the format the prompt asks for.
+public final class Fixtures {
+    private static final String[] WORDS = {
+            "service", "latency", "deployment", "cluster", "gateway", "schema", "migration", "rollback",
+            "capacity", "incident", "review", "owner", "dependency", "region", "failover", "budget",
+            "throughput", "cache", "queue", "retention", "audit", "contract", "release", "monitoring"
+    };
+
+    private Fixtures() {
+    }
+
+    // A storage-format body of roughly targetChars characters.
+    public static String storagePage(int targetChars, long seed) {
+        Random random = new Random(seed);
+        StringBuilder page = new StringBuilder(targetChars + 4096);
+        int section = 0;
+        while (page.length() < targetChars) {
+            section++;
+            page.append("<h2>Section ").append(section).append(" &ndash; ").append(word(random)).append("</h2>");
+            for (int p = 0; p < 3; p++) {
+                page.append("<p>").append(sentence(random, 40)).append(" &amp; ").append(sentence(random, 20))
+                        .append("&nbsp;<strong>").append(word(random)).append("</strong> &#8212; see ")
+                        .append("<ac:link><ri:page ri:content-title=\"").append(word(random)).append(" overview\" /></ac:link>.</p>");
+            }
+            page.append("<ul>");
+            for (int i = 0; i < 5; i++) {
+                page.append("<li><p>").append(sentence(random, 12)).append("</p>");
+                if (i == 2) {
+                    page.append("<ol><li>").append(sentence(random, 6)).append("</li><li>")
+                            .append(sentence(random, 6)).append("</li></ol>");
+                }
+                page.append("</li>");
+            }
+            page.append("</ul><table><tbody><tr><th>Name</th><th>Owner</th><th>Status</th></tr>");
+            for (int r = 0; r < 6; r++) {
+                page.append("<tr><td><p>").append(word(random)).append("-").append(r).append("</p></td><td>")
+                        .append(word(random)).append("</td><td>&lt;").append(word(random)).append("&gt;</td></tr>");
+            }
+            page.append("</tbody></table>");
+            page.append("<ac:structured-macro ac:name=\"code\" ac:schema-version=\"1\">")
+                    .append("<ac:parameter ac:name=\"language\">java</ac:parameter><ac:plain-text-body><![CDATA[")
+                    .append("if (request.size() > limit) {\n    throw new IllegalStateException(\"")
+                    .append(word(random)).append("\");\n}\n]]></ac:plain-text-body></ac:structured-macro>");
+            page.append("<ac:structured-macro ac:name=\"info\"><ac:parameter ac:name=\"title\">Note</ac:parameter>")
+                    .append("<ac:rich-text-body><p>").append(sentence(random, 15)).append("</p></ac:rich-text-body>")
+                    .append("</ac:structured-macro>");
+        }
+        return page.toString();
+    }
+
+    // A page tree of the given size in crawl (breadth-first) order, up to 8 children per page and
+    // 2-12 KB of converted text per page. Titles are unique.
+    public static List<ConfluencePage> tree(int pages, long seed) {
+        Random random = new Random(seed);
+        List<ConfluencePage> tree = new ArrayList<>(pages);
+        for (int i = 0; i < pages; i++) {
+            String pageId = Integer.toString(100000 + i);
+            ConfluencePage parent = i == 0 ? null : tree.get((i - 1) / 8);
+            String title = "Page " + i + " " + word(random) + " " + word(random);
+            String content = StorageFormatConverter.toText(storagePage(2048 + random.nextInt(10240), seed + i));
+            tree.add(new ConfluencePage(pageId, title, parent == null ? null : parent.getPageId(),
+                    parent == null ? 0 : parent.getDepth() + 1,
+                    "https://example.atlassian.net/wiki/spaces/ENG/pages/" + pageId, content, 1 + random.nextInt(40)));
+        }
+        return tree;
+    }
+
+    // A Markdown answer of roughly targetChars characters following the prompt's response format,
+    // citing `citations` pages of the tree by title (plus one title that matches nothing).
+    public static String answer(List<ConfluencePage> pages, int citations, int targetChars, long seed) {
+        Random random = new Random(seed);
+        StringBuilder answer = new StringBuilder(targetChars + 1024);
+        answer.append("## Summary\n").append(sentence(random, 40)).append("\n\n## Key Findings\n");
+        while (answer.length() < targetChars / 3) {
+            answer.append("- ").append(sentence(random, 25)).append(" (see ")
+                    .append(pages.get(random.nextInt(pages.size())).getTitle()).append(")\n");
+        }
+        answer.append("\n## Details\n");
+        while (answer.length() < targetChars) {
+            answer.append("### ").append(word(random)).append("\n").append(sentence(random, 80)).append("\n\n");
+        }
+        answer.append("## Sources Referenced\n");
+        for (int i = 0; i < citations; i++) {
+            answer.append("- ").append(pages.get(random.nextInt(pages.size())).getTitle()).append("\n");
+        }
+        answer.append("- Retired runbook\n\n## Gaps & Limitations\nNone identified.\n");
+        return answer.toString();
+    }
+
+    public static String sentence(Random random, int words) {
+        StringBuilder sentence = new StringBuilder(words * 9);
+        for (int i = 0; i < words; i++) {
+            if (i > 0) {
+                sentence.append(' ');
+            }
+            sentence.append(word(random));
+        }
+        sentence.setCharAt(0, Character.toUpperCase(sentence.charAt(0)));
+        return sentence.append('.').toString();
+    }
+
+    public static String word(Random random) {
+        return WORDS[random.nextInt(WORDS.length)];
+    }
+}
@@ -0,0 +1,58 @@
+package com.rag.mcp.confluence;
+
+import com.rag.mcp.bench.Fixtures;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Pattern;
+
+// Single-pass converter against the previous regex pipeline it replaced, on pages from 16 KB to 4 MB.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StorageFormatConverterBenchmark {
+    private static final Pattern TAG_PATTERN = Pattern.compile("<[^>]+>");
+
+    @Param({"16384", "262144", "4194304"})
+    public int pageChars;
+
+    private String page;
+
+    @Setup
+    public void setUp() {
+        page = Fixtures.storagePage(pageChars, 42);
+    }
+
+    @Benchmark
+    public StorageFormatConverter.Result singlePass() {
+        return StorageFormatConverter.convert(page);
+    }
+
+    // What the crawl calls per page (converter plus the extractor's wrapping).
+    @Benchmark
+    public String toPlainText() {
+        return ConfluenceExtractorService.toPlainText(page);
+    }
+
+    @Benchmark
+    public String regexBaseline() {
+        String text = TAG_PATTERN.matcher(page).replaceAll(" ");
+        return text.replace("&nbsp;", " ")
+                .replace("&amp;", "&")
+                .replaceAll("\\s+", " ")
+                .trim();
+    }
+}
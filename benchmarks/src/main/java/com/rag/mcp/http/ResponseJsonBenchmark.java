@@ -0,0 +1,82 @@
+package com.rag.mcp.http;
+
+import com.rag.mcp.bench.Fixtures;
+import com.rag.mcp.model.ConfluencePage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.io.IOException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Jackson serialization of the two big responses: a query answer and an extract-only page dump.
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ResponseJsonBenchmark {
+    @Param({"200", "5000"})
+    public int treePages;
+
+    private Map<String, Object> queryResponse;
+    private Map<String, Object> extractResponse;
+
+    @Setup
+    public void setUp() {
+        List<ConfluencePage> tree = Fixtures.tree(treePages, 7);
+        List<Map<String, Object>> sources = tree.subList(0, 20).stream().map(page -> pageMap(page, false)).toList();
+
+        queryResponse = new LinkedHashMap<>();
+        queryResponse.put("status", "ok");
+        queryResponse.put("provider", "gemini");
+        queryResponse.put("cached", false);
+        queryResponse.put("rootPageUrls", List.of(tree.get(0).getSourceUrl()));
+        queryResponse.put("retrievedPageCount", tree.size());
+        queryResponse.put("contextPageCount", sources.size());
+        queryResponse.put("sources", sources);
+        queryResponse.put("answer", Fixtures.answer(tree, 20, 24_000, 11));
+
+        extractResponse = new LinkedHashMap<>();
+        extractResponse.put("status", "ok");
+        extractResponse.put("mode", "extract-only");
+        extractResponse.put("rootPageUrls", List.of(tree.get(0).getSourceUrl()));
+        extractResponse.put("retrievedPageCount", tree.size());
+        extractResponse.put("pages", tree.stream().map(page -> pageMap(page, true)).toList());
+    }
+
+    @Benchmark
+    public byte[] queryResponse() throws IOException {
+        return McpHttpServer.toJson(queryResponse);
+    }
+
+    @Benchmark
+    public byte[] extractResponse() throws IOException {
+        return McpHttpServer.toJson(extractResponse);
+    }
+
+    private static Map<String, Object> pageMap(ConfluencePage page, boolean withContent) {
+        Map<String, Object> pageData = new LinkedHashMap<>();
+        pageData.put("pageId", page.getPageId());
+        pageData.put("title", page.getTitle());
+        pageData.put("parentId", page.getParentId());
+        pageData.put("depth", page.getDepth());
+        pageData.put("sourceUrl", page.getSourceUrl());
+        if (withContent) {
+            pageData.put("content", page.getContent());
+        }
+        return pageData;
+    }
+}
@@ -0,0 +1,69 @@
+package com.rag.mcp.service;
+
+import com.rag.mcp.bench.Fixtures;
+import com.rag.mcp.model.ConfluencePage;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Prompt assembly for a packed context, and citation matching of a long answer against a whole tree
+// (extractReferencedSources includes building the matcher; matchCitations reuses one).
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class QueryOrchestratorBenchmark {
+    @Param({"200", "5000"})
+    public int treePages;
+
+    @Param({"20"})
+    public int contextPages;
+
+    private List<ConfluencePage> tree;
+    private List<PageExcerpt> excerpts;
+    private List<String> rootUrls;
+    private String answer;
+    private CitationMatcher matcher;
+
+    @Setup
+    public void setUp() {
+        tree = Fixtures.tree(treePages, 7);
+        excerpts = tree.subList(0, Math.min(contextPages, tree.size())).stream()
+                .map(page -> new PageExcerpt(page, page.getContent(), 0))
+                .toList();
+        rootUrls = List.of(tree.get(0).getSourceUrl());
+        answer = Fixtures.answer(tree, 25, 24_000, 11);
+        matcher = new CitationMatcher(tree);
+    }
+
+    @Benchmark
+    public String buildPrompt() {
+        return QueryOrchestrator.buildPrompt("What changed in the deployment process and who owns rollbacks?",
+                rootUrls, tree.size(), excerpts);
+    }
+
+    @Benchmark
+    public List<Map<String, Object>> extractReferencedSources() {
+        return QueryOrchestrator.extractReferencedSources(answer, tree);
+    }
+
+    // Matching alone, with the automaton built once for the page set.
+    @Benchmark
+    public List<ConfluencePage> matchCitations() {
+        return matcher.match(answer);
+    }
+}
@@ -1,10 +1,36 @@
 package com.rag.mcp;
 
+import com.rag.mcp.confluence.CachingConfluenceClient;
 import com.rag.mcp.confluence.ConfluenceClient;
 import com.rag.mcp.confluence.ConfluenceExtractorService;
+import com.rag.mcp.confluence.ConfluenceMirror;
+import com.rag.mcp.confluence.ConfluenceSyncService;
+import com.rag.mcp.confluence.CorpusStore;
+import com.rag.mcp.http.AdmissionLimiter;
 import com.rag.mcp.http.McpHttpServer;
+import com.rag.mcp.llm.HedgePolicy;
 import com.rag.mcp.llm.LlmProviderFactory;
+import com.rag.mcp.model.ProviderType;
+import com.rag.mcp.retrieval.Bm25Index;
+import com.rag.mcp.retrieval.ChunkVectorIndex;
+import com.rag.mcp.retrieval.ContextRetriever;
+import com.rag.mcp.retrieval.EmbeddingProvider;
+import com.rag.mcp.retrieval.GeminiEmbeddingProvider;
+import com.rag.mcp.retrieval.HashingEmbeddingProvider;
+import com.rag.mcp.retrieval.TextChunker;
+import com.rag.mcp.service.AnswerCache;
+import com.rag.mcp.service.MapReduceAnswerer;
+import com.rag.mcp.service.NearDuplicateDetector;
 import com.rag.mcp.service.QueryOrchestrator;
+import com.rag.mcp.util.ThreadPools;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
 
 public class App {
     public static void main(String[] args) throws Exception {
@@ -12,11 +38,155 @@ public class App {
         String email = requiredEnv("CONFLUENCE_EMAIL");
         String token = requiredEnv("CONFLUENCE_API_TOKEN");
         int port = Integer.parseInt(System.getenv().getOrDefault("PORT", "8080"));
+        int crawlParallelism = Integer.parseInt(System.getenv().getOrDefault("CONFLUENCE_CRAWL_PARALLELISM", "8"));
+
+        int cacheMaxPages = Integer.parseInt(System.getenv().getOrDefault("CONFLUENCE_CACHE_MAX_PAGES", "5000"));
+
+        ConfluenceClient.Throttling throttling = confluenceThrottling();
+        ConfluenceClient confluenceClient = cacheMaxPages > 0
+                ? new CachingConfluenceClient(baseUrl, email, token, cacheSettings(cacheMaxPages), throttling)
+                : new ConfluenceClient(baseUrl, email, token, throttling);
+        ConfluenceExtractorService.CrawlMode crawlMode = ConfluenceExtractorService.CrawlMode.from(
+                System.getenv().getOrDefault("CONFLUENCE_CRAWL_MODE", "tree"));
+        ConfluenceExtractorService extractorService = new ConfluenceExtractorService(confluenceClient, crawlParallelism, crawlMode);
+        ConfluenceSyncService syncService = syncService(confluenceClient, extractorService);
+        QueryOrchestrator orchestrator = new QueryOrchestrator(extractorService, new LlmProviderFactory(hedgePolicy()), syncService,
+                contextRetriever(), answerCache(), mapReduceAnswerer(), nearDuplicateDetector(),
+                Integer.parseInt(System.getenv().getOrDefault("BATCH_QUERY_CONCURRENCY", "8")));
+        new McpHttpServer(orchestrator, port, syncService, System.getenv("CONFLUENCE_WEBHOOK_SECRET"), httpExecutor(),
+                admissionLimits("QUERY", 16, 64), admissionLimits("EXTRACT", 8, 32)).start();
+        if (syncService != null) {
+            syncService.start();
+        }
+    }
+
+    private static ConfluenceSyncService syncService(ConfluenceClient confluenceClient,
+                                                     ConfluenceExtractorService extractorService) throws IOException {
+        String rootUrls = System.getenv().getOrDefault("CONFLUENCE_SYNC_ROOT_URLS", "");
+        if (rootUrls.isBlank()) {
+            return null;
+        }
+        List<String> rootPageIds = new ArrayList<>();
+        for (String rootUrl : rootUrls.split(",")) {
+            if (!rootUrl.isBlank()) {
+                rootPageIds.add(QueryOrchestrator.extractPageId(rootUrl.trim()));
+            }
+        }
+        long intervalSeconds = Long.parseLong(System.getenv().getOrDefault("CONFLUENCE_SYNC_INTERVAL_SECONDS", "300"));
+        int reconcileEvery = Integer.parseInt(System.getenv().getOrDefault("CONFLUENCE_SYNC_RECONCILE_EVERY", "12"));
+        String storeDir = System.getenv().getOrDefault("CORPUS_STORE_DIR", "");
+        ConfluenceMirror mirror = storeDir.isBlank() ? new ConfluenceMirror()
+                : new ConfluenceMirror(CorpusStore.open(Path.of(storeDir)));
+        return new ConfluenceSyncService(confluenceClient, extractorService, mirror, rootPageIds,
+                Duration.ofSeconds(intervalSeconds), reconcileEvery);
+    }
+
+    private static ContextRetriever contextRetriever() {
+        // BM25 needs no embedder, so top-k retrieval runs out of the box.
+        ContextRetriever.Mode mode = ContextRetriever.Mode.from(System.getenv().getOrDefault("RETRIEVAL_MODE", "bm25"));
+        if (mode == ContextRetriever.Mode.NONE) {
+            return null;
+        }
+        int topK = Integer.parseInt(System.getenv().getOrDefault("RETRIEVAL_TOP_K", "40"));
+        int maxPages = Integer.parseInt(System.getenv().getOrDefault("RETRIEVAL_MAX_PAGES", "20"));
+        int maxIndexedPages = Integer.parseInt(System.getenv().getOrDefault("RETRIEVAL_INDEX_MAX_PAGES", "50000"));
+        EmbeddingProvider embeddingProvider = switch (System.getenv().getOrDefault("EMBEDDING_PROVIDER", "hashing").trim().toLowerCase()) {
+            case "gemini" -> new GeminiEmbeddingProvider();
+            case "hashing" -> new HashingEmbeddingProvider();
+            default -> throw new IllegalStateException("Unknown EMBEDDING_PROVIDER: " + System.getenv("EMBEDDING_PROVIDER"));
+        };
+        // Hashed word features carry no meaning beyond shared words, so they rank worse than BM25.
+        if (embeddingProvider instanceof HashingEmbeddingProvider
+                && (mode == ContextRetriever.Mode.VECTOR || mode == ContextRetriever.Mode.HYBRID)) {
+            throw new IllegalStateException("RETRIEVAL_MODE=" + mode.name().toLowerCase()
+                    + " needs a semantic embedder: set EMBEDDING_PROVIDER=gemini or use RETRIEVAL_MODE=bm25");
+        }
+        return new ContextRetriever(new ChunkVectorIndex(embeddingProvider, new TextChunker()), new Bm25Index(),
+                mode, topK, maxPages, maxIndexedPages);
+    }
+
+    private static AnswerCache answerCache() {
+        int maxEntries = Integer.parseInt(System.getenv().getOrDefault("ANSWER_CACHE_MAX_ENTRIES", "1000"));
+        if (maxEntries <= 0) {
+            return null;
+        }
+        long maxMegabytes = Long.parseLong(System.getenv().getOrDefault("ANSWER_CACHE_MAX_MB", "32"));
+        long ttlMinutes = Long.parseLong(System.getenv().getOrDefault("ANSWER_CACHE_TTL_MINUTES", "1440"));
+        return new AnswerCache(maxEntries, maxMegabytes * 1024 * 1024, Duration.ofMinutes(ttlMinutes));
+    }
+
+    private static HedgePolicy hedgePolicy() {
+        List<ProviderType> fallbacks = new ArrayList<>();
+        for (String provider : System.getenv().getOrDefault("LLM_FALLBACK_PROVIDERS", "").split(",")) {
+            if (!provider.isBlank()) {
+                fallbacks.add(ProviderType.from(provider));
+            }
+        }
+        boolean hedge = Boolean.parseBoolean(System.getenv().getOrDefault("LLM_HEDGE", "true"));
+        long delayMillis = Long.parseLong(System.getenv().getOrDefault("LLM_HEDGE_DELAY_MS", "5000"));
+        double percentile = Double.parseDouble(System.getenv().getOrDefault("LLM_HEDGE_PERCENTILE", "95"));
+        return new HedgePolicy(fallbacks, hedge, Duration.ofMillis(delayMillis), percentile);
+    }
+
+    private static MapReduceAnswerer mapReduceAnswerer() {
+        int concurrency = Integer.parseInt(System.getenv().getOrDefault("MAP_REDUCE_CONCURRENCY", "4"));
+        if (concurrency <= 0) {
+            return null;
+        }
+        int maxEntries = Integer.parseInt(System.getenv().getOrDefault("MAP_REDUCE_CACHE_MAX_ENTRIES", "5000"));
+        long maxMegabytes = Long.parseLong(System.getenv().getOrDefault("MAP_REDUCE_CACHE_MAX_MB", "64"));
+        long ttlMinutes = Long.parseLong(System.getenv().getOrDefault("MAP_REDUCE_CACHE_TTL_MINUTES", "1440"));
+        return new MapReduceAnswerer(concurrency, maxEntries, maxMegabytes * 1024 * 1024, Duration.ofMinutes(ttlMinutes));
+    }
+
+    private static NearDuplicateDetector nearDuplicateDetector() {
+        double similarity = Double.parseDouble(System.getenv().getOrDefault("DEDUP_SIMILARITY", "0.8"));
+        if (similarity <= 0) {
+            return null;
+        }
+        int maxEntries = Integer.parseInt(System.getenv().getOrDefault("DEDUP_CACHE_MAX_ENTRIES", "20000"));
+        return new NearDuplicateDetector(Math.min(1, similarity), maxEntries);
+    }
+
+    private static Executor httpExecutor() {
+        String mode = System.getenv().getOrDefault("HTTP_EXECUTOR", "virtual").trim().toLowerCase();
+        return switch (mode) {
+            case "virtual" -> ThreadPools.perTaskExecutor("http");
+            case "fixed" -> Executors.newFixedThreadPool(
+                    Integer.parseInt(System.getenv().getOrDefault("HTTP_THREADS", "32")),
+                    ThreadPools.daemonThreadFactory("http"));
+            default -> throw new IllegalStateException("Unknown HTTP_EXECUTOR: " + mode);
+        };
+    }
+
+    private static AdmissionLimiter.Limits admissionLimits(String prefix, int defaultInFlight, int defaultQueued) {
+        int maxInFlight = Integer.parseInt(System.getenv().getOrDefault(prefix + "_MAX_IN_FLIGHT", String.valueOf(defaultInFlight)));
+        int maxQueued = Integer.parseInt(System.getenv().getOrDefault(prefix + "_MAX_QUEUED", String.valueOf(defaultQueued)));
+        long maxWaitSeconds = Long.parseLong(System.getenv().getOrDefault(prefix + "_QUEUE_TIMEOUT_SECONDS", "30"));
+        return new AdmissionLimiter.Limits(maxInFlight, maxQueued, Duration.ofSeconds(maxWaitSeconds));
+    }
+
+    private static ConfluenceClient.Throttling confluenceThrottling() {
+        int initialConcurrency = Integer.parseInt(System.getenv().getOrDefault("CONFLUENCE_INITIAL_CONCURRENCY", "4"));
+        int maxConcurrency = Integer.parseInt(System.getenv().getOrDefault("CONFLUENCE_MAX_CONCURRENCY", "16"));
+        long latencyTargetMillis = Long.parseLong(System.getenv().getOrDefault("CONFLUENCE_LATENCY_TARGET_MS", "2000"));
+        int maxRetries = Integer.parseInt(System.getenv().getOrDefault("CONFLUENCE_MAX_RETRIES", "4"));
+        long backoffMillis = Long.parseLong(System.getenv().getOrDefault("CONFLUENCE_RETRY_BACKOFF_MS", "250"));
+        long maxRetryWaitSeconds = Long.parseLong(System.getenv().getOrDefault("CONFLUENCE_MAX_RETRY_WAIT_SECONDS", "30"));
+        return new ConfluenceClient.Throttling(initialConcurrency, maxConcurrency, Duration.ofMillis(latencyTargetMillis),
+                maxRetries, Duration.ofMillis(backoffMillis), Duration.ofSeconds(maxRetryWaitSeconds));
+    }
 
-        ConfluenceClient confluenceClient = new ConfluenceClient(baseUrl, email, token);
-        ConfluenceExtractorService extractorService = new ConfluenceExtractorService(confluenceClient);
-        QueryOrchestrator orchestrator = new QueryOrchestrator(extractorService, new LlmProviderFactory());
-        new McpHttpServer(orchestrator, port).start();
+    private static CachingConfluenceClient.Settings cacheSettings(int maxPages) {
+        long maxMegabytes = Long.parseLong(System.getenv().getOrDefault("CONFLUENCE_CACHE_MAX_MB", "256"));
+        long ttlMinutes = Long.parseLong(System.getenv().getOrDefault("CONFLUENCE_CACHE_TTL_MINUTES", "60"));
+        long revalidateSeconds = Long.parseLong(System.getenv().getOrDefault("CONFLUENCE_CACHE_REVALIDATE_SECONDS", "30"));
+        return new CachingConfluenceClient.Settings(
+                maxPages,
+                maxMegabytes * 1024 * 1024,
+                Duration.ofMinutes(ttlMinutes),
+                Duration.ofSeconds(revalidateSeconds)
+        );
     }
 
     private static String requiredEnv(String key) {
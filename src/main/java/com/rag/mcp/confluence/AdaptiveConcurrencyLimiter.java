@@ -0,0 +1,180 @@
+package com.rag.mcp.confluence;
+
+import java.time.Duration;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
+
+// Client-side AIMD concurrency limit for calls to one server. Every fast success raises the limit
+// by 1/limit, which adds about one slot per round trip. A throttle (429/503) halves it, and so does
+// a dropped call (timeout, 502/504). Sustained latency above the target cuts it by 10%. Decreases
+// happen at most once per smoothed round trip, so one burst of failures counts once. A Retry-After
+// pauses all new calls until it has passed. Waiters queue in order; acquire never blocks a thread.
+final class AdaptiveConcurrencyLimiter {
+    enum Outcome { SUCCESS, THROTTLED, DROPPED, IGNORED }
+
+    private static final double MIN_LIMIT = 1;
+
+    private final double maxLimit;
+    private final long latencyTargetNanos;
+    private final ArrayDeque<CompletableFuture<Long>> waiters = new ArrayDeque<>();
+
+    private double limit;
+    private int inFlight;
+    private long pausedUntilNanos;
+    private boolean drainScheduled;
+    private long smoothedLatencyNanos;
+    private long lastDecreaseNanos;
+    private long throttled;
+    private long dropped;
+    private long slow;
+    private long granted;
+
+    AdaptiveConcurrencyLimiter(int initialLimit, int maxLimit, Duration latencyTarget) {
+        this.maxLimit = Math.max(MIN_LIMIT, maxLimit);
+        this.limit = Math.min(this.maxLimit, Math.max(MIN_LIMIT, initialLimit));
+        this.latencyTargetNanos = latencyTarget.toNanos();
+    }
+
+    // Completes with the start time to pass to release once a slot is free and no pause is active.
+    CompletableFuture<Long> acquire() {
+        synchronized (this) {
+            long now = System.nanoTime();
+            if (waiters.isEmpty() && canStart(now)) {
+                inFlight++;
+                granted++;
+                return CompletableFuture.completedFuture(now);
+            }
+            CompletableFuture<Long> waiter = new CompletableFuture<>();
+            waiters.add(waiter);
+            schedulePauseDrain(now);
+            return waiter;
+        }
+    }
+
+    // Runs call once a slot is granted, passing the start time for release; the call must release
+    // the slot itself. Cancelling the returned future gives up the slot even though a dependent's
+    // cancellation never reaches the waiter: whichever of the call and the cancellation claims the
+    // grant first decides whether the call runs or the slot is handed back unused.
+    <T> CompletableFuture<T> run(Function<Long, CompletableFuture<T>> call) {
+        CompletableFuture<Long> waiter = acquire();
+        AtomicBoolean claimed = new AtomicBoolean();
+        CompletableFuture<T> result = waiter.thenCompose(startedAt -> claimed.compareAndSet(false, true)
+                ? call.apply(startedAt) : CompletableFuture.failedFuture(new CancellationException()));
+        result.whenComplete((value, error) -> {
+            if (result.isCancelled() && !waiter.cancel(false) && claimed.compareAndSet(false, true)) {
+                release(waiter.join(), Outcome.IGNORED, null);
+            }
+        });
+        return result;
+    }
+
+    // retryAfter may be null; it only matters for THROTTLED.
+    void release(long startedAtNanos, Outcome outcome, Duration retryAfter) {
+        synchronized (this) {
+            inFlight--;
+            long now = System.nanoTime();
+            long latency = now - startedAtNanos;
+            switch (outcome) {
+                case SUCCESS -> {
+                    smoothedLatencyNanos = smoothedLatencyNanos == 0 ? latency
+                            : smoothedLatencyNanos + (latency - smoothedLatencyNanos) / 8;
+                    if (smoothedLatencyNanos > latencyTargetNanos) {
+                        if (decrease(now, 0.9)) {
+                            slow++;
+                        }
+                    } else {
+                        limit = Math.min(maxLimit, limit + 1 / limit);
+                    }
+                }
+                case THROTTLED -> {
+                    throttled++;
+                    decrease(now, 0.5);
+                    if (retryAfter != null && !retryAfter.isNegative()) {
+                        pausedUntilNanos = Math.max(pausedUntilNanos, now + retryAfter.toNanos());
+                    }
+                }
+                case DROPPED -> {
+                    dropped++;
+                    decrease(now, 0.5);
+                }
+                case IGNORED -> {
+                }
+            }
+        }
+        drain();
+    }
+
+    synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("limit", Math.round(limit * 100) / 100.0);
+        stats.put("maxLimit", (int) maxLimit);
+        stats.put("inFlight", inFlight);
+        stats.put("waiting", waiters.size());
+        stats.put("pausedForMs", Math.max(0, TimeUnit.NANOSECONDS.toMillis(pausedUntilNanos - System.nanoTime())));
+        stats.put("smoothedLatencyMs", TimeUnit.NANOSECONDS.toMillis(smoothedLatencyNanos));
+        stats.put("granted", granted);
+        stats.put("throttled", throttled);
+        stats.put("dropped", dropped);
+        stats.put("slowDecreases", slow);
+        return stats;
+    }
+
+    private boolean canStart(long now) {
+        return inFlight < (int) limit && now - pausedUntilNanos >= 0;
+    }
+
+    private boolean decrease(long now, double factor) {
+        if (lastDecreaseNanos != 0 && now - lastDecreaseNanos < Math.max(smoothedLatencyNanos, 1)) {
+            return false;
+        }
+        lastDecreaseNanos = now;
+        limit = Math.max(MIN_LIMIT, limit * factor);
+        return true;
+    }
+
+    private void drain() {
+        List<CompletableFuture<Long>> ready = new ArrayList<>();
+        long now;
+        synchronized (this) {
+            now = System.nanoTime();
+            while (!waiters.isEmpty() && canStart(now)) {
+                CompletableFuture<Long> waiter = waiters.poll();
+                // Waiters cancelled by their caller (see run) are skipped without taking a slot.
+                if (!waiter.isDone()) {
+                    inFlight++;
+                    granted++;
+                    ready.add(waiter);
+                }
+            }
+            schedulePauseDrain(now);
+        }
+        for (CompletableFuture<Long> waiter : ready) {
+            if (!waiter.complete(now)) {
+                release(now, Outcome.IGNORED, null);
+            }
+        }
+    }
+
+    // While paused nothing completes to trigger a drain, so one is scheduled for when the pause ends.
+    private void schedulePauseDrain(long now) {
+        long remaining = pausedUntilNanos - now;
+        if (remaining <= 0 || waiters.isEmpty() || drainScheduled) {
+            return;
+        }
+        drainScheduled = true;
+        CompletableFuture.runAsync(() -> {
+            synchronized (this) {
+                drainScheduled = false;
+            }
+            drain();
+        }, CompletableFuture.delayedExecutor(remaining, TimeUnit.NANOSECONDS));
+    }
+}
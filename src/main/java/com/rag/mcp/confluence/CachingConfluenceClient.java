@@ -0,0 +1,144 @@
+package com.rag.mcp.confluence;
+
+import com.rag.mcp.cache.BoundedCache;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+public class CachingConfluenceClient extends ConfluenceClient {
+    private static final long ENTRY_OVERHEAD_BYTES = 64;
+
+    private final BoundedCache<String, CachedPage> pageCache;
+    private final BoundedCache<String, List<ChildPageRef>> childrenCache;
+    private final long revalidateAfterNanos;
+    private final LongAdder revalidated = new LongAdder();
+    private final LongAdder refetched = new LongAdder();
+
+    public CachingConfluenceClient(String baseUrl, String email, String apiToken, Settings settings) {
+        this(baseUrl, email, apiToken, settings, Throttling.defaults());
+    }
+
+    public CachingConfluenceClient(String baseUrl, String email, String apiToken, Settings settings,
+                                   Throttling throttling) {
+        super(baseUrl, email, apiToken, throttling);
+        this.pageCache = new BoundedCache<>(settings.maxPages(), settings.maxBytes(), settings.ttl(),
+                cached -> weigh(cached.payload()));
+        // Child listings carry no version, so they are only trusted for the revalidation window.
+        this.childrenCache = new BoundedCache<>(settings.maxPages(), settings.maxBytes() / 8, settings.revalidateAfter(),
+                CachingConfluenceClient::weigh);
+        this.revalidateAfterNanos = settings.revalidateAfter().toNanos();
+    }
+
+    @Override
+    public PagePayload fetchPage(String pageId) throws Exception {
+        CachedPage cached = pageCache.get(pageId);
+        long now = System.nanoTime();
+        if (cached != null) {
+            if (now - cached.validatedAtNanos() < revalidateAfterNanos) {
+                return cached.payload();
+            }
+            if (cached.payload().version() > 0 && fetchPageVersion(pageId) == cached.payload().version()) {
+                revalidated.increment();
+                pageCache.put(pageId, new CachedPage(cached.payload(), now));
+                return cached.payload();
+            }
+            refetched.increment();
+        }
+
+        PagePayload payload = super.fetchPage(pageId);
+        pageCache.put(pageId, new CachedPage(payload, System.nanoTime()));
+        return payload;
+    }
+
+    // A listing carries each page's current version, so cached bodies at that version are reused
+    // without a revalidation call and only the rest are fetched.
+    @Override
+    public List<PagePayload> fetchBodies(List<PagePayload> listed) throws Exception {
+        long now = System.nanoTime();
+        Map<String, PagePayload> known = new HashMap<>();
+        List<PagePayload> missing = new ArrayList<>();
+        for (PagePayload page : listed) {
+            CachedPage cached = pageCache.get(page.pageId());
+            if (cached != null && page.version() > 0 && cached.payload().version() == page.version()) {
+                if (now - cached.validatedAtNanos() >= revalidateAfterNanos) {
+                    revalidated.increment();
+                    pageCache.put(page.pageId(), new CachedPage(cached.payload(), now));
+                }
+                known.put(page.pageId(), cached.payload());
+            } else {
+                if (cached != null) {
+                    refetched.increment();
+                }
+                missing.add(page);
+            }
+        }
+        for (PagePayload payload : super.fetchBodies(missing)) {
+            pageCache.put(payload.pageId(), new CachedPage(payload, now));
+            known.put(payload.pageId(), payload);
+        }
+
+        List<PagePayload> pages = new ArrayList<>(listed.size());
+        for (PagePayload page : listed) {
+            PagePayload payload = known.get(page.pageId());
+            if (payload != null) {
+                pages.add(payload);
+            }
+        }
+        return pages;
+    }
+
+    @Override
+    public List<ChildPageRef> fetchChildren(String parentId) throws Exception {
+        List<ChildPageRef> cached = childrenCache.get(parentId);
+        if (cached != null) {
+            return cached;
+        }
+        List<ChildPageRef> children = List.copyOf(super.fetchChildren(parentId));
+        childrenCache.put(parentId, children);
+        return children;
+    }
+
+    @Override
+    public void invalidate(String pageId) {
+        pageCache.invalidate(pageId);
+        childrenCache.invalidate(pageId);
+    }
+
+    @Override
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = super.stats();
+        Map<String, Object> pages = pageCache.stats();
+        pages.put("revalidated", revalidated.sum());
+        pages.put("refetched", refetched.sum());
+        stats.put("pageCache", pages);
+        stats.put("childrenCache", childrenCache.stats());
+        return stats;
+    }
+
+    private static long weigh(PagePayload payload) {
+        return ENTRY_OVERHEAD_BYTES + 2L * (length(payload.pageId()) + length(payload.title())
+                + length(payload.contentHtml()) + length(payload.sourceUrl()));
+    }
+
+    private static long weigh(List<ChildPageRef> children) {
+        long weight = ENTRY_OVERHEAD_BYTES;
+        for (ChildPageRef child : children) {
+            weight += ENTRY_OVERHEAD_BYTES + 2L * (length(child.pageId()) + length(child.title()) + length(child.parentId()));
+        }
+        return weight;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    public record Settings(int maxPages, long maxBytes, Duration ttl, Duration revalidateAfter) {
+    }
+
+    private record CachedPage(PagePayload payload, long validatedAtNanos) {
+    }
+}
@@ -1,8 +1,15 @@
 package com.rag.mcp.confluence;
 
-import com.fasterxml.jackson.databind.JsonNode;
-import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.rag.mcp.metrics.Metrics;
+import com.rag.mcp.util.CountingStreams;
+import com.rag.mcp.util.SingleFlight;
+import com.rag.mcp.util.ThreadPools;
 
+import java.io.IOException;
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URLEncoder;
 import java.net.http.HttpClient;
@@ -10,33 +17,72 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.ArrayList;
 import java.util.Base64;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.zip.GZIPInputStream;
 
+// Responses are requested gzipped and parsed as they stream in (see ConfluenceJson). The client
+// prefers HTTP/2, so concurrent calls to the same site share one multiplexed connection; servers
+// without it get HTTP/1.1.
 public class ConfluenceClient {
-    private static final ObjectMapper MAPPER = new ObjectMapper();
-    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(20)).build();
+    private static final JsonFactory JSON = new JsonFactory();
+    // Response bodies are read with blocking calls, so never on the HttpClient's own threads.
+    private static final ExecutorService BODY_READERS = ThreadPools.perTaskExecutor("confluence-body");
+    static final int BODY_BATCH_SIZE = 50;
+    private static final Duration REQUEST_TIMEOUT = Duration.ofSeconds(60);
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .connectTimeout(Duration.ofSeconds(20))
+            .build();
     private final String baseUrl;
     private final String authHeader;
+    private final LongAdder requests = new LongAdder();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder retriesExhausted = new LongAdder();
+    // Concurrent crawls of the same tree ask for the same URLs; identical GETs share one request.
+    // A URL always goes with the same reader, so every caller of a shared request gets its type.
+    private final SingleFlight<String, Object> inFlight = new SingleFlight<>();
+    private final AdaptiveConcurrencyLimiter limiter;
+    private final Throttling throttling;
+    private final Duration callTimeout;
 
     public ConfluenceClient(String baseUrl, String email, String apiToken) {
+        this(baseUrl, email, apiToken, Throttling.defaults());
+    }
+
+    public ConfluenceClient(String baseUrl, String email, String apiToken, Throttling throttling) {
         this.baseUrl = normalizeBaseUrl(baseUrl);
         String raw = email + ":" + apiToken;
         this.authHeader = "Basic " + Base64.getEncoder().encodeToString(raw.getBytes(StandardCharsets.UTF_8));
+        this.throttling = throttling;
+        this.limiter = new AdaptiveConcurrencyLimiter(throttling.initialConcurrency(), throttling.maxConcurrency(),
+                throttling.latencyTarget());
+        // Every attempt may take the full request timeout plus the longest retry wait; one more round
+        // covers time queued behind the limiter.
+        this.callTimeout = REQUEST_TIMEOUT.plus(throttling.maxRetryWait()).multipliedBy(throttling.maxRetries() + 2L);
     }
 
     public PagePayload fetchPage(String pageId) throws Exception {
         String url = baseUrl + "/wiki/rest/api/content/" + encode(pageId) + "?expand=body.storage,version";
-        JsonNode root = get(url);
-
-        String id = text(root, "id", pageId);
-        String title = text(root, "title", "Untitled");
-        String body = root.path("body").path("storage").path("value").asText("");
-        String webUi = root.path("_links").path("webui").asText("");
-        String sourceUrl = webUi.isBlank() ? baseUrl : baseUrl + webUi;
+        return get(url, ConfluenceJson.page(pageId, baseUrl));
+    }
 
-        return new PagePayload(id, title, body, sourceUrl);
+    public int fetchPageVersion(String pageId) throws Exception {
+        String url = baseUrl + "/wiki/rest/api/content/" + encode(pageId) + "?expand=version";
+        return get(url, ConfluenceJson.version());
     }
 
     public List<ChildPageRef> fetchChildren(String parentId) throws Exception {
@@ -46,22 +92,13 @@ public class ConfluenceClient {
 
         while (true) {
             String url = baseUrl + "/wiki/rest/api/content/" + encode(parentId) + "/child/page?limit=" + limit + "&start=" + start;
-            JsonNode root = get(url);
-            JsonNode results = root.path("results");
-            if (!results.isArray() || results.isEmpty()) {
+            ConfluenceJson.Listing<ChildPageRef> listing = get(url, ConfluenceJson.children(parentId));
+            if (listing.resultCount == 0) {
                 break;
             }
+            children.addAll(listing.items);
 
-            for (JsonNode result : results) {
-                String id = text(result, "id", null);
-                if (id == null || id.isBlank()) {
-                    continue;
-                }
-                String title = text(result, "title", "Untitled");
-                children.add(new ChildPageRef(id, title, parentId));
-            }
-
-            if (results.size() < limit) {
+            if (listing.resultCount < limit) {
                 break;
             }
             start += limit;
@@ -70,21 +107,215 @@ public class ConfluenceClient {
         return children;
     }
 
-    private JsonNode get(String url) throws Exception {
+    public List<SearchResult> searchPages(String cql, boolean includeBody) throws Exception {
+        List<SearchResult> pages = new ArrayList<>();
+        String expand = includeBody ? "body.storage,version,ancestors" : "version,ancestors";
+        String url = baseUrl + "/wiki/rest/api/content/search?cql=" + encode(cql) + "&limit=100&expand=" + expand;
+
+        while (url != null) {
+            ConfluenceJson.Listing<SearchResult> listing = get(url, ConfluenceJson.search(baseUrl));
+            if (listing.resultCount == 0) {
+                break;
+            }
+            pages.addAll(listing.items);
+
+            // Search is cursor-paginated; _links.next is relative to _links.base (the /wiki context).
+            String base = listing.base == null ? baseUrl + "/wiki" : listing.base;
+            url = listing.next.isBlank() ? null : base + listing.next;
+        }
+
+        return pages;
+    }
+
+    // Bodies for pages listed without them (e.g. by searchPages(cql, false)), fetched with CQL
+    // "id in (...)" in batches of BODY_BATCH_SIZE. Returned in the order given; pages deleted since
+    // the listing are left out. The listed versions let caching subclasses skip unchanged pages.
+    public List<PagePayload> fetchBodies(List<PagePayload> listed) throws Exception {
+        Map<String, PagePayload> fetched = new HashMap<>();
+        for (int from = 0; from < listed.size(); from += BODY_BATCH_SIZE) {
+            StringBuilder cql = new StringBuilder("id in (");
+            List<PagePayload> batch = listed.subList(from, Math.min(listed.size(), from + BODY_BATCH_SIZE));
+            for (int i = 0; i < batch.size(); i++) {
+                cql.append(i == 0 ? "" : ",").append(batch.get(i).pageId());
+            }
+            for (SearchResult result : searchPages(cql.append(')').toString(), true)) {
+                fetched.put(result.page().pageId(), result.page());
+            }
+        }
+        List<PagePayload> pages = new ArrayList<>(listed.size());
+        for (PagePayload page : listed) {
+            PagePayload withBody = fetched.get(page.pageId());
+            if (withBody != null) {
+                pages.add(withBody);
+            }
+        }
+        return pages;
+    }
+
+    // No-op here; caching subclasses drop their copy of the page and its child listing.
+    public void invalidate(String pageId) {
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("requests", requests.sum());
+        stats.put("retries", retries.sum());
+        stats.put("retriesExhausted", retriesExhausted.sum());
+        stats.put("rateLimit", limiter.stats());
+        stats.put("coalescing", inFlight.stats());
+        return stats;
+    }
+
+    @SuppressWarnings("unchecked")
+    private <T> T get(String url, ConfluenceJson.Reader<T> reader) throws Exception {
+        return (T) SingleFlight.await(inFlight.execute(url, () -> send(url, reader)), callTimeout);
+    }
+
+    private CompletableFuture<Object> send(String url, ConfluenceJson.Reader<?> reader) {
+        return attempt(url, reader, 0);
+    }
+
+    // Every call is a GET, so all of them are safe to retry: throttling (429/503), gateway errors
+    // (502/504) and I/O failures are retried up to maxRetries times with jittered backoff.
+    private CompletableFuture<Object> attempt(String url, ConfluenceJson.Reader<?> reader, int retry) {
         HttpRequest request = HttpRequest.newBuilder()
                 .uri(URI.create(url))
                 .header("Authorization", authHeader)
                 .header("Accept", "application/json")
-                .timeout(Duration.ofSeconds(60))
+                .header("Accept-Encoding", "gzip")
+                .timeout(REQUEST_TIMEOUT)
                 .GET()
                 .build();
 
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        long queuedAt = System.nanoTime();
+        return limiter.run(startedAt -> {
+            requests.increment();
+            Metrics.CONFLUENCE_QUEUE_WAIT.labels().recordNanos(startedAt - queuedAt);
+            Metrics.CONFLUENCE_IN_FLIGHT.labels().increment();
+            // The response arrives with its headers; the body is read and parsed on a reader thread,
+            // and the call counts as finished (for the limiter and metrics) once that is done.
+            return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofInputStream())
+                    .handleAsync((response, error) -> complete(url, reader, retry, startedAt, response, error),
+                            BODY_READERS)
+                    .thenCompose(result -> result);
+        });
+    }
+
+    private static void record(String url, long startedAt, String status) {
+        String operation = operation(url);
+        Metrics.CONFLUENCE_IN_FLIGHT.labels().decrement();
+        Metrics.CONFLUENCE_DURATION.labels(operation).recordNanos(System.nanoTime() - startedAt);
+        Metrics.CONFLUENCE_REQUESTS.labels(operation, status).increment();
+    }
+
+    // Metric label for a REST call, from the URLs built above.
+    private static String operation(String url) {
+        if (url.contains("/content/search")) {
+            return "search";
+        }
+        if (url.contains("/child/page")) {
+            return "children";
+        }
+        return url.contains("body.storage") ? "page" : "version";
+    }
+
+    // A body that breaks off mid-read fails like a dropped connection and is retried the same way;
+    // a body that is complete but not the JSON expected fails the call.
+    private CompletableFuture<Object> complete(String url, ConfluenceJson.Reader<?> reader, int retry, long startedAt,
+                                               HttpResponse<InputStream> response, Throwable error) {
+        if (error != null) {
+            Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+            record(url, startedAt, "error");
+            limiter.release(startedAt, AdaptiveConcurrencyLimiter.Outcome.DROPPED, null);
+            return retryOrFail(url, reader, retry, null, cause);
+        }
+
         int status = response.statusCode();
-        if (status < 200 || status >= 300) {
-            throw new IllegalStateException("Confluence request failed: " + status + " - " + response.body());
+        Object value = null;
+        String errorBody = null;
+        try (InputStream body = decode(response, Metrics.CONFLUENCE_RESPONSE_BYTES.labels(operation(url)))) {
+            if (status >= 200 && status < 300) {
+                try (JsonParser parser = JSON.createParser(body)) {
+                    value = reader.read(parser);
+                }
+            } else {
+                errorBody = new String(body.readAllBytes(), StandardCharsets.UTF_8);
+            }
+        } catch (JsonProcessingException ex) {
+            record(url, startedAt, Integer.toString(status));
+            limiter.release(startedAt, AdaptiveConcurrencyLimiter.Outcome.IGNORED, null);
+            return CompletableFuture.failedFuture(ex);
+        } catch (IOException ex) {
+            record(url, startedAt, "error");
+            limiter.release(startedAt, AdaptiveConcurrencyLimiter.Outcome.DROPPED, null);
+            return retryOrFail(url, reader, retry, null, ex);
+        }
+        record(url, startedAt, Integer.toString(status));
+
+        if (status >= 200 && status < 300) {
+            limiter.release(startedAt, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, null);
+            return CompletableFuture.completedFuture(value);
+        }
+
+        IllegalStateException failure = new IllegalStateException("Confluence request failed: " + status + " - " + errorBody);
+        if (status == 429 || status == 503) {
+            Duration retryAfter = retryAfter(response);
+            limiter.release(startedAt, AdaptiveConcurrencyLimiter.Outcome.THROTTLED, retryAfter);
+            return retryOrFail(url, reader, retry, retryAfter, failure);
+        }
+        if (status == 502 || status == 504) {
+            limiter.release(startedAt, AdaptiveConcurrencyLimiter.Outcome.DROPPED, null);
+            return retryOrFail(url, reader, retry, null, failure);
+        }
+        limiter.release(startedAt, AdaptiveConcurrencyLimiter.Outcome.IGNORED, null);
+        return CompletableFuture.failedFuture(failure);
+    }
+
+    // The body as sent counts toward wireBytes; gzip is undone on top of that.
+    private static InputStream decode(HttpResponse<InputStream> response, LongAdder wireBytes) throws IOException {
+        InputStream body = new CountingStreams.Input(response.body(), wireBytes);
+        boolean gzipped = response.headers().firstValue("Content-Encoding").orElse("").trim().equalsIgnoreCase("gzip");
+        return gzipped ? new GZIPInputStream(body, 16 * 1024) : body;
+    }
+
+    // The limiter already holds every new call until a Retry-After has passed; the jittered
+    // backoff on top spreads the retries out so they do not all land at once.
+    private CompletableFuture<Object> retryOrFail(String url, ConfluenceJson.Reader<?> reader, int retry,
+                                                  Duration retryAfter, Throwable failure) {
+        long maxWaitNanos = throttling.maxRetryWait().toNanos();
+        if (retry >= throttling.maxRetries() || (retryAfter != null && retryAfter.toNanos() > maxWaitNanos)) {
+            retriesExhausted.increment();
+            return CompletableFuture.failedFuture(failure);
+        }
+        retries.increment();
+        Metrics.CONFLUENCE_RETRIES.labels().increment();
+        long ceiling = Math.min(maxWaitNanos, throttling.baseBackoff().toNanos() << Math.min(retry, 20));
+        long delay = ceiling / 2 + ThreadLocalRandom.current().nextLong(ceiling / 2 + 1);
+        if (retryAfter != null) {
+            delay = Math.max(delay, retryAfter.toNanos());
+        }
+        return CompletableFuture.runAsync(() -> {
+                }, CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS))
+                .thenCompose(ignored -> attempt(url, reader, retry + 1));
+    }
+
+    // Retry-After is either delta-seconds or an HTTP date; null when absent or unparseable.
+    private static Duration retryAfter(HttpResponse<?> response) {
+        String value = response.headers().firstValue("Retry-After").orElse("").trim();
+        if (value.isEmpty()) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Math.max(0, Long.parseLong(value)));
+        } catch (NumberFormatException ignored) {
+            // Not delta-seconds; try the date form.
+        }
+        try {
+            Duration until = Duration.between(ZonedDateTime.now(), ZonedDateTime.parse(value, DateTimeFormatter.RFC_1123_DATE_TIME));
+            return until.isNegative() ? Duration.ZERO : until;
+        } catch (DateTimeParseException ignored) {
+            return null;
         }
-        return MAPPER.readTree(response.body());
     }
 
     private static String normalizeBaseUrl(String input) {
@@ -98,18 +329,30 @@ public class ConfluenceClient {
         return normalized;
     }
 
-    private static String text(JsonNode node, String field, String fallback) {
-        JsonNode value = node.path(field);
-        return value.isMissingNode() || value.isNull() ? fallback : value.asText(fallback);
-    }
-
     private static String encode(String value) {
         return URLEncoder.encode(value, StandardCharsets.UTF_8);
     }
 
-    public record PagePayload(String pageId, String title, String contentHtml, String sourceUrl) {
+    // Client-side limits for calls to Confluence: adaptive concurrency between 1 and maxConcurrency,
+    // calls slower than latencyTarget count as overload, and failed GETs are retried up to maxRetries
+    // times with jittered exponential backoff from baseBackoff, waiting at most maxRetryWait per retry.
+    public record Throttling(int initialConcurrency, int maxConcurrency, Duration latencyTarget,
+                             int maxRetries, Duration baseBackoff, Duration maxRetryWait) {
+        public static Throttling defaults() {
+            return new Throttling(4, 16, Duration.ofSeconds(2), 4, Duration.ofMillis(250), Duration.ofSeconds(30));
+        }
+    }
+
+    public record PagePayload(String pageId, String title, String contentHtml, String sourceUrl, int version) {
     }
 
     public record ChildPageRef(String pageId, String title, String parentId) {
     }
+
+    // ancestorIds are ordered from the space root down to the direct parent.
+    public record SearchResult(PagePayload page, List<String> ancestorIds) {
+        public String parentId() {
+            return ancestorIds.isEmpty() ? null : ancestorIds.get(ancestorIds.size() - 1);
+        }
+    }
 }
@@ -1,29 +1,110 @@
 package com.rag.mcp.confluence;
 
+import com.rag.mcp.metrics.Metrics;
 import com.rag.mcp.model.ConfluencePage;
+import com.rag.mcp.util.ThreadPools;
 
 import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.PriorityQueue;
 import java.util.Set;
-import java.util.regex.Pattern;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 
 public class ConfluenceExtractorService {
-    private static final Pattern TAG_PATTERN = Pattern.compile("<[^>]+>");
+    // Best-first: a child inherits this share of its parent's priority, so pages under a relevant
+    // page stay in play even when their own titles say little ("Overview", "Runbook").
+    private static final double INHERITED_RELEVANCE = 0.5;
+    // Best-first: once some title has matched, pages below this share of the best title score are
+    // not fetched, and neither is anything under them.
+    private static final double PRUNE_RATIO = 0.25;
+
     private final ConfluenceClient confluenceClient;
+    private final int parallelism;
+    private final Semaphore inFlight;
+    private final ExecutorService executor;
+    private final CrawlMode crawlMode;
+    private final LongAdder bestFirstCrawls = new LongAdder();
+    private final LongAdder bestFirstPruned = new LongAdder();
 
     public ConfluenceExtractorService(ConfluenceClient confluenceClient) {
+        this(confluenceClient, 1);
+    }
+
+    public ConfluenceExtractorService(ConfluenceClient confluenceClient, int parallelism) {
+        this(confluenceClient, parallelism, CrawlMode.TREE);
+    }
+
+    public ConfluenceExtractorService(ConfluenceClient confluenceClient, int parallelism, CrawlMode crawlMode) {
         this.confluenceClient = confluenceClient;
+        this.crawlMode = crawlMode;
+        this.parallelism = Math.max(1, parallelism);
+        this.inFlight = new Semaphore(this.parallelism);
+        this.executor = this.parallelism > 1 ? ThreadPools.perTaskExecutor("confluence-crawl") : null;
     }
 
     public List<ConfluencePage> fetchTree(String rootPageId, int maxDepth, int maxPages) throws Exception {
         List<ConfluencePage> pages = new ArrayList<>();
+        fetchTree(rootPageId, maxDepth, maxPages, pages::add);
+        return pages;
+    }
+
+    // Hands each page to onPage as soon as it is fetched, in crawl order, without keeping it; returns
+    // the page count. An exception thrown by onPage stops the crawl.
+    public int fetchTree(String rootPageId, int maxDepth, int maxPages, Consumer<ConfluencePage> onPage) throws Exception {
+        return fetchTree(rootPageId, maxDepth, maxPages, null, null, onPage);
+    }
+
+    // mode overrides the configured crawl mode when not null. query steers a best-first crawl; a
+    // best-first crawl without query terms has nothing to rank by and runs as a tree crawl.
+    public int fetchTree(String rootPageId, int maxDepth, int maxPages, CrawlMode mode, String query,
+                         Consumer<ConfluencePage> onPage) throws Exception {
+        CrawlMode effective = mode == null ? crawlMode : mode;
+        TitleRelevance relevance = new TitleRelevance(query);
+        if (effective == CrawlMode.BEST_FIRST && relevance.isEmpty()) {
+            effective = CrawlMode.TREE;
+        }
+        String label = effective.name().toLowerCase();
+        long startedAt = System.nanoTime();
+        try {
+            int fetched = crawl(effective, relevance, rootPageId, maxDepth, maxPages, onPage);
+            Metrics.CRAWL_PAGES.labels(label).add(fetched);
+            return fetched;
+        } finally {
+            Metrics.CRAWL_DURATION.labels(label).recordNanos(System.nanoTime() - startedAt);
+        }
+    }
+
+    private int crawl(CrawlMode mode, TitleRelevance relevance, String rootPageId, int maxDepth, int maxPages,
+                      Consumer<ConfluencePage> onPage) throws Exception {
+        if (mode == CrawlMode.BEST_FIRST) {
+            return fetchTreeBestFirst(relevance, rootPageId, maxDepth, maxPages, onPage);
+        }
+        if (mode == CrawlMode.BULK) {
+            return fetchTreeBulk(rootPageId, maxDepth, maxPages, onPage);
+        }
+        if (parallelism > 1) {
+            return fetchTreeConcurrently(rootPageId, maxDepth, maxPages, onPage);
+        }
+
+        int fetched = 0;
         Set<String> visited = new HashSet<>();
         ArrayDeque<TraversalNode> queue = new ArrayDeque<>();
         queue.add(new TraversalNode(rootPageId, null, 0));
 
-        while (!queue.isEmpty() && pages.size() < maxPages) {
+        while (!queue.isEmpty() && fetched < maxPages) {
             TraversalNode current = queue.poll();
             if (current.depth > maxDepth || visited.contains(current.pageId)) {
                 continue;
@@ -31,15 +112,8 @@ public class ConfluenceExtractorService {
             visited.add(current.pageId);
 
             ConfluenceClient.PagePayload pagePayload = confluenceClient.fetchPage(current.pageId);
-            String plainText = toPlainText(pagePayload.contentHtml());
-            pages.add(new ConfluencePage(
-                    pagePayload.pageId(),
-                    pagePayload.title(),
-                    current.parentId,
-                    current.depth,
-                    pagePayload.sourceUrl(),
-                    plainText
-            ));
+            onPage.accept(toPage(pagePayload, current));
+            fetched++;
 
             if (current.depth < maxDepth) {
                 List<ConfluenceClient.ChildPageRef> children = confluenceClient.fetchChildren(current.pageId);
@@ -51,20 +125,308 @@ public class ConfluenceExtractorService {
             }
         }
 
-        return pages;
+        return fetched;
+    }
+
+    // Level-synchronous BFS: every page of a level (and its child listing) is fetched in parallel,
+    // but results are consumed in queue order, so the output matches the sequential crawl exactly.
+    private int fetchTreeConcurrently(String rootPageId, int maxDepth, int maxPages,
+                                      Consumer<ConfluencePage> onPage) throws Exception {
+        int fetched = 0;
+        Set<String> visited = new HashSet<>();
+        List<TraversalNode> level = List.of(new TraversalNode(rootPageId, null, 0));
+
+        while (!level.isEmpty() && fetched < maxPages) {
+            List<TraversalNode> batch = new ArrayList<>();
+            for (TraversalNode node : level) {
+                if (fetched + batch.size() >= maxPages) {
+                    break;
+                }
+                if (node.depth <= maxDepth && visited.add(node.pageId)) {
+                    batch.add(node);
+                }
+            }
+
+            // Children are only needed if the budget is not exhausted by this level.
+            boolean expand = fetched + batch.size() < maxPages;
+            List<Future<ConfluenceClient.PagePayload>> pageFutures = new ArrayList<>(batch.size());
+            List<Future<List<ConfluenceClient.ChildPageRef>>> childFutures = new ArrayList<>(batch.size());
+            try {
+                for (TraversalNode node : batch) {
+                    pageFutures.add(submit(() -> confluenceClient.fetchPage(node.pageId)));
+                    childFutures.add(expand && node.depth < maxDepth
+                            ? submit(() -> confluenceClient.fetchChildren(node.pageId))
+                            : null);
+                }
+
+                List<TraversalNode> nextLevel = new ArrayList<>();
+                for (int i = 0; i < batch.size(); i++) {
+                    TraversalNode node = batch.get(i);
+                    onPage.accept(toPage(await(pageFutures.get(i)), node));
+                    fetched++;
+                    if (childFutures.get(i) == null) {
+                        continue;
+                    }
+                    for (ConfluenceClient.ChildPageRef child : await(childFutures.get(i))) {
+                        if (!visited.contains(child.pageId())) {
+                            nextLevel.add(new TraversalNode(child.pageId(), node.pageId, node.depth + 1));
+                        }
+                    }
+                }
+                level = nextLevel;
+            } catch (Exception ex) {
+                cancelAll(pageFutures);
+                cancelAll(childFutures);
+                throw ex;
+            }
+        }
+
+        return fetched;
+    }
+
+    // Two phases instead of a request or two per page. One paginated CQL "ancestor =" search lists
+    // the subtree with ancestors and versions, but no bodies. Parent links rebuild the tree, and a
+    // BFS over it applies maxDepth/maxPages exactly as the crawl does. Bodies of the selected pages
+    // then come in "id in (...)" batches. Siblings follow the search order (creation order), not
+    // the manual page order.
+    private int fetchTreeBulk(String rootPageId, int maxDepth, int maxPages, Consumer<ConfluencePage> onPage) throws Exception {
+        if (maxPages <= 0) {
+            return 0;
+        }
+        ConfluenceClient.PagePayload root = confluenceClient.fetchPage(rootPageId);
+        onPage.accept(toPage(root, new TraversalNode(rootPageId, null, 0)));
+        if (maxDepth == 0 || maxPages == 1) {
+            return 1;
+        }
+
+        Map<String, List<ConfluenceClient.PagePayload>> childrenByParent = new HashMap<>();
+        String cql = "ancestor = " + rootPageId + " and type = page order by created";
+        for (ConfluenceClient.SearchResult result : confluenceClient.searchPages(cql, false)) {
+            childrenByParent.computeIfAbsent(result.parentId(), key -> new ArrayList<>()).add(result.page());
+        }
+
+        List<ConfluenceClient.PagePayload> selected = new ArrayList<>();
+        List<TraversalNode> nodes = new ArrayList<>();
+        Set<String> visited = new HashSet<>();
+        visited.add(rootPageId);
+        ArrayDeque<TraversalNode> queue = new ArrayDeque<>();
+        queue.add(new TraversalNode(rootPageId, null, 0));
+        while (!queue.isEmpty() && selected.size() < maxPages - 1) {
+            TraversalNode parent = queue.poll();
+            if (parent.depth >= maxDepth) {
+                continue;
+            }
+            for (ConfluenceClient.PagePayload child : childrenByParent.getOrDefault(parent.pageId, List.of())) {
+                if (selected.size() >= maxPages - 1) {
+                    break;
+                }
+                if (visited.add(child.pageId())) {
+                    TraversalNode node = new TraversalNode(child.pageId(), parent.pageId, parent.depth + 1);
+                    selected.add(child);
+                    nodes.add(node);
+                    queue.add(node);
+                }
+            }
+        }
+
+        Map<String, TraversalNode> nodesById = new HashMap<>();
+        for (TraversalNode node : nodes) {
+            nodesById.put(node.pageId, node);
+        }
+
+        // Up to `parallelism` body batches are in flight ahead of the one being emitted, so pages
+        // still come out in BFS order and at most that many batches are held at once.
+        int batchSize = ConfluenceClient.BODY_BATCH_SIZE;
+        int batchCount = (selected.size() + batchSize - 1) / batchSize;
+        ArrayDeque<Future<List<ConfluenceClient.PagePayload>>> ahead = new ArrayDeque<>();
+        int fetched = 1;
+        int submitted = 0;
+        try {
+            for (int emitted = 0; emitted < batchCount; emitted++) {
+                while (submitted < batchCount && (ahead.isEmpty() || (executor != null && ahead.size() < parallelism))) {
+                    List<ConfluenceClient.PagePayload> batch = selected.subList(submitted * batchSize,
+                            Math.min(selected.size(), (submitted + 1) * batchSize));
+                    ahead.add(executor != null ? submit(() -> confluenceClient.fetchBodies(batch))
+                            : CompletableFuture.completedFuture(confluenceClient.fetchBodies(batch)));
+                    submitted++;
+                }
+                for (ConfluenceClient.PagePayload page : await(ahead.poll())) {
+                    onPage.accept(toPage(page, nodesById.get(page.pageId())));
+                    fetched++;
+                }
+            }
+        } catch (Exception ex) {
+            cancelAll(new ArrayList<>(ahead));
+            throw ex;
+        }
+        return fetched;
     }
 
-    private String toPlainText(String html) {
-        if (html == null || html.isBlank()) {
-            return "";
+    // Child titles are cheap next to bodies, so they decide what to fetch. Every fetched page has its
+    // children listed and scored against the query; the frontier is a priority queue on
+    // max(title score, INHERITED_RELEVANCE * parent priority), ties going to the shallower page and
+    // then to the one found first. Up to `parallelism` of the best pages are fetched at a time. Pages
+    // far below the best title score seen (see PRUNE_RATIO) are pruned with their subtrees, so the
+    // crawl can stop well short of maxPages. Until some title matches, it runs in BFS order.
+    private int fetchTreeBestFirst(TitleRelevance relevance, String rootPageId, int maxDepth, int maxPages,
+                                   Consumer<ConfluencePage> onPage) throws Exception {
+        bestFirstCrawls.increment();
+        PriorityQueue<Candidate> frontier = new PriorityQueue<>(Comparator
+                .comparingDouble(Candidate::priority).reversed()
+                .thenComparingInt(candidate -> candidate.node().depth)
+                .thenComparingLong(Candidate::sequence));
+        Set<String> seen = new HashSet<>();
+        seen.add(rootPageId);
+        frontier.add(new Candidate(new TraversalNode(rootPageId, null, 0), 0, 0));
+        long sequence = 1;
+        double bestScore = 0;
+        int fetched = 0;
+
+        while (!frontier.isEmpty() && fetched < maxPages) {
+            List<Candidate> batch = new ArrayList<>();
+            while (!frontier.isEmpty() && batch.size() < parallelism && fetched + batch.size() < maxPages) {
+                Candidate candidate = frontier.poll();
+                if (candidate.priority() < PRUNE_RATIO * bestScore) {
+                    // The queue is ordered and the bar only rises, so everything left is pruned too.
+                    bestFirstPruned.add(1 + frontier.size());
+                    frontier.clear();
+                    break;
+                }
+                batch.add(candidate);
+            }
+            if (batch.isEmpty()) {
+                break;
+            }
+
+            boolean expand = fetched + batch.size() < maxPages;
+            List<Future<ConfluenceClient.PagePayload>> pageFutures = new ArrayList<>(batch.size());
+            List<Future<List<ConfluenceClient.ChildPageRef>>> childFutures = new ArrayList<>(batch.size());
+            try {
+                for (Candidate candidate : batch) {
+                    TraversalNode node = candidate.node();
+                    pageFutures.add(executor != null ? submit(() -> confluenceClient.fetchPage(node.pageId))
+                            : CompletableFuture.completedFuture(confluenceClient.fetchPage(node.pageId)));
+                    if (!expand || node.depth >= maxDepth) {
+                        childFutures.add(null);
+                    } else {
+                        childFutures.add(executor != null ? submit(() -> confluenceClient.fetchChildren(node.pageId))
+                                : CompletableFuture.completedFuture(confluenceClient.fetchChildren(node.pageId)));
+                    }
+                }
+
+                for (int i = 0; i < batch.size(); i++) {
+                    Candidate candidate = batch.get(i);
+                    TraversalNode node = candidate.node();
+                    ConfluenceClient.PagePayload payload = await(pageFutures.get(i));
+                    onPage.accept(toPage(payload, node));
+                    fetched++;
+                    // The root is where the crawl starts, not evidence; its title only counts as
+                    // inherited relevance for its children.
+                    double inherited = INHERITED_RELEVANCE * (node.depth == 0 ? relevance.score(payload.title())
+                            : candidate.priority());
+                    if (childFutures.get(i) == null) {
+                        continue;
+                    }
+                    for (ConfluenceClient.ChildPageRef child : await(childFutures.get(i))) {
+                        if (seen.add(child.pageId())) {
+                            double score = relevance.score(child.title());
+                            bestScore = Math.max(bestScore, score);
+                            frontier.add(new Candidate(new TraversalNode(child.pageId(), node.pageId, node.depth + 1),
+                                    Math.max(score, inherited), sequence++));
+                        }
+                    }
+                }
+            } catch (Exception ex) {
+                cancelAll(pageFutures);
+                cancelAll(childFutures);
+                throw ex;
+            }
         }
-        String text = TAG_PATTERN.matcher(html).replaceAll(" ");
-        return text.replace("&nbsp;", " ")
-                .replace("&amp;", "&")
-                .replaceAll("\\s+", " ")
-                .trim();
+        return fetched;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = confluenceClient.stats();
+        stats.put("crawlParallelism", parallelism);
+        stats.put("crawlMode", crawlMode.name().toLowerCase());
+        Map<String, Object> bestFirst = new LinkedHashMap<>();
+        bestFirst.put("crawls", bestFirstCrawls.sum());
+        bestFirst.put("pagesPruned", bestFirstPruned.sum());
+        stats.put("bestFirst", bestFirst);
+        return stats;
+    }
+
+    private <T> Future<T> submit(Callable<T> task) {
+        return executor.submit(() -> {
+            inFlight.acquire();
+            try {
+                return task.call();
+            } finally {
+                inFlight.release();
+            }
+        });
+    }
+
+    private static <T> T await(Future<T> future) throws Exception {
+        try {
+            return future.get();
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw ex;
+        }
+    }
+
+    private static void cancelAll(List<? extends Future<?>> futures) {
+        for (Future<?> future : futures) {
+            if (future != null) {
+                future.cancel(true);
+            }
+        }
+    }
+
+    private ConfluencePage toPage(ConfluenceClient.PagePayload pagePayload, TraversalNode node) {
+        return new ConfluencePage(
+                pagePayload.pageId(),
+                pagePayload.title(),
+                node.parentId,
+                node.depth,
+                pagePayload.sourceUrl(),
+                toPlainText(pagePayload.contentHtml()),
+                pagePayload.version()
+        );
+    }
+
+    static String toPlainText(String html) {
+        long startedAt = System.nanoTime();
+        String text = StorageFormatConverter.toText(html);
+        Metrics.CONVERSION_DURATION.labels().recordNanos(System.nanoTime() - startedAt);
+        Metrics.CONVERSION_CHARS.labels().add(html == null ? 0 : html.length());
+        return text;
     }
 
     private record TraversalNode(String pageId, String parentId, int depth) {
     }
+
+    private record Candidate(TraversalNode node, double priority, long sequence) {
+    }
+
+    public enum CrawlMode {
+        // Child listing plus one page request per page, level by level.
+        TREE,
+        // Subtree listing via CQL, then bodies in batches.
+        BULK,
+        // Child listing, with the pages whose titles best match the query fetched first.
+        BEST_FIRST;
+
+        public static CrawlMode from(String value) {
+            try {
+                return CrawlMode.valueOf(value.trim().toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unknown crawl mode: " + value + " (expected tree, bulk or best_first)");
+            }
+        }
+    }
 }
@@ -0,0 +1,202 @@
+package com.rag.mcp.confluence;
+
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+// Reads the fields ConfluenceClient needs straight off Jackson's streaming parser and skips the
+// rest (expanded metadata, links, extensions), so a response never becomes a tree or a String.
+// Missing and null fields get the same fallbacks the client used with JsonNode.path().
+final class ConfluenceJson {
+    private ConfluenceJson() {
+    }
+
+    // Reads one response, positioned before its first token.
+    interface Reader<T> {
+        T read(JsonParser parser) throws IOException;
+    }
+
+    // GET /content/{id}?expand=body.storage,version
+    static Reader<ConfluenceClient.PagePayload> page(String fallbackId, String baseUrl) {
+        return parser -> {
+            parser.nextToken();
+            return readPage(parser, baseUrl).payload(fallbackId, baseUrl);
+        };
+    }
+
+    // GET /content/{id}?expand=version
+    static Reader<Integer> version() {
+        return parser -> {
+            parser.nextToken();
+            return readPage(parser, null).version;
+        };
+    }
+
+    // GET /content/{id}/child/page; resultCount includes results without an id, for paging.
+    static Reader<Listing<ConfluenceClient.ChildPageRef>> children(String parentId) {
+        return parser -> {
+            Listing<ConfluenceClient.ChildPageRef> listing = new Listing<>();
+            parser.nextToken();
+            fields(parser, root -> {
+                if (!root.equals("results")) {
+                    parser.skipChildren();
+                    return;
+                }
+                elements(parser, () -> {
+                    listing.resultCount++;
+                    PageFields page = readPage(parser, null);
+                    if (page.id != null && !page.id.isBlank()) {
+                        listing.items.add(new ConfluenceClient.ChildPageRef(page.id,
+                                page.title == null ? "Untitled" : page.title, parentId));
+                    }
+                });
+            });
+            return listing;
+        };
+    }
+
+    // GET /content/search with ancestors (and bodies when expanded), plus the cursor links.
+    static Reader<Listing<ConfluenceClient.SearchResult>> search(String baseUrl) {
+        return parser -> {
+            Listing<ConfluenceClient.SearchResult> listing = new Listing<>();
+            parser.nextToken();
+            fields(parser, root -> {
+                switch (root) {
+                    case "results" -> elements(parser, () -> {
+                        listing.resultCount++;
+                        PageFields page = readPage(parser, baseUrl);
+                        if (page.id != null && !page.id.isBlank()) {
+                            listing.items.add(new ConfluenceClient.SearchResult(page.payload(page.id, baseUrl),
+                                    page.ancestorIds));
+                        }
+                    });
+                    case "_links" -> fields(parser, link -> {
+                        switch (link) {
+                            case "next" -> listing.next = scalar(parser, "");
+                            case "base" -> listing.base = scalar(parser, null);
+                            default -> parser.skipChildren();
+                        }
+                    });
+                    default -> parser.skipChildren();
+                }
+            });
+            return listing;
+        };
+    }
+
+    // Reads the content object the parser is on and leaves the parser on its END_OBJECT.
+    private static PageFields readPage(JsonParser parser, String baseUrl) throws IOException {
+        PageFields page = new PageFields();
+        fields(parser, field -> {
+            switch (field) {
+                case "id" -> page.id = scalar(parser, null);
+                case "title" -> page.title = scalar(parser, null);
+                case "version" -> fields(parser, version -> {
+                    if (version.equals("number")) {
+                        page.version = parser.currentToken().isScalarValue() ? parser.getValueAsInt(0) : 0;
+                    }
+                    parser.skipChildren();
+                });
+                case "body" -> fields(parser, body -> {
+                    if (body.equals("storage")) {
+                        fields(parser, storage -> {
+                            if (storage.equals("value")) {
+                                page.body = scalar(parser, "");
+                            } else {
+                                parser.skipChildren();
+                            }
+                        });
+                    } else {
+                        parser.skipChildren();
+                    }
+                });
+                case "_links" -> fields(parser, link -> {
+                    if (link.equals("webui")) {
+                        page.webUi = scalar(parser, "");
+                    } else {
+                        parser.skipChildren();
+                    }
+                });
+                case "ancestors" -> elements(parser, () -> {
+                    PageFields ancestor = readPage(parser, baseUrl);
+                    if (ancestor.id != null) {
+                        page.ancestorIds.add(ancestor.id);
+                    }
+                });
+                default -> parser.skipChildren();
+            }
+        });
+        return page;
+    }
+
+    // Calls onField for each field of the object the parser is on, with the parser on the field's
+    // value; onField must consume that value. Anything other than an object is skipped.
+    private static void fields(JsonParser parser, FieldHandler onField) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            parser.nextToken();
+            onField.handle(name);
+        }
+    }
+
+    // Calls onElement for each element of the array the parser is on, with the parser on the element.
+    private static void elements(JsonParser parser, ElementHandler onElement) throws IOException {
+        if (parser.currentToken() != JsonToken.START_ARRAY) {
+            parser.skipChildren();
+            return;
+        }
+        while (parser.nextToken() != JsonToken.END_ARRAY) {
+            if (parser.currentToken() == null) {
+                throw new IOException("Unexpected end of Confluence response");
+            }
+            onElement.handle();
+            parser.skipChildren();
+        }
+    }
+
+    private static String scalar(JsonParser parser, String fallback) throws IOException {
+        JsonToken token = parser.currentToken();
+        if (token == JsonToken.VALUE_NULL || token == null || !token.isScalarValue()) {
+            parser.skipChildren();
+            return fallback;
+        }
+        return parser.getText();
+    }
+
+    private interface FieldHandler {
+        void handle(String name) throws IOException;
+    }
+
+    private interface ElementHandler {
+        void handle() throws IOException;
+    }
+
+    static final class Listing<T> {
+        final List<T> items = new ArrayList<>();
+        int resultCount;
+        String next = "";
+        String base;
+    }
+
+    private static final class PageFields {
+        String id;
+        String title;
+        String body = "";
+        String webUi = "";
+        int version;
+        final List<String> ancestorIds = new ArrayList<>();
+
+        ConfluenceClient.PagePayload payload(String fallbackId, String baseUrl) {
+            String sourceUrl = webUi.isBlank() ? baseUrl : baseUrl + webUi;
+            return new ConfluenceClient.PagePayload(id == null ? fallbackId : id, title == null ? "Untitled" : title,
+                    body, sourceUrl, version);
+        }
+    }
+}
@@ -0,0 +1,342 @@
+package com.rag.mcp.confluence;
+
+import com.rag.mcp.model.ConfluencePage;
+import com.rag.mcp.model.PageContent;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Instant;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory copy of the synced page trees. Depth and parentId of returned pages are
+// computed relative to the requested root, exactly like a live fetchTree. With a CorpusStore,
+// every change is written through to it, page texts are held only by the store, and the
+// mirror starts out with whatever the store kept from the last run.
+public class ConfluenceMirror {
+    private static final LinkedHashSet<String> EMPTY = new LinkedHashSet<>();
+    private final CorpusStore store;
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, MirroredPage> pages = new HashMap<>();
+    private final Map<String, LinkedHashSet<String>> children = new HashMap<>();
+    private final Set<String> roots = new LinkedHashSet<>();
+    private volatile Instant lastSyncedAt;
+
+    public ConfluenceMirror() {
+        this.store = null;
+    }
+
+    public ConfluenceMirror(CorpusStore store) {
+        this.store = store;
+        for (CorpusStore.StoredPage page : store.pages()) {
+            index(new MirroredPage(page.pageId(), page.title(), page.parentId(), page.version(), page.sourceUrl(),
+                    page.content()));
+        }
+        roots.addAll(store.roots());
+    }
+
+    public boolean covers(String pageId) {
+        lock.readLock().lock();
+        try {
+            return pages.containsKey(pageId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Integer version(String pageId) {
+        lock.readLock().lock();
+        try {
+            MirroredPage page = pages.get(pageId);
+            return page == null ? null : page.version();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public String parentOf(String pageId) {
+        lock.readLock().lock();
+        try {
+            MirroredPage page = pages.get(pageId);
+            return page == null ? null : page.parentId();
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Set<String> roots() {
+        lock.readLock().lock();
+        try {
+            return Set.copyOf(roots);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public List<ConfluencePage> snapshot(String rootPageId, int maxDepth, int maxPages) {
+        lock.readLock().lock();
+        try {
+            List<ConfluencePage> result = new ArrayList<>();
+            Set<String> visited = new HashSet<>();
+            ArrayDeque<SnapshotNode> queue = new ArrayDeque<>();
+            queue.add(new SnapshotNode(rootPageId, null, 0));
+
+            while (!queue.isEmpty() && result.size() < maxPages) {
+                SnapshotNode node = queue.poll();
+                MirroredPage page = pages.get(node.pageId());
+                if (page == null || node.depth() > maxDepth || !visited.add(node.pageId())) {
+                    continue;
+                }
+                result.add(new ConfluencePage(page.pageId(), page.title(), node.parentId(), node.depth(),
+                        page.sourceUrl(), page.content(), page.version()));
+                if (node.depth() < maxDepth) {
+                    for (String childId : children.getOrDefault(node.pageId(), EMPTY)) {
+                        queue.add(new SnapshotNode(childId, node.pageId(), node.depth() + 1));
+                    }
+                }
+            }
+            return result;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Replaces the whole subtree of a root with a freshly crawled one. The store only sees the
+    // difference, so pages whose version did not change keep their stored text.
+    public void replaceTree(String rootPageId, List<ConfluencePage> crawled) {
+        lock.writeLock().lock();
+        try {
+            Set<String> gone = subtreeIds(rootPageId);
+            for (String pageId : gone) {
+                removeInternal(pageId, false, false);
+            }
+            for (ConfluencePage page : crawled) {
+                String parentId = page.getPageId().equals(rootPageId) ? null : page.getParentId();
+                putInternal(new MirroredPage(page.getPageId(), page.getTitle(), parentId,
+                        page.getVersion(), page.getSourceUrl(), text(page.getContent())));
+                gone.remove(page.getPageId());
+            }
+            for (String pageId : gone) {
+                persistRemoval(pageId);
+            }
+            if (roots.add(rootPageId) && store != null) {
+                store.addRoot(rootPageId);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void upsert(ConfluenceClient.PagePayload payload, String parentId) {
+        lock.writeLock().lock();
+        try {
+            String effectiveParent = roots.contains(payload.pageId()) ? null : parentId;
+            putInternal(new MirroredPage(payload.pageId(), payload.title(), effectiveParent, payload.version(),
+                    payload.sourceUrl(), text(ConfluenceExtractorService.toPlainText(payload.contentHtml()))));
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void move(String pageId, String newParentId) {
+        lock.writeLock().lock();
+        try {
+            MirroredPage page = pages.get(pageId);
+            if (page != null && !roots.contains(pageId)) {
+                putInternal(page.withParent(newParentId));
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(String pageId) {
+        lock.writeLock().lock();
+        try {
+            removeInternal(pageId, true, true);
+            if (roots.remove(pageId) && store != null) {
+                store.removeRoot(pageId);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Drops a whole tree that is no longer synced, e.g. a root restored from the store that was
+    // removed from the configuration.
+    public void removeTree(String rootPageId) {
+        lock.writeLock().lock();
+        try {
+            for (String pageId : subtreeIds(rootPageId)) {
+                removeInternal(pageId, false, true);
+            }
+            if (roots.remove(rootPageId) && store != null) {
+                store.removeRoot(rootPageId);
+            }
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Compacts the store once enough of it is superseded, then points every page at its new copy.
+    public void compactStore() throws IOException {
+        if (store == null) {
+            return;
+        }
+        lock.writeLock().lock();
+        try {
+            if (!store.needsCompaction()) {
+                return;
+            }
+            store.compact();
+            for (CorpusStore.StoredPage stored : store.pages()) {
+                MirroredPage page = pages.get(stored.pageId());
+                if (page != null) {
+                    pages.put(page.pageId(), page.withContent(stored.content()));
+                }
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public Set<String> subtree(String rootPageId) {
+        lock.readLock().lock();
+        try {
+            return subtreeIds(rootPageId);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public void markSynced(Instant syncedAt) {
+        this.lastSyncedAt = syncedAt;
+    }
+
+    public Instant lastSyncedAt() {
+        return lastSyncedAt;
+    }
+
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("roots", List.copyOf(roots));
+            stats.put("pages", pages.size());
+            stats.put("lastSyncedAt", lastSyncedAt == null ? null : lastSyncedAt.toString());
+            if (store != null) {
+                stats.put("store", store.stats());
+            }
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Writes through to the store first, so a failed write leaves the mirror unchanged.
+    private void putInternal(MirroredPage page) {
+        if (store != null) {
+            try {
+                page = page.withContent(store.put(page.pageId(), page.title(), page.parentId(), page.version(),
+                        page.sourceUrl(), page.content()));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+        index(page);
+    }
+
+    private void index(MirroredPage page) {
+        MirroredPage previous = pages.put(page.pageId(), page);
+        if (previous != null && previous.parentId() != null && !previous.parentId().equals(page.parentId())) {
+            LinkedHashSet<String> siblings = children.get(previous.parentId());
+            if (siblings != null) {
+                siblings.remove(page.pageId());
+            }
+        }
+        if (page.parentId() != null) {
+            children.computeIfAbsent(page.parentId(), key -> new LinkedHashSet<>()).add(page.pageId());
+        }
+    }
+
+    // Confluence re-parents the children of a deleted page onto its parent; mirror that
+    // for single deletes so the subtree stays reachable until the next reconciliation.
+    private void removeInternal(String pageId, boolean reparentChildren, boolean persist) throws IOException {
+        MirroredPage removed = pages.get(pageId);
+        if (removed == null) {
+            return;
+        }
+        if (persist) {
+            persistRemoval(pageId);
+        }
+        pages.remove(pageId);
+        if (removed.parentId() != null) {
+            LinkedHashSet<String> siblings = children.get(removed.parentId());
+            if (siblings != null) {
+                siblings.remove(pageId);
+            }
+        }
+        LinkedHashSet<String> orphans = children.remove(pageId);
+        if (reparentChildren && orphans != null && removed.parentId() != null) {
+            for (String orphanId : orphans) {
+                MirroredPage orphan = pages.get(orphanId);
+                if (orphan != null) {
+                    putInternal(orphan.withParent(removed.parentId()));
+                }
+            }
+        }
+    }
+
+    private void persistRemoval(String pageId) throws IOException {
+        if (store != null) {
+            store.remove(pageId);
+        }
+    }
+
+    private static PageContent text(String content) {
+        String text = content == null ? "" : content;
+        return () -> text;
+    }
+
+    private Set<String> subtreeIds(String rootPageId) {
+        Set<String> ids = new LinkedHashSet<>();
+        ArrayDeque<String> queue = new ArrayDeque<>();
+        queue.add(rootPageId);
+        while (!queue.isEmpty()) {
+            String pageId = queue.poll();
+            if (pages.containsKey(pageId) && ids.add(pageId)) {
+                queue.addAll(children.getOrDefault(pageId, EMPTY));
+            }
+        }
+        return ids;
+    }
+
+    private record SnapshotNode(String pageId, String parentId, int depth) {
+    }
+
+    private record MirroredPage(String pageId, String title, String parentId, int version, String sourceUrl,
+                                PageContent content) {
+        MirroredPage withParent(String newParentId) {
+            return new MirroredPage(pageId, title, newParentId, version, sourceUrl, content);
+        }
+
+        MirroredPage withContent(PageContent newContent) {
+            return new MirroredPage(pageId, title, parentId, version, sourceUrl, newContent);
+        }
+    }
+}
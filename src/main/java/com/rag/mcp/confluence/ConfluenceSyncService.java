@@ -0,0 +1,255 @@
+package com.rag.mcp.confluence;
+
+import com.rag.mcp.model.ConfluencePage;
+import com.rag.mcp.util.ThreadPools;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Consumer;
+
+// Keeps ConfluenceMirror warm: a full crawl on startup, CQL lastmodified polling afterwards,
+// a periodic reconciliation for moves/deletes, and webhook events applied immediately. Trees the
+// mirror restored from its corpus store are reconciled on startup instead of crawled again.
+public class ConfluenceSyncService {
+    // CQL dates are minute-granular and evaluated in the caller's timezone; now("-Nm") sidesteps
+    // the timezone, and the margin covers clock skew and pages saved during the previous poll.
+    private static final long POLL_MARGIN_MINUTES = 2;
+    private static final int SYNC_MAX_DEPTH = 50;
+    private static final int SYNC_MAX_PAGES = 20_000;
+
+    private final ConfluenceClient confluenceClient;
+    private final ConfluenceExtractorService extractorService;
+    private final ConfluenceMirror mirror;
+    private final List<String> rootPageIds;
+    private final Duration interval;
+    private final int reconcileEvery;
+    private final ScheduledExecutorService scheduler =
+            Executors.newSingleThreadScheduledExecutor(ThreadPools.daemonThreadFactory("confluence-sync"));
+    private final AtomicLong polls = new AtomicLong();
+    private final AtomicLong pagesUpdated = new AtomicLong();
+    private final AtomicLong pagesRemoved = new AtomicLong();
+    private final AtomicLong webhookEvents = new AtomicLong();
+    private final AtomicLong failures = new AtomicLong();
+    private final List<Consumer<String>> removalListeners = new CopyOnWriteArrayList<>();
+    private volatile Instant lastPollStartedAt;
+    private volatile String lastError;
+
+    public ConfluenceSyncService(ConfluenceClient confluenceClient, ConfluenceExtractorService extractorService,
+                                 ConfluenceMirror mirror, List<String> rootPageIds, Duration interval, int reconcileEvery) {
+        this.confluenceClient = confluenceClient;
+        this.extractorService = extractorService;
+        this.mirror = mirror;
+        this.rootPageIds = List.copyOf(rootPageIds);
+        this.interval = interval;
+        this.reconcileEvery = Math.max(1, reconcileEvery);
+    }
+
+    public void start() {
+        scheduler.execute(this::fullSync);
+        scheduler.scheduleWithFixedDelay(this::poll, interval.toMillis(), interval.toMillis(), TimeUnit.MILLISECONDS);
+        System.out.println("Confluence sync started for roots " + rootPageIds + " every " + interval.toSeconds() + "s");
+    }
+
+    public ConfluenceMirror mirror() {
+        return mirror;
+    }
+
+    // Called on the sync thread with the id of every page dropped from the mirror, so indexes built
+    // from mirrored pages can drop it too.
+    public void onPageRemoved(Consumer<String> listener) {
+        removalListeners.add(listener);
+    }
+
+    // Applies a Confluence webhook event (page_created, page_updated, page_moved, page_restored,
+    // page_removed, page_trashed). Runs on the sync thread so it never races a poll.
+    public void handleEvent(String event, String pageId) {
+        webhookEvents.incrementAndGet();
+        scheduler.execute(() -> {
+            try {
+                String normalized = event == null ? "" : event.toLowerCase();
+                if (normalized.contains("removed") || normalized.contains("trashed") || normalized.contains("deleted")) {
+                    removePage(pageId);
+                } else {
+                    refreshPage(pageId);
+                }
+            } catch (Exception ex) {
+                recordFailure(ex);
+            }
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = mirror.stats();
+        stats.put("polls", polls.get());
+        stats.put("pagesUpdated", pagesUpdated.get());
+        stats.put("pagesRemoved", pagesRemoved.get());
+        stats.put("webhookEvents", webhookEvents.get());
+        stats.put("failures", failures.get());
+        stats.put("lastError", lastError);
+        return stats;
+    }
+
+    private void fullSync() {
+        Instant startedAt = Instant.now();
+        Set<String> restored = mirror.roots();
+        for (String rootPageId : restored) {
+            if (!rootPageIds.contains(rootPageId)) {
+                Set<String> dropped = mirror.subtree(rootPageId);
+                mirror.removeTree(rootPageId);
+                dropped.forEach(this::notifyRemoved);
+            }
+        }
+        for (String rootPageId : rootPageIds) {
+            try {
+                if (restored.contains(rootPageId)) {
+                    reconcile(rootPageId);
+                } else {
+                    List<ConfluencePage> pages = extractorService.fetchTree(rootPageId, SYNC_MAX_DEPTH, SYNC_MAX_PAGES);
+                    mirror.replaceTree(rootPageId, pages);
+                }
+            } catch (Exception ex) {
+                recordFailure(ex);
+            }
+        }
+        lastPollStartedAt = startedAt;
+        mirror.markSynced(startedAt);
+        compactStore();
+    }
+
+    private void poll() {
+        long pollNumber = polls.incrementAndGet();
+        if (lastPollStartedAt == null) {
+            fullSync();
+            return;
+        }
+
+        Instant startedAt = Instant.now();
+        long sinceMinutes = Duration.between(lastPollStartedAt, startedAt).toMinutes() + POLL_MARGIN_MINUTES;
+        boolean ok = true;
+        for (String rootPageId : rootPageIds) {
+            try {
+                if (pollNumber % reconcileEvery == 0) {
+                    reconcile(rootPageId);
+                } else {
+                    pollChanges(rootPageId, sinceMinutes);
+                }
+            } catch (Exception ex) {
+                ok = false;
+                recordFailure(ex);
+            }
+        }
+        // Keep the old watermark after a failure so the next poll covers the missed window.
+        if (ok) {
+            lastPollStartedAt = startedAt;
+            mirror.markSynced(startedAt);
+        }
+        compactStore();
+    }
+
+    private void compactStore() {
+        try {
+            mirror.compactStore();
+        } catch (Exception ex) {
+            recordFailure(ex);
+        }
+    }
+
+    private void pollChanges(String rootPageId, long sinceMinutes) throws Exception {
+        String cql = "ancestor = " + rootPageId + " and type = page and lastmodified >= now(\"-" + sinceMinutes + "m\")";
+        for (ConfluenceClient.SearchResult result : confluenceClient.searchPages(cql, true)) {
+            apply(result);
+        }
+    }
+
+    // Lists the whole subtree without bodies to detect deletes, moves and missed edits.
+    private void reconcile(String rootPageId) throws Exception {
+        String cql = "ancestor = " + rootPageId + " and type = page";
+        Map<String, ConfluenceClient.SearchResult> remote = new HashMap<>();
+        for (ConfluenceClient.SearchResult result : confluenceClient.searchPages(cql, false)) {
+            remote.put(result.page().pageId(), result);
+        }
+
+        Set<String> local = mirror.subtree(rootPageId);
+        for (String pageId : local) {
+            if (!pageId.equals(rootPageId) && !remote.containsKey(pageId)) {
+                removePage(pageId);
+            }
+        }
+
+        for (ConfluenceClient.SearchResult result : remote.values()) {
+            String pageId = result.page().pageId();
+            Integer localVersion = mirror.version(pageId);
+            if (localVersion == null || localVersion != result.page().version()) {
+                refreshPage(pageId);
+            } else if (!Objects.equals(mirror.parentOf(pageId), result.parentId())) {
+                mirror.move(pageId, result.parentId());
+            }
+        }
+
+        refreshPage(rootPageId);
+    }
+
+    private void refreshPage(String pageId) throws Exception {
+        List<ConfluenceClient.SearchResult> results = confluenceClient.searchPages("id = " + pageId, true);
+        if (results.isEmpty()) {
+            removePage(pageId);
+            return;
+        }
+        apply(results.get(0));
+    }
+
+    private void apply(ConfluenceClient.SearchResult result) {
+        String pageId = result.page().pageId();
+        Set<String> roots = mirror.roots();
+        boolean inSyncedTree = roots.contains(pageId) || result.ancestorIds().stream().anyMatch(roots::contains);
+        if (!inSyncedTree) {
+            // Moved out of every synced tree.
+            removePage(pageId);
+            return;
+        }
+
+        Integer localVersion = mirror.version(pageId);
+        if (localVersion == null || localVersion != result.page().version()) {
+            confluenceClient.invalidate(pageId);
+            mirror.upsert(result.page(), result.parentId());
+            pagesUpdated.incrementAndGet();
+        } else {
+            mirror.move(pageId, result.parentId());
+        }
+    }
+
+    private void removePage(String pageId) {
+        confluenceClient.invalidate(pageId);
+        if (mirror.covers(pageId)) {
+            mirror.remove(pageId);
+            pagesRemoved.incrementAndGet();
+            notifyRemoved(pageId);
+        }
+    }
+
+    private void notifyRemoved(String pageId) {
+        for (Consumer<String> listener : removalListeners) {
+            try {
+                listener.accept(pageId);
+            } catch (RuntimeException ex) {
+                recordFailure(ex);
+            }
+        }
+    }
+
+    private void recordFailure(Exception ex) {
+        failures.incrementAndGet();
+        lastError = ex.getClass().getSimpleName() + ": " + ex.getMessage();
+        System.err.println("Confluence sync failed: " + lastError);
+    }
+}
@@ -0,0 +1,501 @@
+package com.rag.mcp.confluence;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.JsonSerializable;
+import com.fasterxml.jackson.databind.SerializerProvider;
+import com.fasterxml.jackson.databind.jsontype.TypeSerializer;
+import com.rag.mcp.model.PageContent;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayInputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+
+// On-disk copy of the mirrored pages, so a restart starts warm instead of re-crawling. Page texts
+// are appended as UTF-8 to a segment file that is memory-mapped in 256 MiB chunks, and an
+// append-only index log records each page's metadata with the offset, length and hash of its text,
+// plus the synced roots. Opening replays only the index: texts stay in the mapped file and are decoded
+// when a page is read. Superseded texts and index records are garbage until compact() copies the
+// live ones into a new generation of both files.
+//
+// Nothing is fsynced outside compaction. The store is a cache of Confluence: a torn index tail is
+// dropped on open and the next sync fetches whatever is missing.
+public final class CorpusStore {
+    private static final int MAGIC = 0x4D435043;
+    private static final int FORMAT = 2;
+    private static final int CHUNK_BITS = 28;
+    private static final long CHUNK_SIZE = 1L << CHUNK_BITS;
+    private static final byte PUT = 1;
+    private static final byte REMOVE = 2;
+    private static final byte ROOT = 3;
+    private static final byte UNROOT = 4;
+    // Compact once superseded text outweighs the live text and is at least this large, or once the
+    // index log holds this many times more records than there are pages.
+    private static final long COMPACT_MIN_GARBAGE_BYTES = 16L << 20;
+    private static final int COMPACT_INDEX_FACTOR = 4;
+
+    private final Path directory;
+    private final Map<String, Entry> entries = new LinkedHashMap<>();
+    private final Set<String> roots = new LinkedHashSet<>();
+    private Generation current;
+    private long liveBytes;
+    private long indexRecords;
+    private long compactions;
+    private int restoredPages;
+
+    private CorpusStore(Path directory) {
+        this.directory = directory;
+    }
+
+    public static CorpusStore open(Path directory) throws IOException {
+        Files.createDirectories(directory);
+        CorpusStore store = new CorpusStore(directory);
+        store.load();
+        return store;
+    }
+
+    // Live pages in the order they were first stored.
+    public synchronized List<StoredPage> pages() {
+        List<StoredPage> pages = new ArrayList<>(entries.size());
+        for (Entry entry : entries.values()) {
+            pages.add(new StoredPage(entry.pageId(), entry.title(), entry.parentId(), entry.version(),
+                    entry.sourceUrl(), text(entry)));
+        }
+        return pages;
+    }
+
+    public synchronized Set<String> roots() {
+        return Set.copyOf(roots);
+    }
+
+    // Stores a page and returns its text as read back from the store. The text is only written again
+    // when it may have changed: a page with the same positive version keeps its stored text, and an
+    // unchanged page writes nothing at all.
+    public synchronized PageContent put(String pageId, String title, String parentId, int version, String sourceUrl,
+                                        PageContent content) throws IOException {
+        Entry existing = entries.get(pageId);
+        long offset;
+        int length;
+        int textHash;
+        if (existing != null && (version > 0 && version == existing.version() || isStored(content, existing))) {
+            offset = existing.offset();
+            length = existing.length();
+            textHash = existing.textHash();
+        } else {
+            String text = content.text();
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            offset = current.append(bytes);
+            length = bytes.length;
+            textHash = text.hashCode();
+        }
+        Entry entry = new Entry(pageId, title, parentId, version, sourceUrl, offset, length, textHash);
+        if (!entry.equals(existing)) {
+            current.writePut(entry);
+            indexRecords++;
+            liveBytes += length - (existing == null ? 0 : existing.length());
+            entries.put(pageId, entry);
+        }
+        return text(entry);
+    }
+
+    public synchronized void remove(String pageId) throws IOException {
+        Entry removed = entries.remove(pageId);
+        if (removed != null) {
+            current.writeId(REMOVE, pageId);
+            indexRecords++;
+            liveBytes -= removed.length();
+        }
+    }
+
+    public synchronized void addRoot(String pageId) throws IOException {
+        if (roots.add(pageId)) {
+            current.writeId(ROOT, pageId);
+            indexRecords++;
+        }
+    }
+
+    public synchronized void removeRoot(String pageId) throws IOException {
+        if (roots.remove(pageId)) {
+            current.writeId(UNROOT, pageId);
+            indexRecords++;
+        }
+    }
+
+    public synchronized boolean needsCompaction() {
+        long garbage = current.end - liveBytes;
+        return (garbage >= COMPACT_MIN_GARBAGE_BYTES && garbage > liveBytes)
+                || indexRecords > (long) COMPACT_INDEX_FACTOR * (entries.size() + roots.size()) + 4096;
+    }
+
+    // Copies the live pages and roots into a new generation, switches to it once it is on disk and
+    // deletes the old files. Texts handed out before keep reading the old mapping, which the OS
+    // releases when they are collected; callers holding many of them should re-read pages().
+    public synchronized void compact() throws IOException {
+        Generation next = Generation.create(directory, current.number + 1);
+        Map<String, Entry> moved = new LinkedHashMap<>();
+        try {
+            for (Entry entry : entries.values()) {
+                ByteBuffer bytes = current.slice(entry.offset(), entry.length());
+                byte[] copy = new byte[entry.length()];
+                bytes.get(0, copy);
+                Entry relocated = new Entry(entry.pageId(), entry.title(), entry.parentId(), entry.version(),
+                        entry.sourceUrl(), next.append(copy), entry.length(), entry.textHash());
+                next.writePut(relocated);
+                moved.put(relocated.pageId(), relocated);
+            }
+            for (String root : roots) {
+                next.writeId(ROOT, root);
+            }
+            next.sync();
+            Path pointer = directory.resolve("CURRENT.tmp");
+            Files.writeString(pointer, Long.toString(next.number));
+            Files.move(pointer, directory.resolve("CURRENT"), StandardCopyOption.ATOMIC_MOVE,
+                    StandardCopyOption.REPLACE_EXISTING);
+        } catch (IOException | RuntimeException ex) {
+            next.close();
+            next.delete();
+            throw ex;
+        }
+        Generation previous = current;
+        current = next;
+        entries.clear();
+        entries.putAll(moved);
+        indexRecords = moved.size() + roots.size();
+        compactions++;
+        previous.close();
+        previous.delete();
+    }
+
+    public synchronized Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("directory", directory.toString());
+        stats.put("generation", current.number);
+        stats.put("pages", entries.size());
+        stats.put("restoredPages", restoredPages);
+        stats.put("segmentBytes", current.end);
+        stats.put("liveBytes", liveBytes);
+        stats.put("indexRecords", indexRecords);
+        stats.put("compactions", compactions);
+        return stats;
+    }
+
+    private void load() throws IOException {
+        Path pointer = directory.resolve("CURRENT");
+        long number = Files.exists(pointer) ? Long.parseLong(Files.readString(pointer).trim()) : 0;
+        deleteOtherGenerations(number);
+        Generation generation = Generation.open(directory, number);
+        Path indexPath = generation.indexPath();
+        byte[] log = Files.readAllBytes(indexPath);
+        long valid = replay(log, generation);
+        if (valid < log.length) {
+            if (log.length > 0) {
+                System.err.println("Corpus store: dropping " + (log.length - valid) + " unreadable bytes at the end of " + indexPath);
+            }
+            try (FileChannel channel = FileChannel.open(indexPath, StandardOpenOption.WRITE)) {
+                channel.truncate(valid);
+            }
+        }
+        generation.openIndex(valid == 0);
+        current = generation;
+        restoredPages = entries.size();
+        if (restoredPages > 0) {
+            System.out.println("Corpus store: restored " + restoredPages + " pages and roots " + roots + " from " + directory);
+        }
+    }
+
+    // Applies the index log to the in-memory maps and returns the length of its readable prefix; 0
+    // when the header is missing or from another format, which starts the store over.
+    private long replay(byte[] log, Generation generation) throws IOException {
+        ByteArrayInputStream bytes = new ByteArrayInputStream(log);
+        DataInputStream in = new DataInputStream(bytes);
+        try {
+            if (in.readInt() != MAGIC || in.readInt() != FORMAT) {
+                return 0;
+            }
+        } catch (EOFException ex) {
+            return 0;
+        }
+        long valid = log.length - bytes.available();
+        long end = 0;
+        try {
+            while (bytes.available() > 0) {
+                byte type = in.readByte();
+                switch (type) {
+                    case PUT -> {
+                        Entry entry = new Entry(in.readUTF(), in.readUTF(), readOptional(in), in.readInt(),
+                                readOptional(in), in.readLong(), in.readInt(), in.readInt());
+                        if (!generation.contains(entry.offset(), entry.length())) {
+                            return valid;
+                        }
+                        Entry previous = entries.put(entry.pageId(), entry);
+                        liveBytes += entry.length() - (previous == null ? 0 : previous.length());
+                        end = Math.max(end, entry.offset() + entry.length());
+                    }
+                    case REMOVE -> {
+                        Entry removed = entries.remove(in.readUTF());
+                        if (removed != null) {
+                            liveBytes -= removed.length();
+                        }
+                    }
+                    case ROOT -> roots.add(in.readUTF());
+                    case UNROOT -> roots.remove(in.readUTF());
+                    default -> {
+                        return valid;
+                    }
+                }
+                indexRecords++;
+                generation.end = end;
+                valid = log.length - bytes.available();
+            }
+        } catch (EOFException ex) {
+            // Torn last record.
+        }
+        return valid;
+    }
+
+    private void deleteOtherGenerations(long keep) throws IOException {
+        try (DirectoryStream<Path> files = Files.newDirectoryStream(directory, "corpus-*.{seg,idx}")) {
+            for (Path file : files) {
+                String name = file.getFileName().toString();
+                if (!name.startsWith("corpus-" + keep + ".")) {
+                    Files.deleteIfExists(file);
+                }
+            }
+        }
+    }
+
+    private PageContent text(Entry entry) {
+        return new StoredText(current.number, entry.offset(), current.slice(entry.offset(), entry.length()),
+                entry.textHash());
+    }
+
+    private boolean isStored(PageContent content, Entry entry) {
+        return content instanceof StoredText stored && stored.generation == current.number && stored.offset == entry.offset();
+    }
+
+    private static String readOptional(DataInputStream in) throws IOException {
+        return in.readBoolean() ? in.readUTF() : null;
+    }
+
+    private static void writeOptional(DataOutputStream out, String value) throws IOException {
+        out.writeBoolean(value != null);
+        if (value != null) {
+            out.writeUTF(value);
+        }
+    }
+
+    public record StoredPage(String pageId, String title, String parentId, int version, String sourceUrl,
+                             PageContent content) {
+    }
+
+    // textHash is the String.hashCode of the text, so pages can be fingerprinted without decoding it.
+    private record Entry(String pageId, String title, String parentId, int version, String sourceUrl, long offset,
+                         int length, int textHash) {
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Entry entry && offset == entry.offset && length == entry.length
+                    && textHash == entry.textHash
+                    && version == entry.version && pageId.equals(entry.pageId) && Objects.equals(title, entry.title)
+                    && Objects.equals(parentId, entry.parentId) && Objects.equals(sourceUrl, entry.sourceUrl);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(pageId, offset);
+        }
+    }
+
+    // One segment file and its index log. Texts never straddle a chunk, so each is one slice of
+    // one mapping; a text that would cross a chunk boundary starts at the next chunk instead.
+    private static final class Generation {
+        private final Path directory;
+        private final long number;
+        private final FileChannel segment;
+        private final List<MappedByteBuffer> chunks = new ArrayList<>();
+        private FileOutputStream indexFile;
+        private DataOutputStream index;
+        private long end;
+
+        private Generation(Path directory, long number, FileChannel segment) {
+            this.directory = directory;
+            this.number = number;
+            this.segment = segment;
+        }
+
+        static Generation open(Path directory, long number) throws IOException {
+            FileChannel segment = FileChannel.open(directory.resolve("corpus-" + number + ".seg"),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            Generation generation = new Generation(directory, number, segment);
+            if (!Files.exists(generation.indexPath())) {
+                Files.createFile(generation.indexPath());
+            }
+            for (long chunk = 0; chunk < segment.size() >>> CHUNK_BITS; chunk++) {
+                generation.chunk((int) chunk);
+            }
+            return generation;
+        }
+
+        static Generation create(Path directory, long number) throws IOException {
+            Files.deleteIfExists(directory.resolve("corpus-" + number + ".seg"));
+            Files.deleteIfExists(directory.resolve("corpus-" + number + ".idx"));
+            Generation generation = open(directory, number);
+            generation.openIndex(true);
+            return generation;
+        }
+
+        Path indexPath() {
+            return directory.resolve("corpus-" + number + ".idx");
+        }
+
+        void openIndex(boolean writeHeader) throws IOException {
+            indexFile = new FileOutputStream(indexPath().toFile(), true);
+            index = new DataOutputStream(new BufferedOutputStream(indexFile));
+            if (writeHeader) {
+                index.writeInt(MAGIC);
+                index.writeInt(FORMAT);
+                index.flush();
+            }
+        }
+
+        boolean contains(long offset, int length) {
+            return offset >= 0 && length >= 0 && (offset >>> CHUNK_BITS) < chunks.size()
+                    && (offset & (CHUNK_SIZE - 1)) + length <= CHUNK_SIZE;
+        }
+
+        long append(byte[] bytes) throws IOException {
+            if (bytes.length > CHUNK_SIZE) {
+                throw new IOException("Page text of " + bytes.length + " bytes is too large for the corpus store");
+            }
+            long offset = end;
+            if ((offset & (CHUNK_SIZE - 1)) + bytes.length > CHUNK_SIZE) {
+                offset = ((offset >>> CHUNK_BITS) + 1) << CHUNK_BITS;
+            }
+            chunk((int) (offset >>> CHUNK_BITS)).put((int) (offset & (CHUNK_SIZE - 1)), bytes);
+            end = offset + bytes.length;
+            return offset;
+        }
+
+        ByteBuffer slice(long offset, int length) {
+            return chunks.get((int) (offset >>> CHUNK_BITS)).slice((int) (offset & (CHUNK_SIZE - 1)), length)
+                    .asReadOnlyBuffer();
+        }
+
+        void writePut(Entry entry) throws IOException {
+            index.writeByte(PUT);
+            index.writeUTF(entry.pageId());
+            index.writeUTF(entry.title() == null ? "" : entry.title());
+            writeOptional(index, entry.parentId());
+            index.writeInt(entry.version());
+            writeOptional(index, entry.sourceUrl());
+            index.writeLong(entry.offset());
+            index.writeInt(entry.length());
+            index.writeInt(entry.textHash());
+            index.flush();
+        }
+
+        void writeId(byte type, String pageId) throws IOException {
+            index.writeByte(type);
+            index.writeUTF(pageId);
+            index.flush();
+        }
+
+        void sync() throws IOException {
+            for (MappedByteBuffer chunk : chunks) {
+                chunk.force();
+            }
+            index.flush();
+            indexFile.getFD().sync();
+        }
+
+        void close() throws IOException {
+            try {
+                if (index != null) {
+                    index.close();
+                }
+            } finally {
+                segment.close();
+            }
+        }
+
+        void delete() throws IOException {
+            Files.deleteIfExists(directory.resolve("corpus-" + number + ".seg"));
+            Files.deleteIfExists(indexPath());
+        }
+
+        // Mapping a chunk past the end of the file grows the file (sparsely) to cover it.
+        private MappedByteBuffer chunk(int index) throws IOException {
+            while (chunks.size() <= index) {
+                chunks.add(segment.map(FileChannel.MapMode.READ_WRITE, (long) chunks.size() << CHUNK_BITS, CHUNK_SIZE));
+            }
+            return chunks.get(index);
+        }
+    }
+
+    // A slice of the mapped segment. Serialized to JSON straight from the UTF-8 bytes when the
+    // generator writes bytes, so extract responses never build the String.
+    private static final class StoredText implements PageContent, JsonSerializable {
+        private final long generation;
+        private final long offset;
+        private final ByteBuffer bytes;
+        private final int textHash;
+
+        StoredText(long generation, long offset, ByteBuffer bytes, int textHash) {
+            this.generation = generation;
+            this.offset = offset;
+            this.bytes = bytes;
+            this.textHash = textHash;
+        }
+
+        @Override
+        public String text() {
+            return new String(copy(), StandardCharsets.UTF_8);
+        }
+
+        @Override
+        public int contentHash() {
+            return textHash;
+        }
+
+        @Override
+        public void serialize(JsonGenerator generator, SerializerProvider provider) throws IOException {
+            if (generator.getOutputTarget() instanceof OutputStream) {
+                byte[] utf8 = copy();
+                generator.writeUTF8String(utf8, 0, utf8.length);
+            } else {
+                generator.writeString(text());
+            }
+        }
+
+        @Override
+        public void serializeWithType(JsonGenerator generator, SerializerProvider provider, TypeSerializer typeSerializer)
+                throws IOException {
+            serialize(generator, provider);
+        }
+
+        private byte[] copy() {
+            byte[] copy = new byte[bytes.capacity()];
+            bytes.get(0, copy);
+            return copy;
+        }
+    }
+}
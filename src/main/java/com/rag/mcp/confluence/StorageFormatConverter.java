@@ -0,0 +1,758 @@
+package com.rag.mcp.confluence;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// Converts Confluence storage format (XHTML plus ac:/ri: elements) into lightweight Markdown in a
+// single forward scan: no regex, no DOM, one output buffer. Headings become "#" lines, lists "-" or
+// "1." items, tables pipe rows, <pre> and code macros fenced blocks; macro parameters, scripts and
+// comments are dropped. Heading boundaries are reported as sections for chunking.
+public final class StorageFormatConverter {
+    private static final int OTHER = 0;
+    private static final int HEADING = 1;
+    private static final int BLOCK = 2;
+    private static final int BR = 3;
+    private static final int HR = 4;
+    private static final int UL = 5;
+    private static final int OL = 6;
+    private static final int LI = 7;
+    private static final int TABLE = 8;
+    private static final int TR = 9;
+    private static final int CELL = 10;
+    private static final int PRE = 11;
+    private static final int CODE = 12;
+    private static final int RAW_SKIP = 13;
+    private static final int MACRO = 14;
+    private static final int PARAMETER = 15;
+    private static final int PLAIN_TEXT_BODY = 16;
+    private static final int LINK = 17;
+    private static final int RESOURCE = 18;
+    private static final int TASK = 19;
+
+    private static final String[] TAG_NAMES = {
+            "h1", "h2", "h3", "h4", "h5", "h6",
+            "p", "div", "blockquote", "section", "dl", "dt", "dd",
+            "ac:layout", "ac:layout-section", "ac:layout-cell", "ac:rich-text-body", "ac:task-list", "ac:task-body",
+            "br", "hr", "ul", "ol", "li", "table", "tr", "td", "th", "pre", "code",
+            "script", "style", "ac:placeholder", "ac:task-id", "ac:task-status",
+            "ac:structured-macro", "ac:macro", "ac:parameter", "ac:plain-text-body",
+            "ac:link", "ri:page", "ri:attachment", "ri:blog-post", "ac:task"
+    };
+    private static final int[] TAG_IDS = {
+            HEADING, HEADING, HEADING, HEADING, HEADING, HEADING,
+            BLOCK, BLOCK, BLOCK, BLOCK, BLOCK, BLOCK, BLOCK,
+            BLOCK, BLOCK, BLOCK, BLOCK, BLOCK, BLOCK,
+            BR, HR, UL, OL, LI, TABLE, TR, CELL, CELL, PRE, CODE,
+            RAW_SKIP, RAW_SKIP, RAW_SKIP, RAW_SKIP, RAW_SKIP,
+            MACRO, MACRO, PARAMETER, PLAIN_TEXT_BODY,
+            LINK, RESOURCE, RESOURCE, RESOURCE, TASK
+    };
+
+    private static final int[][] TAGS_BY_LENGTH;
+
+    static {
+        int maxLength = 0;
+        for (String name : TAG_NAMES) {
+            maxLength = Math.max(maxLength, name.length());
+        }
+        TAGS_BY_LENGTH = new int[maxLength + 1][0];
+        for (int i = 0; i < TAG_NAMES.length; i++) {
+            int[] bucket = TAGS_BY_LENGTH[TAG_NAMES[i].length()];
+            bucket = Arrays.copyOf(bucket, bucket.length + 1);
+            bucket[bucket.length - 1] = i;
+            TAGS_BY_LENGTH[TAG_NAMES[i].length()] = bucket;
+        }
+    }
+
+    // HTML 4 named entities (the set Confluence emits); numeric references are decoded separately.
+    private static final Map<String, Integer> ENTITIES = new HashMap<>();
+
+    static {
+        String table = "quot=34 amp=38 lt=60 gt=62 nbsp=160 iexcl=161 cent=162 pound=163 curren=164 yen=165 brvbar=166 "
+                + "sect=167 uml=168 copy=169 ordf=170 laquo=171 not=172 shy=173 reg=174 macr=175 deg=176 "
+                + "plusmn=177 sup2=178 sup3=179 acute=180 micro=181 para=182 middot=183 cedil=184 sup1=185 "
+                + "ordm=186 raquo=187 frac14=188 frac12=189 frac34=190 iquest=191 Agrave=192 Aacute=193 Acirc=194 "
+                + "Atilde=195 Auml=196 Aring=197 AElig=198 Ccedil=199 Egrave=200 Eacute=201 Ecirc=202 Euml=203 "
+                + "Igrave=204 Iacute=205 Icirc=206 Iuml=207 ETH=208 Ntilde=209 Ograve=210 Oacute=211 Ocirc=212 "
+                + "Otilde=213 Ouml=214 times=215 Oslash=216 Ugrave=217 Uacute=218 Ucirc=219 Uuml=220 Yacute=221 "
+                + "THORN=222 szlig=223 agrave=224 aacute=225 acirc=226 atilde=227 auml=228 aring=229 aelig=230 "
+                + "ccedil=231 egrave=232 eacute=233 ecirc=234 euml=235 igrave=236 iacute=237 icirc=238 iuml=239 "
+                + "eth=240 ntilde=241 ograve=242 oacute=243 ocirc=244 otilde=245 ouml=246 divide=247 oslash=248 "
+                + "ugrave=249 uacute=250 ucirc=251 uuml=252 yacute=253 thorn=254 yuml=255 OElig=338 oelig=339 "
+                + "Scaron=352 scaron=353 Yuml=376 fnof=402 circ=710 tilde=732 Alpha=913 Beta=914 Gamma=915 "
+                + "Delta=916 Epsilon=917 Zeta=918 Eta=919 Theta=920 Iota=921 Kappa=922 Lambda=923 Mu=924 Nu=925 "
+                + "Xi=926 Omicron=927 Pi=928 Rho=929 Sigma=931 Tau=932 Upsilon=933 Phi=934 Chi=935 Psi=936 "
+                + "Omega=937 alpha=945 beta=946 gamma=947 delta=948 epsilon=949 zeta=950 eta=951 theta=952 "
+                + "iota=953 kappa=954 lambda=955 mu=956 nu=957 xi=958 omicron=959 pi=960 rho=961 sigmaf=962 "
+                + "sigma=963 tau=964 upsilon=965 phi=966 chi=967 psi=968 omega=969 thetasym=977 upsih=978 piv=982 "
+                + "ensp=8194 emsp=8195 thinsp=8201 zwnj=8204 zwj=8205 lrm=8206 rlm=8207 ndash=8211 mdash=8212 "
+                + "lsquo=8216 rsquo=8217 sbquo=8218 ldquo=8220 rdquo=8221 bdquo=8222 dagger=8224 Dagger=8225 "
+                + "bull=8226 hellip=8230 permil=8240 prime=8242 Prime=8243 lsaquo=8249 rsaquo=8250 oline=8254 "
+                + "frasl=8260 euro=8364 image=8465 weierp=8472 real=8476 trade=8482 alefsym=8501 larr=8592 "
+                + "uarr=8593 rarr=8594 darr=8595 harr=8596 crarr=8629 lArr=8656 uArr=8657 rArr=8658 dArr=8659 "
+                + "hArr=8660 forall=8704 part=8706 exist=8707 empty=8709 nabla=8711 isin=8712 notin=8713 ni=8715 "
+                + "prod=8719 sum=8721 minus=8722 lowast=8727 radic=8730 prop=8733 infin=8734 ang=8736 and=8743 "
+                + "or=8744 cap=8745 cup=8746 int=8747 there4=8756 sim=8764 cong=8773 asymp=8776 ne=8800 equiv=8801 "
+                + "le=8804 ge=8805 sub=8834 sup=8835 nsub=8836 sube=8838 supe=8839 oplus=8853 otimes=8855 "
+                + "perp=8869 sdot=8901 lceil=8968 rceil=8969 lfloor=8970 rfloor=8971 lang=9001 rang=9002 loz=9674 "
+                + "spades=9824 clubs=9827 hearts=9829 diams=9830 ";
+        for (String entry : table.trim().split(" ")) {
+            int eq = entry.indexOf('=');
+            ENTITIES.put(entry.substring(0, eq), Integer.parseInt(entry.substring(eq + 1)));
+        }
+    }
+
+    private StorageFormatConverter() {
+    }
+
+    public static Result convert(String xhtml) {
+        if (xhtml == null || xhtml.isEmpty()) {
+            return new Result("", List.of());
+        }
+        return new Scanner(xhtml).run();
+    }
+
+    public static String toText(String xhtml) {
+        return convert(xhtml).text();
+    }
+
+    // Decodes character references in a plain string (e.g. an attribute value).
+    static String decodeEntities(String value) {
+        if (value.indexOf('&') < 0) {
+            return value;
+        }
+        StringBuilder decoded = new StringBuilder(value.length());
+        int i = 0;
+        while (i < value.length()) {
+            char c = value.charAt(i);
+            int next = c == '&' ? appendEntity(value, i, decoded) : -1;
+            if (next < 0) {
+                decoded.append(c);
+                i++;
+            } else {
+                i = next;
+            }
+        }
+        return decoded.toString();
+    }
+
+    // Appends the character referenced at src[amp] and returns the index after ';', or -1 when the
+    // text is not a well-formed reference (it is then kept literally).
+    private static int appendEntity(String src, int amp, StringBuilder out) {
+        int limit = Math.min(src.length(), amp + 34);
+        int semicolon = -1;
+        for (int i = amp + 1; i < limit; i++) {
+            char c = src.charAt(i);
+            if (c == ';') {
+                semicolon = i;
+                break;
+            }
+            if (!(Character.isLetterOrDigit(c) || c == '#')) {
+                return -1;
+            }
+        }
+        if (semicolon < amp + 2) {
+            return -1;
+        }
+        int codePoint;
+        if (src.charAt(amp + 1) == '#') {
+            codePoint = parseNumericReference(src, amp + 2, semicolon);
+        } else if (src.startsWith("amp;", amp + 1)) {
+            codePoint = '&';
+        } else if (src.startsWith("lt;", amp + 1)) {
+            codePoint = '<';
+        } else if (src.startsWith("gt;", amp + 1)) {
+            codePoint = '>';
+        } else if (src.startsWith("quot;", amp + 1)) {
+            codePoint = '"';
+        } else if (src.startsWith("apos;", amp + 1)) {
+            codePoint = '\'';
+        } else {
+            Integer named = ENTITIES.get(src.substring(amp + 1, semicolon));
+            codePoint = named == null ? -1 : named;
+        }
+        if (codePoint < 0) {
+            return -1;
+        }
+        out.appendCodePoint(codePoint);
+        return semicolon + 1;
+    }
+
+    private static int parseNumericReference(String src, int from, int to) {
+        boolean hex = from < to && (src.charAt(from) == 'x' || src.charAt(from) == 'X');
+        int start = hex ? from + 1 : from;
+        if (start >= to) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < to; i++) {
+            int digit = Character.digit(src.charAt(i), hex ? 16 : 10);
+            if (digit < 0 || value > 0x10FFFF) {
+                return -1;
+            }
+            value = value * (hex ? 16 : 10) + digit;
+        }
+        if (value == 0 || value > 0x10FFFF || (value >= 0xD800 && value <= 0xDFFF)) {
+            return 0xFFFD;
+        }
+        return value;
+    }
+
+    private static int tagId(String src, int from, int to) {
+        int length = to - from;
+        if (length >= TAGS_BY_LENGTH.length) {
+            return OTHER;
+        }
+        int[] candidates = TAGS_BY_LENGTH[length];
+        for (int index : candidates) {
+            if (matchesAsciiLowercase(src, from, TAG_NAMES[index])) {
+                return TAG_IDS[index];
+            }
+        }
+        return OTHER;
+    }
+
+    // Tag names are ASCII, so this avoids regionMatches(true, ...) and its Unicode case folding.
+    private static boolean matchesAsciiLowercase(String src, int from, String name) {
+        for (int i = 0; i < name.length(); i++) {
+            char c = src.charAt(from + i);
+            if (c >= 'A' && c <= 'Z') {
+                c += 'a' - 'A';
+            }
+            if (c != name.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isWordChar(char c) {
+        return c != '<' && c != '&' && c != '\u200B' && !isSpace(c);
+    }
+
+    private static boolean isSpace(char c) {
+        return c == ' ' || c == '\n' || c == '\t' || c == '\r' || c == '\f' || c == '\u00A0';
+    }
+
+    public record Result(String text, List<Section> sections) {
+    }
+
+    // A heading and the text under it up to the next heading: [start, end) offsets into Result.text.
+    // Text before the first heading is a level-0 section with an empty heading.
+    public record Section(String heading, int level, int start, int end) {
+    }
+
+    private static final class Scanner {
+        private final String src;
+        private final StringBuilder out;
+        private final List<Section> sections = new ArrayList<>();
+        private boolean pendingSpace;
+        private int verbatimDepth;
+        private int cellDepth;
+
+        private int[] listCounters = new int[8];
+        private int listDepth;
+
+        private int rowIndex;
+        private int cellsInRow;
+        private boolean rowHasHeader;
+
+        private int[] macroIsCode = new int[8];
+        private int macroDepth;
+        private String codeLanguage;
+
+        private int linkStart = -1;
+        private String linkTitle;
+
+        private String sectionHeading = "";
+        private int sectionLevel;
+        private int sectionStart;
+        private int headingLevel;
+        private int headingTextStart = -1;
+
+        Scanner(String src) {
+            this.src = src;
+            this.out = new StringBuilder(Math.max(16, src.length() / 2));
+        }
+
+        Result run() {
+            int i = 0;
+            int length = src.length();
+            while (i < length) {
+                char c = src.charAt(i);
+                if (c == '<') {
+                    i = tag(i);
+                } else if (c == '&') {
+                    int next = verbatimDepth > 0 ? appendEntity(src, i, out) : appendTextEntity(i);
+                    if (next < 0) {
+                        emit(c);
+                        i++;
+                    } else {
+                        i = next;
+                    }
+                } else if (verbatimDepth > 0) {
+                    if (c != '\r') {
+                        out.append(c);
+                    }
+                    i++;
+                } else if (isSpace(c) || c == '\u200B') {
+                    pendingSpace |= c != '\u200B';
+                    i++;
+                } else {
+                    // Copy a whole run of words at once; a lone ' ' between two words needs no collapsing.
+                    int end = i + 1;
+                    while (end < length) {
+                        char d = src.charAt(end);
+                        if (d == ' ' && end + 1 < length && isWordChar(src.charAt(end + 1))) {
+                            end += 2;
+                            continue;
+                        }
+                        if (!isWordChar(d)) {
+                            break;
+                        }
+                        end++;
+                    }
+                    flushSpace();
+                    out.append(src, i, end);
+                    i = end;
+                }
+            }
+            trimTrailingWhitespace();
+            String text = out.toString();
+            closeSection(text.length());
+            for (int s = 0; s < sections.size(); s++) {
+                Section section = sections.get(s);
+                if (section.end() > text.length()) {
+                    sections.set(s, new Section(section.heading(), section.level(), section.start(), text.length()));
+                }
+            }
+            return new Result(text, List.copyOf(sections));
+        }
+
+        private int appendTextEntity(int amp) {
+            int mark = out.length();
+            boolean space = pendingSpace;
+            flushSpace();
+            int afterSpace = out.length();
+            int next = appendEntity(src, amp, out);
+            if (next < 0) {
+                // Kept literally: the caller emits the '&', which must still get the space before it.
+                out.setLength(mark);
+                pendingSpace = space;
+                return -1;
+            }
+            // &nbsp; and friends count as whitespace for collapsing.
+            if (out.length() == afterSpace + 1 && isSpace(out.charAt(afterSpace))) {
+                out.setLength(mark);
+                pendingSpace = true;
+            }
+            return next;
+        }
+
+        private int tag(int lt) {
+            if (src.startsWith("<!--", lt)) {
+                int end = src.indexOf("-->", lt + 4);
+                return end < 0 ? src.length() : end + 3;
+            }
+            if (src.startsWith("<![CDATA[", lt)) {
+                int end = src.indexOf("]]>", lt + 9);
+                int stop = end < 0 ? src.length() : end;
+                if (verbatimDepth > 0) {
+                    for (int i = lt + 9; i < stop; i++) {
+                        char c = src.charAt(i);
+                        if (c != '\r') {
+                            out.append(c);
+                        }
+                    }
+                } else {
+                    text(lt + 9, stop);
+                }
+                return end < 0 ? src.length() : end + 3;
+            }
+            if (lt + 1 < src.length() && (src.charAt(lt + 1) == '!' || src.charAt(lt + 1) == '?')) {
+                int end = src.indexOf('>', lt);
+                return end < 0 ? src.length() : end + 1;
+            }
+
+            boolean closing = lt + 1 < src.length() && src.charAt(lt + 1) == '/';
+            int nameStart = closing ? lt + 2 : lt + 1;
+            int nameEnd = nameStart;
+            while (nameEnd < src.length()) {
+                char c = src.charAt(nameEnd);
+                if (isSpace(c) || c == '>' || c == '/') {
+                    break;
+                }
+                nameEnd++;
+            }
+            if (nameEnd == nameStart) {
+                // A bare '<' in text.
+                emit('<');
+                return lt + 1;
+            }
+            int end = tagEnd(nameEnd);
+            boolean selfClosing = end > 0 && src.charAt(end - 1) == '/';
+            int next = end + 1;
+            int id = tagId(src, nameStart, nameEnd);
+
+            if (verbatimDepth > 0) {
+                if (id == BR) {
+                    out.append('\n');
+                } else if (closing && (id == PRE || id == PLAIN_TEXT_BODY)) {
+                    closeFence();
+                }
+                return next;
+            }
+            if (closing) {
+                closeTag(id, nameStart);
+                return next;
+            }
+            return openTag(id, nameStart, nameEnd, end, selfClosing, next);
+        }
+
+        private int openTag(int id, int nameStart, int nameEnd, int end, boolean selfClosing, int next) {
+            switch (id) {
+                case HEADING -> {
+                    newline(2);
+                    closeSection(out.length());
+                    headingLevel = src.charAt(nameStart + 1) - '0';
+                    sectionLevel = headingLevel;
+                    sectionStart = out.length();
+                    out.append("######", 0, headingLevel).append(' ');
+                    headingTextStart = out.length();
+                }
+                case BLOCK -> newline(2);
+                case BR -> newline(1);
+                case HR -> {
+                    newline(2);
+                    out.append("---");
+                    newline(2);
+                }
+                case UL, OL -> {
+                    if (listDepth == listCounters.length) {
+                        listCounters = Arrays.copyOf(listCounters, listDepth * 2);
+                    }
+                    listCounters[listDepth++] = id == OL ? 0 : -1;
+                    newline(listDepth == 1 ? 2 : 1);
+                }
+                case LI, TASK -> {
+                    newline(1);
+                    if (cellDepth == 0) {
+                        for (int d = 1; d < listDepth; d++) {
+                            out.append("  ");
+                        }
+                    }
+                    if (id == LI && listDepth > 0 && listCounters[listDepth - 1] >= 0) {
+                        out.append(++listCounters[listDepth - 1]).append(". ");
+                    } else {
+                        out.append("- ");
+                    }
+                }
+                case TABLE -> {
+                    newline(2);
+                    rowIndex = 0;
+                }
+                case TR -> {
+                    newline(1);
+                    out.append('|');
+                    cellsInRow = 0;
+                    rowHasHeader = false;
+                }
+                case CELL -> {
+                    cellDepth++;
+                    cellsInRow++;
+                    rowHasHeader |= Character.toLowerCase(src.charAt(nameStart + 1)) == 'h';
+                    out.append(' ');
+                    pendingSpace = false;
+                }
+                case PRE -> openFence(null);
+                case CODE -> {
+                    flushSpace();
+                    out.append('`');
+                }
+                case RAW_SKIP -> {
+                    if (!selfClosing) {
+                        return skipElement(nameStart, nameEnd, next);
+                    }
+                }
+                case MACRO -> {
+                    if (!selfClosing) {
+                        String name = attribute(nameEnd, end, "ac:name");
+                        if (macroDepth == macroIsCode.length) {
+                            macroIsCode = Arrays.copyOf(macroIsCode, macroDepth * 2);
+                        }
+                        boolean code = "code".equalsIgnoreCase(name) || "noformat".equalsIgnoreCase(name);
+                        macroIsCode[macroDepth++] = code ? 1 : 0;
+                        if (code) {
+                            codeLanguage = null;
+                        }
+                    }
+                }
+                case PARAMETER -> {
+                    if (!selfClosing) {
+                        int close = indexOfIgnoreCase("</", nameStart, nameEnd, next);
+                        if (macroDepth > 0 && macroIsCode[macroDepth - 1] == 1
+                                && "language".equalsIgnoreCase(attribute(nameEnd, end, "ac:name"))) {
+                            codeLanguage = decodeEntities(src.substring(next, close < 0 ? src.length() : close).trim());
+                        }
+                        return skipElement(nameStart, nameEnd, next);
+                    }
+                }
+                case PLAIN_TEXT_BODY -> {
+                    if (!selfClosing && macroDepth > 0 && macroIsCode[macroDepth - 1] == 1) {
+                        openFence(codeLanguage);
+                    }
+                }
+                case LINK -> {
+                    linkStart = out.length();
+                    linkTitle = null;
+                }
+                case RESOURCE -> {
+                    if (linkStart >= 0 && linkTitle == null) {
+                        String title = attribute(nameEnd, end, "ri:content-title");
+                        linkTitle = title != null ? title : attribute(nameEnd, end, "ri:filename");
+                    }
+                }
+                default -> {
+                }
+            }
+            return next;
+        }
+
+        private void closeTag(int id, int nameStart) {
+            switch (id) {
+                case HEADING -> {
+                    if (headingTextStart >= 0) {
+                        sectionHeading = out.substring(headingTextStart).trim();
+                        headingTextStart = -1;
+                    }
+                    newline(2);
+                }
+                case BLOCK -> newline(2);
+                case UL, OL -> {
+                    if (listDepth > 0) {
+                        listDepth--;
+                    }
+                    newline(listDepth == 0 ? 2 : 1);
+                }
+                case LI, TASK -> newline(1);
+                case TABLE -> newline(2);
+                case TR -> {
+                    if (rowIndex++ == 0 && cellsInRow > 0) {
+                        // Markdown tables need a separator after the first row, header or not.
+                        newline(1);
+                        out.append('|');
+                        for (int c = 0; c < cellsInRow; c++) {
+                            out.append(" --- |");
+                        }
+                    }
+                    newline(1);
+                }
+                case CELL -> {
+                    if (cellDepth > 0) {
+                        cellDepth--;
+                    }
+                    trimTrailingSpaces();
+                    out.append(" |");
+                    pendingSpace = false;
+                }
+                case CODE -> out.append('`');
+                case MACRO -> {
+                    if (macroDepth > 0) {
+                        macroDepth--;
+                    }
+                }
+                case LINK -> {
+                    if (linkStart >= 0 && out.length() == linkStart && linkTitle != null) {
+                        flushSpace();
+                        out.append(linkTitle);
+                    }
+                    linkStart = -1;
+                    linkTitle = null;
+                }
+                default -> {
+                }
+            }
+        }
+
+        private void openFence(String language) {
+            newline(2);
+            out.append("```");
+            if (language != null && !language.isEmpty()) {
+                out.append(language);
+            }
+            out.append('\n');
+            verbatimDepth = 1;
+        }
+
+        private void closeFence() {
+            verbatimDepth = 0;
+            if (out.length() > 0 && out.charAt(out.length() - 1) != '\n') {
+                out.append('\n');
+            }
+            out.append("```");
+            newline(2);
+        }
+
+        // Skips an element's content (raw text such as scripts, or macro parameters) up to its close tag.
+        private int skipElement(int nameStart, int nameEnd, int from) {
+            int close = indexOfIgnoreCase("</", nameStart, nameEnd, from);
+            if (close < 0) {
+                return src.length();
+            }
+            int end = src.indexOf('>', close);
+            return end < 0 ? src.length() : end + 1;
+        }
+
+        private int indexOfIgnoreCase(String prefix, int nameStart, int nameEnd, int from) {
+            int nameLength = nameEnd - nameStart;
+            for (int i = src.indexOf(prefix, from); i >= 0; i = src.indexOf(prefix, i + 1)) {
+                if (src.regionMatches(true, i + prefix.length(), src, nameStart, nameLength)) {
+                    int after = i + prefix.length() + nameLength;
+                    if (after >= src.length() || src.charAt(after) == '>' || isSpace(src.charAt(after))) {
+                        return i;
+                    }
+                }
+            }
+            return -1;
+        }
+
+        // Index of the '>' closing a tag, skipping quoted attribute values.
+        private int tagEnd(int from) {
+            char quote = 0;
+            for (int i = from; i < src.length(); i++) {
+                char c = src.charAt(i);
+                if (quote != 0) {
+                    if (c == quote) {
+                        quote = 0;
+                    }
+                } else if (c == '"' || c == '\'') {
+                    quote = c;
+                } else if (c == '>') {
+                    return i;
+                }
+            }
+            return src.length() - 1;
+        }
+
+        private String attribute(int from, int to, String name) {
+            int i = from;
+            while (i < to) {
+                int at = -1;
+                for (int j = i; j + name.length() <= to; j++) {
+                    if (src.regionMatches(true, j, name, 0, name.length()) && isSpace(src.charAt(j - 1))) {
+                        at = j;
+                        break;
+                    }
+                }
+                if (at < 0) {
+                    return null;
+                }
+                int k = at + name.length();
+                while (k < to && isSpace(src.charAt(k))) {
+                    k++;
+                }
+                if (k >= to || src.charAt(k) != '=') {
+                    i = at + name.length();
+                    continue;
+                }
+                k++;
+                while (k < to && isSpace(src.charAt(k))) {
+                    k++;
+                }
+                if (k >= to) {
+                    return null;
+                }
+                char quote = src.charAt(k);
+                if (quote == '"' || quote == '\'') {
+                    int close = src.indexOf(quote, k + 1);
+                    return decodeEntities(src.substring(k + 1, close < 0 || close > to ? to : close));
+                }
+                int close = k;
+                while (close < to && !isSpace(src.charAt(close)) && src.charAt(close) != '/') {
+                    close++;
+                }
+                return decodeEntities(src.substring(k, close));
+            }
+            return null;
+        }
+
+        private void text(int from, int to) {
+            for (int i = from; i < to; i++) {
+                char c = src.charAt(i);
+                if (isSpace(c)) {
+                    pendingSpace = true;
+                } else {
+                    emit(c);
+                }
+            }
+        }
+
+        private void emit(char c) {
+            flushSpace();
+            out.append(c);
+        }
+
+        private void flushSpace() {
+            if (pendingSpace) {
+                pendingSpace = false;
+                int length = out.length();
+                if (length > 0) {
+                    char last = out.charAt(length - 1);
+                    if (last != ' ' && last != '\n') {
+                        out.append(' ');
+                    }
+                }
+            }
+        }
+
+        // Ends the current line and makes sure `count` line breaks separate it from what follows.
+        // Inside table cells line breaks would split the row, so they become spaces.
+        private void newline(int count) {
+            if (cellDepth > 0) {
+                pendingSpace = true;
+                return;
+            }
+            pendingSpace = false;
+            trimTrailingSpaces();
+            int length = out.length();
+            if (length == 0) {
+                return;
+            }
+            int existing = 0;
+            while (existing < count && existing < length && out.charAt(length - 1 - existing) == '\n') {
+                existing++;
+            }
+            for (int n = existing; n < count; n++) {
+                out.append('\n');
+            }
+        }
+
+        private void trimTrailingSpaces() {
+            int length = out.length();
+            while (length > 0 && out.charAt(length - 1) == ' ') {
+                length--;
+            }
+            out.setLength(length);
+        }
+
+        private void trimTrailingWhitespace() {
+            int length = out.length();
+            while (length > 0 && Character.isWhitespace(out.charAt(length - 1))) {
+                length--;
+            }
+            out.setLength(length);
+        }
+
+        private void closeSection(int end) {
+            if (end > sectionStart || sectionLevel > 0) {
+                sections.add(new Section(sectionHeading, sectionLevel, sectionStart, end));
+            }
+            sectionHeading = "";
+            sectionLevel = 0;
+            sectionStart = end;
+        }
+    }
+}
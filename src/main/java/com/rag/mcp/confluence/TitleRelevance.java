@@ -0,0 +1,51 @@
+package com.rag.mcp.confluence;
+
+import com.rag.mcp.retrieval.Tokenizer;
+
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+// Lexical relevance of page titles to a query, for steering the best-first crawl: the share of
+// distinct query terms that appear in the title, from 0 to 1. A title term also matches when one
+// term is a prefix of the other and the shorter has at least MIN_PREFIX letters, so "deploy"
+// matches "deployment" without a stemmer.
+final class TitleRelevance {
+    private static final int MIN_PREFIX = 4;
+
+    private final Set<String> queryTerms;
+
+    TitleRelevance(String query) {
+        this.queryTerms = new LinkedHashSet<>(Tokenizer.tokenize(query));
+    }
+
+    boolean isEmpty() {
+        return queryTerms.isEmpty();
+    }
+
+    double score(String title) {
+        if (queryTerms.isEmpty()) {
+            return 0;
+        }
+        List<String> titleTerms = Tokenizer.tokenize(title);
+        int matched = 0;
+        for (String queryTerm : queryTerms) {
+            for (String titleTerm : titleTerms) {
+                if (matches(queryTerm, titleTerm)) {
+                    matched++;
+                    break;
+                }
+            }
+        }
+        return (double) matched / queryTerms.size();
+    }
+
+    private static boolean matches(String a, String b) {
+        if (a.equals(b)) {
+            return true;
+        }
+        String shorter = a.length() <= b.length() ? a : b;
+        String longer = shorter == a ? b : a;
+        return shorter.length() >= MIN_PREFIX && longer.startsWith(shorter);
+    }
+}
@@ -0,0 +1,96 @@
+package com.rag.mcp.http;
+
+import com.rag.mcp.metrics.Metrics;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+// Caps concurrent requests for one endpoint group. Up to maxInFlight run at once, up to maxQueued
+// wait (at most maxWait) for a slot, and anything beyond that is rejected immediately so the
+// caller can answer 429 instead of letting the request sit behind slow queries.
+public class AdmissionLimiter {
+    private final String name;
+    private final int maxInFlight;
+    private final int maxQueued;
+    private final long maxWaitNanos;
+    private final Semaphore permits;
+    private final AtomicInteger queued = new AtomicInteger();
+    private final LongAdder admitted = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final LongAdder timedOut = new LongAdder();
+    // Exponentially weighted mean time a permit is held, used to suggest Retry-After.
+    private final AtomicLong averageHoldNanos = new AtomicLong();
+
+    public AdmissionLimiter(String name, Limits limits) {
+        this.name = name;
+        this.maxInFlight = Math.max(1, limits.maxInFlight());
+        this.maxQueued = Math.max(0, limits.maxQueued());
+        this.maxWaitNanos = limits.maxWait().toNanos();
+        this.permits = new Semaphore(maxInFlight, true);
+        Metrics.REGISTRY.gauge("mcp_admission_in_flight", "Requests holding an admission slot.",
+                List.of("group"), List.of(name), () -> this.maxInFlight - permits.availablePermits());
+        Metrics.REGISTRY.gauge("mcp_admission_queued", "Requests waiting for an admission slot.",
+                List.of("group"), List.of(name), queued::get);
+    }
+
+    // Returns the acquisition time to pass to release, or -1 when the request must be rejected.
+    public long tryAcquire() throws InterruptedException {
+        if (permits.tryAcquire()) {
+            admitted.increment();
+            return System.nanoTime();
+        }
+        if (queued.incrementAndGet() > maxQueued) {
+            queued.decrementAndGet();
+            rejected.increment();
+            return -1;
+        }
+        try {
+            if (!permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS)) {
+                timedOut.increment();
+                rejected.increment();
+                return -1;
+            }
+        } finally {
+            queued.decrementAndGet();
+        }
+        admitted.increment();
+        return System.nanoTime();
+    }
+
+    public void release(long acquiredAtNanos) {
+        long held = System.nanoTime() - acquiredAtNanos;
+        averageHoldNanos.updateAndGet(previous -> previous == 0 ? held : previous + (held - previous) / 8);
+        permits.release();
+    }
+
+    // Time until a queued request would likely get a slot, rounded up to whole seconds.
+    public long retryAfterSeconds() {
+        long waves = 1 + queued.get() / maxInFlight;
+        long seconds = TimeUnit.NANOSECONDS.toSeconds(averageHoldNanos.get() * waves + 999_999_999L);
+        return Math.max(1, seconds);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("name", name);
+        stats.put("maxInFlight", maxInFlight);
+        stats.put("maxQueued", maxQueued);
+        stats.put("inFlight", maxInFlight - permits.availablePermits());
+        stats.put("queued", queued.get());
+        stats.put("admitted", admitted.sum());
+        stats.put("rejected", rejected.sum());
+        stats.put("timedOut", timedOut.sum());
+        stats.put("averageHoldMillis", TimeUnit.NANOSECONDS.toMillis(averageHoldNanos.get()));
+        return stats;
+    }
+
+    public record Limits(int maxInFlight, int maxQueued, Duration maxWait) {
+    }
+}
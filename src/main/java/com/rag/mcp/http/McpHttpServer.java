@@ -1,36 +1,72 @@
 package com.rag.mcp.http;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
+import com.rag.mcp.confluence.ConfluenceSyncService;
+import com.rag.mcp.metrics.Metrics;
+import com.rag.mcp.model.BatchQueryRequest;
 import com.rag.mcp.model.QueryRequest;
+import com.rag.mcp.service.QueryListener;
 import com.rag.mcp.service.QueryOrchestrator;
+import com.rag.mcp.util.CountingStreams;
+import com.rag.mcp.util.ThreadPools;
 import com.sun.net.httpserver.Headers;
 import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
 import com.sun.net.httpserver.HttpServer;
 
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.io.UncheckedIOException;
 import java.net.InetSocketAddress;
+import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.util.LinkedHashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.LongAdder;
 
 public class McpHttpServer {
     private static final ObjectMapper MAPPER = new ObjectMapper();
     private final QueryOrchestrator orchestrator;
     private final int port;
+    private final ConfluenceSyncService syncService;
+    private final String webhookSecret;
+    private final Executor executor;
+    private final AdmissionLimiter queryLimiter;
+    private final AdmissionLimiter extractLimiter;
 
     public McpHttpServer(QueryOrchestrator orchestrator, int port) {
+        this(orchestrator, port, null, null);
+    }
+
+    public McpHttpServer(QueryOrchestrator orchestrator, int port, ConfluenceSyncService syncService, String webhookSecret) {
+        this(orchestrator, port, syncService, webhookSecret, ThreadPools.perTaskExecutor("http"),
+                new AdmissionLimiter.Limits(16, 64, Duration.ofSeconds(30)),
+                new AdmissionLimiter.Limits(8, 32, Duration.ofSeconds(30)));
+    }
+
+    public McpHttpServer(QueryOrchestrator orchestrator, int port, ConfluenceSyncService syncService, String webhookSecret,
+                         Executor executor, AdmissionLimiter.Limits queryLimits, AdmissionLimiter.Limits extractLimits) {
         this.orchestrator = orchestrator;
         this.port = port;
+        this.syncService = syncService;
+        this.webhookSecret = webhookSecret;
+        this.executor = executor;
+        this.queryLimiter = new AdmissionLimiter("query", queryLimits);
+        this.extractLimiter = new AdmissionLimiter("extract", extractLimits);
     }
 
     public void start() throws IOException {
         HttpServer server = HttpServer.create(new InetSocketAddress(port), 0);
 
-        server.createContext("/api/query", exchange -> {
+        route(server, "/api/query", admitted(queryLimiter, exchange -> {
             try {
                 if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
                     sendJson(exchange, 405, Map.of("status", "error", "message", "Method not allowed"));
@@ -43,24 +79,166 @@ public class McpHttpServer {
             } catch (Exception ex) {
                 sendJson(exchange, 400, errorPayload(ex));
             }
-        });
+        }));
 
-        server.createContext("/api/extract", exchange -> {
+        route(server, "/api/query/stream", admitted(queryLimiter, exchange -> {
+            QueryRequest request;
             try {
                 if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
                     sendJson(exchange, 405, Map.of("status", "error", "message", "Method not allowed"));
                     return;
                 }
+                request = readRequest(exchange.getRequestBody());
+            } catch (Exception ex) {
+                sendJson(exchange, 400, errorPayload(ex));
+                return;
+            }
 
-                QueryRequest request = readRequest(exchange.getRequestBody());
-                Map<String, Object> response = orchestrator.extractOnly(request);
-                sendJson(exchange, 200, response);
+            // Headers are already sent once streaming starts, so failures become an error event.
+            try (SseStream stream = new SseStream(exchange, MAPPER)) {
+                try {
+                    Map<String, Object> response = orchestrator.process(request, new QueryListener() {
+                        @Override
+                        public void onProgress(String stage, Map<String, Object> details) {
+                            Map<String, Object> event = new LinkedHashMap<>();
+                            event.put("stage", stage);
+                            event.putAll(details);
+                            stream.send("progress", event);
+                        }
+
+                        @Override
+                        public void onDelta(String text) {
+                            stream.send("delta", Map.of("text", text));
+                        }
+                    });
+                    stream.send("done", response);
+                } catch (Exception ex) {
+                    stream.send("error", errorPayload(ex));
+                }
+            } catch (UncheckedIOException ex) {
+                // Client disconnected mid-stream; nothing left to report to.
+            }
+        }));
+
+        route(server, "/api/query/batch", admitted(queryLimiter, exchange -> {
+            BatchQueryRequest request;
+            try {
+                if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    sendJson(exchange, 405, Map.of("status", "error", "message", "Method not allowed"));
+                    return;
+                }
+                request = MAPPER.readValue(exchange.getRequestBody(), BatchQueryRequest.class);
+            } catch (Exception ex) {
+                sendJson(exchange, 400, errorPayload(ex));
+                return;
+            }
+
+            // One line per question in the order they finish, then a summary line (or an error line).
+            try (NdjsonStream stream = new NdjsonStream(exchange, MAPPER)) {
+                try {
+                    stream.send(orchestrator.processBatch(request, stream::send));
+                } catch (Exception ex) {
+                    stream.send(errorPayload(ex));
+                }
+            } catch (UncheckedIOException ex) {
+                // Client disconnected mid-stream; the batch stopped at the failed write.
+            }
+        }));
+
+        route(server, "/api/extract", admitted(extractLimiter, exchange -> {
+            QueryRequest request;
+            try {
+                if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    sendJson(exchange, 405, Map.of("status", "error", "message", "Method not allowed"));
+                    return;
+                }
+
+                request = readRequest(exchange.getRequestBody());
+                if (!wantsNdjson(exchange)) {
+                    Map<String, Object> response = orchestrator.extractOnly(request);
+                    sendJson(exchange, 200, response);
+                    return;
+                }
             } catch (Exception ex) {
                 sendJson(exchange, 400, errorPayload(ex));
+                return;
+            }
+
+            // One line per page as it is crawled, then a summary line (or an error line on failure).
+            try (NdjsonStream stream = new NdjsonStream(exchange, MAPPER)) {
+                try {
+                    stream.send(orchestrator.extractOnly(request, stream::send));
+                } catch (Exception ex) {
+                    stream.send(errorPayload(ex));
+                }
+            } catch (UncheckedIOException ex) {
+                // Client disconnected mid-stream; the crawl was stopped by the failed write.
+            }
+        }));
+
+        route(server, "/api/webhook/confluence", exchange -> {
+            try {
+                if (!"POST".equalsIgnoreCase(exchange.getRequestMethod())) {
+                    sendJson(exchange, 405, Map.of("status", "error", "message", "Method not allowed"));
+                    return;
+                }
+                if (syncService == null) {
+                    sendJson(exchange, 404, Map.of("status", "error", "message", "Confluence sync is not configured"));
+                    return;
+                }
+                // Without a secret anyone could drive the sync, so the endpoint does not exist.
+                if (webhookSecret == null || webhookSecret.isBlank()) {
+                    sendJson(exchange, 404, Map.of("status", "error", "message", "Confluence webhook is not configured"));
+                    return;
+                }
+                if (!hasSecret(exchange)) {
+                    sendJson(exchange, 401, Map.of("status", "error", "message", "Invalid webhook secret"));
+                    return;
+                }
+
+                JsonNode event = MAPPER.readTree(exchange.getRequestBody());
+                String eventType = event.path("webhookEvent").asText(event.path("event").asText(""));
+                String pageId = event.path("page").path("id").asText(event.path("content").path("id").asText(""));
+                if (!pageId.matches("\\d+")) {
+                    throw new IllegalArgumentException("Webhook payload has no numeric page id");
+                }
+                syncService.handleEvent(eventType, pageId);
+                sendJson(exchange, 202, Map.of("status", "accepted", "event", eventType, "pageId", pageId));
+            } catch (Exception ex) {
+                sendJson(exchange, 400, errorPayload(ex));
+            }
+        });
+
+        route(server, "/api/stats", exchange -> {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, Map.of("status", "error", "message", "Method not allowed"));
+                return;
+            }
+            // Stats expose internals (cache sizes, page counts, provider latencies), so a configured
+            // secret guards them as well.
+            if (webhookSecret != null && !webhookSecret.isBlank() && !hasSecret(exchange)) {
+                sendJson(exchange, 401, Map.of("status", "error", "message", "Invalid secret"));
+                return;
+            }
+            Map<String, Object> stats = orchestrator.stats();
+            stats.put("admission", List.of(queryLimiter.stats(), extractLimiter.stats()));
+            sendJson(exchange, 200, stats);
+        });
+
+        route(server, "/metrics", exchange -> {
+            if (!"GET".equalsIgnoreCase(exchange.getRequestMethod())) {
+                sendJson(exchange, 405, Map.of("status", "error", "message", "Method not allowed"));
+                return;
+            }
+            byte[] body = Metrics.REGISTRY.scrape().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream outputStream = exchange.getResponseBody()) {
+                outputStream.write(body);
             }
         });
 
-        server.createContext("/", exchange -> {
+        route(server, "/", exchange -> {
             String path = exchange.getRequestURI().getPath();
             if ("/".equals(path) || "/index.html".equals(path)) {
                 serveFile(exchange, Path.of("ui/index.html"), "text/html; charset=UTF-8");
@@ -73,17 +251,78 @@ public class McpHttpServer {
             sendJson(exchange, 404, Map.of("status", "error", "message", "Not found"));
         });
 
-        server.setExecutor(null);
+        server.setExecutor(executor);
         server.start();
         System.out.println("MCP server running at http://localhost:" + port);
     }
 
+    // Every context is metered: duration, status, in-flight count and body bytes, labelled by route.
+    private void route(HttpServer server, String route, HttpHandler handler) {
+        server.createContext(route, exchange -> {
+            long startedAt = System.nanoTime();
+            LongAdder inFlight = Metrics.HTTP_IN_FLIGHT.labels(route);
+            inFlight.increment();
+            exchange.setStreams(new CountingStreams.Input(exchange.getRequestBody(), Metrics.HTTP_REQUEST_BYTES.labels(route)),
+                    new CountingStreams.Output(exchange.getResponseBody(), Metrics.HTTP_RESPONSE_BYTES.labels(route)));
+            try {
+                handler.handle(exchange);
+            } finally {
+                inFlight.decrement();
+                Metrics.HTTP_DURATION.labels(route).recordNanos(System.nanoTime() - startedAt);
+                int status = exchange.getResponseCode();
+                Metrics.HTTP_REQUESTS.labels(route, status < 0 ? "none" : Integer.toString(status)).increment();
+            }
+        });
+    }
+
+    // Runs the handler only once the limiter admits the request; otherwise answers 429 right away.
+    private HttpHandler admitted(AdmissionLimiter limiter, HttpHandler handler) {
+        return exchange -> {
+            long acquiredAt;
+            try {
+                acquiredAt = limiter.tryAcquire();
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                exchange.close();
+                return;
+            }
+            if (acquiredAt < 0) {
+                exchange.getRequestBody().close();
+                exchange.getResponseHeaders().set("Retry-After", Long.toString(limiter.retryAfterSeconds()));
+                sendJson(exchange, 429, Map.of("status", "error", "message", "Server is busy, retry later"));
+                return;
+            }
+            try {
+                handler.handle(exchange);
+            } finally {
+                limiter.release(acquiredAt);
+            }
+        };
+    }
+
+    // Streaming extract is chosen with "Accept: application/x-ndjson" or "?format=ndjson".
+    private boolean wantsNdjson(HttpExchange exchange) {
+        String accept = exchange.getRequestHeaders().getFirst("Accept");
+        if (accept != null && accept.contains("application/x-ndjson")) {
+            return true;
+        }
+        String query = exchange.getRequestURI().getQuery();
+        if (query != null) {
+            for (String param : query.split("&")) {
+                if (param.equals("format=ndjson")) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
     private QueryRequest readRequest(InputStream inputStream) throws IOException {
         return MAPPER.readValue(inputStream, QueryRequest.class);
     }
 
     private void sendJson(HttpExchange exchange, int statusCode, Map<String, Object> payload) throws IOException {
-        byte[] body = MAPPER.writeValueAsBytes(payload);
+        byte[] body = toJson(payload);
         Headers headers = exchange.getResponseHeaders();
         headers.set("Content-Type", "application/json; charset=UTF-8");
         headers.set("Access-Control-Allow-Origin", "*");
@@ -93,6 +332,11 @@ public class McpHttpServer {
         }
     }
 
+    // Response serialization shared by every JSON endpoint; package-private for the benchmarks.
+    static byte[] toJson(Map<String, Object> payload) throws IOException {
+        return MAPPER.writeValueAsBytes(payload);
+    }
+
     private void serveFile(HttpExchange exchange, Path filePath, String contentType) throws IOException {
         if (!Files.exists(filePath)) {
             sendJson(exchange, 404, new LinkedHashMap<>(Map.of("status", "error", "message", "File not found")));
@@ -106,6 +350,21 @@ public class McpHttpServer {
         }
     }
 
+    private boolean hasSecret(HttpExchange exchange) {
+        String provided = exchange.getRequestHeaders().getFirst("X-Webhook-Secret");
+        // The raw query keeps percent-escapes, so a secret with reserved characters is decoded first.
+        String query = exchange.getRequestURI().getRawQuery();
+        if (provided == null && query != null) {
+            for (String param : query.split("&")) {
+                if (param.startsWith("secret=")) {
+                    provided = URLDecoder.decode(param.substring("secret=".length()), StandardCharsets.UTF_8);
+                }
+            }
+        }
+        return provided != null && MessageDigest.isEqual(
+                provided.getBytes(StandardCharsets.UTF_8), webhookSecret.getBytes(StandardCharsets.UTF_8));
+    }
+
     private Map<String, Object> errorPayload(Exception ex) {
         Map<String, Object> payload = new LinkedHashMap<>();
         payload.put("status", "error");
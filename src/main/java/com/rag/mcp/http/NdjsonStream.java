@@ -0,0 +1,50 @@
+package com.rag.mcp.http;
+
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+
+// Writes newline-delimited JSON over a chunked response. Each value goes straight through one
+// streaming generator into the response body and is flushed, so nothing is buffered per line.
+final class NdjsonStream implements AutoCloseable {
+    private final OutputStream outputStream;
+    private final JsonGenerator generator;
+
+    NdjsonStream(HttpExchange exchange, ObjectMapper mapper) throws IOException {
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "application/x-ndjson; charset=UTF-8");
+        headers.set("Cache-Control", "no-cache");
+        headers.set("Access-Control-Allow-Origin", "*");
+        exchange.sendResponseHeaders(200, 0);
+        this.outputStream = exchange.getResponseBody();
+        this.generator = mapper.getFactory().createGenerator(outputStream);
+        // Lines are separated by hand; the generator must not close the body after a value.
+        generator.setRootValueSeparator(null);
+        generator.disable(JsonGenerator.Feature.AUTO_CLOSE_TARGET);
+    }
+
+    // Called from crawl callbacks, so failures (e.g. the client went away) surface unchecked.
+    synchronized void send(Object value) {
+        try {
+            generator.writeObject(value);
+            generator.writeRaw('\n');
+            generator.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            generator.close();
+        } finally {
+            outputStream.close();
+        }
+    }
+}
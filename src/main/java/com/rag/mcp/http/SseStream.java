@@ -0,0 +1,44 @@
+package com.rag.mcp.http;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.UncheckedIOException;
+import java.nio.charset.StandardCharsets;
+
+// Writes Server-Sent Events over a chunked response; every event is flushed as soon as it is sent.
+final class SseStream implements AutoCloseable {
+    private final ObjectMapper mapper;
+    private final OutputStream outputStream;
+
+    SseStream(HttpExchange exchange, ObjectMapper mapper) throws IOException {
+        this.mapper = mapper;
+        Headers headers = exchange.getResponseHeaders();
+        headers.set("Content-Type", "text/event-stream; charset=UTF-8");
+        headers.set("Cache-Control", "no-cache");
+        headers.set("Access-Control-Allow-Origin", "*");
+        exchange.sendResponseHeaders(200, 0);
+        this.outputStream = exchange.getResponseBody();
+    }
+
+    // Called from provider callbacks, so failures (e.g. the client went away) surface unchecked.
+    synchronized void send(String event, Object data) {
+        try {
+            byte[] json = mapper.writeValueAsBytes(data);
+            outputStream.write(("event: " + event + "\ndata: ").getBytes(StandardCharsets.UTF_8));
+            outputStream.write(json);
+            outputStream.write("\n\n".getBytes(StandardCharsets.UTF_8));
+            outputStream.flush();
+        } catch (IOException ex) {
+            throw new UncheckedIOException(ex);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+}
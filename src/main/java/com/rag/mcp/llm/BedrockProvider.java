@@ -1,48 +1,111 @@
 package com.rag.mcp.llm;
 
 import software.amazon.awssdk.regions.Region;
+import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeAsyncClient;
 import software.amazon.awssdk.services.bedrockruntime.BedrockRuntimeClient;
 import software.amazon.awssdk.services.bedrockruntime.model.ContentBlock;
 import software.amazon.awssdk.services.bedrockruntime.model.ConversationRole;
 import software.amazon.awssdk.services.bedrockruntime.model.ConverseRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseResponse;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamRequest;
+import software.amazon.awssdk.services.bedrockruntime.model.ConverseStreamResponseHandler;
 import software.amazon.awssdk.services.bedrockruntime.model.InferenceConfiguration;
 import software.amazon.awssdk.services.bedrockruntime.model.Message;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Consumer;
+
+// Holds one sync and one async Bedrock client for the life of the process; both are thread-safe
+// and keep their own connection pools, so building them per call only added SDK bootstrap and TLS.
 public class BedrockProvider implements LlmProvider {
+    private final BedrockRuntimeClient client;
+    private final BedrockRuntimeAsyncClient asyncClient;
+
+    public BedrockProvider() {
+        Region region = Region.of(System.getenv().getOrDefault("AWS_REGION", "us-east-1"));
+        this.client = BedrockRuntimeClient.builder().region(region).build();
+        this.asyncClient = BedrockRuntimeAsyncClient.builder().region(region).build();
+    }
+
     @Override
     public String generate(String prompt) {
-        String region = System.getenv().getOrDefault("AWS_REGION", "us-east-1");
-        String modelId = System.getenv().getOrDefault("BEDROCK_MODEL_ID", "anthropic.claude-3-5-sonnet-20240620-v1:0");
-
-        try (BedrockRuntimeClient client = BedrockRuntimeClient.builder().region(Region.of(region)).build()) {
-            Message userMessage = Message.builder()
-                    .role(ConversationRole.USER)
-                    .content(ContentBlock.builder().text(prompt).build())
-                    .build();
-
-            ConverseRequest request = ConverseRequest.builder()
-                    .modelId(modelId)
-                    .messages(userMessage)
-                    .inferenceConfig(InferenceConfiguration.builder()
-                            .maxTokens(2048)
-                            .temperature(0.3f)
-                            .build())
-                    .build();
-
-            return client.converse(request)
-                    .output()
-                    .message()
-                    .content()
-                    .stream()
-                    .map(ContentBlock::text)
-                    .filter(text -> text != null && !text.isBlank())
-                    .findFirst()
-                    .orElseThrow(() -> new IllegalStateException("Bedrock response had no text output"));
+        ConverseRequest request = ConverseRequest.builder()
+                .modelId(modelId())
+                .messages(userMessage(prompt))
+                .inferenceConfig(inferenceConfig())
+                .build();
+        return textOf(client.converse(request));
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        ConverseRequest request = ConverseRequest.builder()
+                .modelId(modelId())
+                .messages(userMessage(prompt))
+                .inferenceConfig(inferenceConfig())
+                .build();
+        return asyncClient.converse(request).thenApply(BedrockProvider::textOf);
+    }
+
+    @Override
+    public String generateStream(String prompt, Consumer<String> onDelta) throws Exception {
+        ConverseStreamRequest request = ConverseStreamRequest.builder()
+                .modelId(modelId())
+                .messages(userMessage(prompt))
+                .inferenceConfig(inferenceConfig())
+                .build();
+
+        StringBuilder answer = new StringBuilder();
+        ConverseStreamResponseHandler handler = ConverseStreamResponseHandler.builder()
+                .subscriber(ConverseStreamResponseHandler.Visitor.builder()
+                        .onContentBlockDelta(event -> {
+                            String text = event.delta().text();
+                            if (text != null && !text.isEmpty()) {
+                                answer.append(text);
+                                onDelta.accept(text);
+                            }
+                        })
+                        .build())
+                .build();
+
+        asyncClient.converseStream(request, handler).get();
+        if (answer.length() == 0) {
+            throw new IllegalStateException("Bedrock response had no text output");
         }
+        return answer.toString();
     }
 
     @Override
     public String name() {
         return "bedrock";
     }
+
+    private static String modelId() {
+        return System.getenv().getOrDefault("BEDROCK_MODEL_ID", "anthropic.claude-3-5-sonnet-20240620-v1:0");
+    }
+
+    private static Message userMessage(String prompt) {
+        return Message.builder()
+                .role(ConversationRole.USER)
+                .content(ContentBlock.builder().text(prompt).build())
+                .build();
+    }
+
+    private static InferenceConfiguration inferenceConfig() {
+        return InferenceConfiguration.builder()
+                .maxTokens(2048)
+                .temperature(0.3f)
+                .build();
+    }
+
+    private static String textOf(ConverseResponse response) {
+        return response.output()
+                .message()
+                .content()
+                .stream()
+                .map(ContentBlock::text)
+                .filter(text -> text != null && !text.isBlank())
+                .findFirst()
+                .orElseThrow(() -> new IllegalStateException("Bedrock response had no text output"));
+    }
 }
@@ -0,0 +1,176 @@
+package com.rag.mcp.llm;
+
+import com.rag.mcp.util.SingleFlight;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Shares one in-flight LLM call between concurrent callers sending the same prompt (by SHA-256).
+// Streaming callers that join late first receive the text generated so far, then live deltas.
+public class CoalescingLlmProvider implements LlmProvider {
+    private final LlmProvider delegate;
+    private final SingleFlight<String, String> calls = new SingleFlight<>();
+    private final Map<String, Fanout> streams = new ConcurrentHashMap<>();
+    private final LongAdder streamsStarted = new LongAdder();
+    private final LongAdder streamsJoined = new LongAdder();
+
+    public CoalescingLlmProvider(LlmProvider delegate) {
+        this.delegate = delegate;
+    }
+
+    @Override
+    public String generate(String prompt) throws Exception {
+        return SingleFlight.await(generateAsync(prompt));
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        return calls.execute(hash(prompt), () -> delegate.generateAsync(prompt));
+    }
+
+    @Override
+    public String generateStream(String prompt, Consumer<String> onDelta) throws Exception {
+        String key = hash(prompt);
+        while (true) {
+            Fanout created = new Fanout(key);
+            Fanout existing = streams.putIfAbsent(key, created);
+            Fanout fanout = existing == null ? created : existing;
+            if (!fanout.subscribe(onDelta)) {
+                // That stream just finished or was abandoned; reuse its answer or start over.
+                streams.remove(key, fanout);
+                if (fanout.result.isDone() && !fanout.result.isCompletedExceptionally()) {
+                    String answer = fanout.result.join();
+                    onDelta.accept(answer);
+                    return answer;
+                }
+                continue;
+            }
+            if (existing == null) {
+                streamsStarted.increment();
+                fanout.start(prompt);
+            } else {
+                streamsJoined.increment();
+            }
+
+            CompletableFuture<String> view = fanout.result.copy();
+            try {
+                return SingleFlight.await(view);
+            } finally {
+                fanout.unsubscribe(onDelta);
+            }
+        }
+    }
+
+    @Override
+    public String name() {
+        return delegate.name();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("calls", calls.stats());
+        stats.put("streamsStarted", streamsStarted.sum());
+        stats.put("streamsJoined", streamsJoined.sum());
+        return stats;
+    }
+
+    private static String hash(String prompt) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return HexFormat.of().formatHex(digest.digest(prompt.getBytes(StandardCharsets.UTF_8)));
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    // One streaming call and its subscribers. New subscribers first get the text so far.
+    // A subscriber whose callback fails (its client disconnected) is dropped and the rest continue.
+    // When the last subscriber leaves before the answer is complete, the call is interrupted.
+    private final class Fanout {
+        private final String key;
+        private final CompletableFuture<String> result = new CompletableFuture<>();
+        private final StringBuilder text = new StringBuilder();
+        private final List<Consumer<String>> subscribers = new ArrayList<>();
+        private Future<?> task;
+        private boolean closed;
+
+        Fanout(String key) {
+            this.key = key;
+        }
+
+        void start(String prompt) {
+            Future<?> submitted = LlmExecutors.BLOCKING.submit(() -> {
+                try {
+                    result.complete(delegate.generateStream(prompt, this::publish));
+                } catch (Exception ex) {
+                    result.completeExceptionally(ex);
+                } finally {
+                    close();
+                }
+            });
+            synchronized (this) {
+                task = submitted;
+                if (closed && !result.isDone()) {
+                    submitted.cancel(true);
+                }
+            }
+        }
+
+        synchronized boolean subscribe(Consumer<String> subscriber) {
+            if (closed) {
+                return false;
+            }
+            if (text.length() == 0 || deliver(subscriber, text.toString())) {
+                subscribers.add(subscriber);
+            }
+            return true;
+        }
+
+        synchronized void unsubscribe(Consumer<String> subscriber) {
+            subscribers.remove(subscriber);
+            if (subscribers.isEmpty() && !result.isDone()) {
+                abandon();
+            }
+        }
+
+        synchronized void publish(String delta) {
+            text.append(delta);
+            if (subscribers.removeIf(subscriber -> !deliver(subscriber, delta)) && subscribers.isEmpty()) {
+                abandon();
+            }
+        }
+
+        private synchronized void close() {
+            closed = true;
+            streams.remove(key, this);
+        }
+
+        private void abandon() {
+            close();
+            if (task != null) {
+                task.cancel(true);
+            }
+            result.cancel(true);
+        }
+
+        private boolean deliver(Consumer<String> subscriber, String delta) {
+            try {
+                subscriber.accept(delta);
+                return true;
+            } catch (RuntimeException ex) {
+                return false;
+            }
+        }
+    }
+}
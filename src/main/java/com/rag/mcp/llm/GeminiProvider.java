@@ -9,45 +9,121 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class GeminiProvider implements LlmProvider {
     private static final ObjectMapper MAPPER = new ObjectMapper();
-    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(20)).build();
+    private final HttpClient httpClient;
+
+    public GeminiProvider() {
+        this(HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(20)).build());
+    }
+
+    // Shares the caller's client so every provider reuses one connection pool.
+    public GeminiProvider(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
 
     @Override
     public String generate(String prompt) throws Exception {
+        HttpRequest request = buildRequest(prompt, "generateContent");
+        return parseResponse(httpClient.send(request, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        HttpRequest request;
+        try {
+            request = buildRequest(prompt, "generateContent");
+        } catch (Exception ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+            try {
+                return parseResponse(response);
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    @Override
+    public String generateStream(String prompt, Consumer<String> onDelta) throws Exception {
+        HttpRequest request = buildRequest(prompt, "streamGenerateContent");
+        HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            String body;
+            try (Stream<String> lines = response.body()) {
+                body = lines.collect(Collectors.joining("\n"));
+            }
+            throw new IllegalStateException("Gemini request failed: " + response.statusCode() + " - " + body);
+        }
+
+        // alt=sse: each "data:" line is a full GenerateContentResponse holding the next text piece.
+        StringBuilder answer = new StringBuilder();
+        try (Stream<String> lines = response.body()) {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                String line = iterator.next();
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                JsonNode parts = MAPPER.readTree(line.substring(5)).path("candidates").path(0).path("content").path("parts");
+                for (JsonNode part : parts) {
+                    String text = part.path("text").asText("");
+                    if (!text.isEmpty()) {
+                        answer.append(text);
+                        onDelta.accept(text);
+                    }
+                }
+            }
+        }
+        if (answer.length() == 0) {
+            throw new IllegalStateException("Gemini response had no text output");
+        }
+        return answer.toString();
+    }
+
+    private String parseResponse(HttpResponse<String> response) throws Exception {
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IllegalStateException("Gemini request failed: " + response.statusCode() + " - " + response.body());
+        }
+
+        JsonNode root = MAPPER.readTree(response.body());
+        JsonNode textNode = root.path("candidates").path(0).path("content").path("parts").path(0).path("text");
+        if (textNode.isMissingNode() || textNode.isNull()) {
+            throw new IllegalStateException("Gemini response had no text output");
+        }
+        return textNode.asText();
+    }
+
+    private HttpRequest buildRequest(String prompt, String method) throws Exception {
         String apiKey = System.getenv("GEMINI_API_KEY");
         if (apiKey == null || apiKey.isBlank()) {
             throw new IllegalStateException("GEMINI_API_KEY is not configured");
         }
 
         String model = System.getenv().getOrDefault("GEMINI_MODEL", "gemini-1.5-flash");
-        String endpoint = "https://generativelanguage.googleapis.com/v1beta/models/" + model + ":generateContent?key=" + apiKey;
+        String streamParams = "streamGenerateContent".equals(method) ? "alt=sse&" : "";
+        String endpoint = "https://generativelanguage.googleapis.com/v1beta/models/" + model + ":" + method + "?" + streamParams + "key=" + apiKey;
 
         String payload = MAPPER.writeValueAsString(Map.of(
                 "contents", new Object[]{Map.of("parts", new Object[]{Map.of("text", prompt)})},
                 "generationConfig", Map.of("temperature", 0.3, "maxOutputTokens", 2048)
         ));
 
-        HttpRequest request = HttpRequest.newBuilder()
+        return HttpRequest.newBuilder()
                 .uri(URI.create(endpoint))
                 .header("Content-Type", "application/json")
                 .timeout(Duration.ofSeconds(60))
                 .POST(HttpRequest.BodyPublishers.ofString(payload, StandardCharsets.UTF_8))
                 .build();
-
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        if (response.statusCode() < 200 || response.statusCode() >= 300) {
-            throw new IllegalStateException("Gemini request failed: " + response.statusCode() + " - " + response.body());
-        }
-
-        JsonNode root = MAPPER.readTree(response.body());
-        JsonNode textNode = root.path("candidates").path(0).path("content").path("parts").path(0).path("text");
-        if (textNode.isMissingNode() || textNode.isNull()) {
-            throw new IllegalStateException("Gemini response had no text output");
-        }
-        return textNode.asText();
     }
 
     @Override
@@ -9,15 +9,103 @@ import java.net.http.HttpRequest;
 import java.net.http.HttpResponse;
 import java.nio.charset.StandardCharsets;
 import java.time.Duration;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class GitLabDuoProvider implements LlmProvider {
     private static final ObjectMapper MAPPER = new ObjectMapper();
-    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(20)).build();
+    private final HttpClient httpClient;
+
+    public GitLabDuoProvider() {
+        this(HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(20)).build());
+    }
+
+    // Shares the caller's client so every provider reuses one connection pool.
+    public GitLabDuoProvider(HttpClient httpClient) {
+        this.httpClient = httpClient;
+    }
 
     @Override
     public String generate(String prompt) throws Exception {
+        HttpRequest request = buildRequest(prompt, false);
+        return parseResponse(httpClient.send(request, HttpResponse.BodyHandlers.ofString()));
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        HttpRequest request;
+        try {
+            request = buildRequest(prompt, false);
+        } catch (Exception ex) {
+            return CompletableFuture.failedFuture(ex);
+        }
+        return httpClient.sendAsync(request, HttpResponse.BodyHandlers.ofString()).thenApply(response -> {
+            try {
+                return parseResponse(response);
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        });
+    }
+
+    @Override
+    public String generateStream(String prompt, Consumer<String> onDelta) throws Exception {
+        HttpRequest request = buildRequest(prompt, true);
+        HttpResponse<Stream<String>> response = httpClient.send(request, HttpResponse.BodyHandlers.ofLines());
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            String body;
+            try (Stream<String> lines = response.body()) {
+                body = lines.collect(Collectors.joining("\n"));
+            }
+            throw new IllegalStateException("GitLab Duo request failed: " + response.statusCode() + " - " + body);
+        }
+
+        // OpenAI-style chunks: data: {"choices":[{"delta":{"content":"..."}}]} ... data: [DONE]
+        StringBuilder answer = new StringBuilder();
+        try (Stream<String> lines = response.body()) {
+            Iterator<String> iterator = lines.iterator();
+            while (iterator.hasNext()) {
+                String line = iterator.next();
+                if (!line.startsWith("data:")) {
+                    continue;
+                }
+                String data = line.substring(5).trim();
+                if ("[DONE]".equals(data)) {
+                    break;
+                }
+                String text = MAPPER.readTree(data).path("choices").path(0).path("delta").path("content").asText("");
+                if (!text.isEmpty()) {
+                    answer.append(text);
+                    onDelta.accept(text);
+                }
+            }
+        }
+        if (answer.length() == 0) {
+            throw new IllegalStateException("GitLab Duo response had no text output");
+        }
+        return answer.toString();
+    }
+
+    private String parseResponse(HttpResponse<String> response) throws Exception {
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IllegalStateException("GitLab Duo request failed: " + response.statusCode() + " - " + response.body());
+        }
+
+        JsonNode root = MAPPER.readTree(response.body());
+        JsonNode textNode = root.path("choices").path(0).path("message").path("content");
+        if (textNode.isMissingNode() || textNode.isNull()) {
+            throw new IllegalStateException("GitLab Duo response had no text output");
+        }
+        return textNode.asText();
+    }
+
+    private HttpRequest buildRequest(String prompt, boolean stream) throws Exception {
         String token = System.getenv("GITLAB_TOKEN");
         if (token == null || token.isBlank()) {
             throw new IllegalStateException("GITLAB_TOKEN is not configured");
@@ -35,28 +123,16 @@ public class GitLabDuoProvider implements LlmProvider {
                 ),
                 "max_tokens", 2048,
                 "temperature", 0.3,
-                "stream", false
+                "stream", stream
         ));
 
-        HttpRequest request = HttpRequest.newBuilder()
+        return HttpRequest.newBuilder()
                 .uri(URI.create(endpoint))
                 .header("Authorization", "Bearer " + token)
                 .header("Content-Type", "application/json")
                 .timeout(Duration.ofSeconds(90))
                 .POST(HttpRequest.BodyPublishers.ofString(payload, StandardCharsets.UTF_8))
                 .build();
-
-        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
-        if (response.statusCode() < 200 || response.statusCode() >= 300) {
-            throw new IllegalStateException("GitLab Duo request failed: " + response.statusCode() + " - " + response.body());
-        }
-
-        JsonNode root = MAPPER.readTree(response.body());
-        JsonNode textNode = root.path("choices").path(0).path("message").path("content");
-        if (textNode.isMissingNode() || textNode.isNull()) {
-            throw new IllegalStateException("GitLab Duo response had no text output");
-        }
-        return textNode.asText();
     }
 
     @Override
@@ -0,0 +1,19 @@
+package com.rag.mcp.llm;
+
+import com.rag.mcp.model.ProviderType;
+
+import java.time.Duration;
+import java.util.List;
+
+// Where a call goes when its provider is slow or fails. fallbacks are tried in order after the
+// provider before them fails; the first one is also the hedge target. With hedge on, the prompt is
+// also sent to it once the primary has run longer than the given percentile of its recent latency
+// (time to first delta for streams), or than delay until enough calls have been seen, or always
+// with percentile 0.
+public record HedgePolicy(List<ProviderType> fallbacks, boolean hedge, Duration delay, double percentile) {
+    public static final HedgePolicy NONE = new HedgePolicy(List.of(), false, Duration.ZERO, 0);
+
+    public HedgePolicy {
+        fallbacks = List.copyOf(fallbacks);
+    }
+}
@@ -0,0 +1,279 @@
+package com.rag.mcp.llm;
+
+import com.rag.mcp.util.SingleFlight;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+
+// Runs each call against a primary provider with hedging and fallback per HedgePolicy. A hedge
+// sends the same prompt to the first fallback while the primary is still running; the first good
+// answer wins and the other call is cancelled. For streams the race is decided by the first delta,
+// and from then on only the winner's text reaches the caller. A failed call moves on to the next
+// provider in the chain, unless it had already streamed text to the caller.
+public class HedgingLlmProvider implements LlmProvider {
+    private final List<Route> chain;
+    private final HedgePolicy policy;
+
+    private final LongAdder calls = new LongAdder();
+    private final LongAdder hedges = new LongAdder();
+    private final LongAdder hedgeWins = new LongAdder();
+    private final LongAdder fallbacks = new LongAdder();
+    private final LongAdder failures = new LongAdder();
+
+    // chain holds the primary first, then its fallbacks in order.
+    HedgingLlmProvider(List<Route> chain, HedgePolicy policy) {
+        this.chain = List.copyOf(chain);
+        this.policy = policy;
+    }
+
+    @Override
+    public String generate(String prompt) throws Exception {
+        return generateAnswer(prompt, null).text();
+    }
+
+    @Override
+    public String generateStream(String prompt, Consumer<String> onDelta) throws Exception {
+        return generateAnswer(prompt, onDelta).text();
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        Race race = new Race(prompt, null);
+        race.start();
+        CompletableFuture<String> text = race.result.thenApply(Answer::text);
+        text.whenComplete((value, error) -> {
+            if (error instanceof CancellationException) {
+                race.cancel();
+            }
+        });
+        return text;
+    }
+
+    // Like generateStream (or generate, with onDelta null), and also reports which provider answered.
+    public Answer generateAnswer(String prompt, Consumer<String> onDelta) throws Exception {
+        Race race = new Race(prompt, onDelta);
+        race.start();
+        try {
+            return SingleFlight.await(race.result);
+        } catch (InterruptedException ex) {
+            race.cancel();
+            throw ex;
+        }
+    }
+
+    @Override
+    public String name() {
+        return chain.get(0).provider().name();
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        List<String> fallbackNames = new ArrayList<>();
+        for (int i = 1; i < chain.size(); i++) {
+            fallbackNames.add(chain.get(i).provider().name());
+        }
+        stats.put("fallbacks", fallbackNames);
+        stats.put("hedge", policy.hedge() && chain.size() > 1);
+        stats.put("calls", calls.sum());
+        stats.put("hedged", hedges.sum());
+        stats.put("hedgeWins", hedgeWins.sum());
+        stats.put("fellBack", fallbacks.sum());
+        stats.put("failed", failures.sum());
+        return stats;
+    }
+
+    // Hedge delay for the primary, or -1 when this call is not hedged.
+    private long hedgeDelayNanos(boolean streaming) {
+        if (!policy.hedge() || chain.size() < 2) {
+            return -1;
+        }
+        long learned = policy.percentile() > 0
+                ? chain.get(0).latency().percentileNanos(streaming, policy.percentile()) : -1;
+        return learned >= 0 ? learned : policy.delay().toNanos();
+    }
+
+    private static Exception unwrap(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof Exception exception ? exception : new IllegalStateException(cause);
+    }
+
+    record Route(LlmProvider provider, LatencyTracker latency) {
+    }
+
+    // failedProviders lists the providers whose calls failed before the answer came in.
+    public record Answer(String text, String provider, boolean hedged, List<String> failedProviders) {
+    }
+
+    // One call's attempts. Attempts start in chain order: the primary, then a hedge after the delay
+    // or a fallback after a failure, whichever comes first, and so on down the chain.
+    private final class Race {
+        private final String prompt;
+        private final Consumer<String> onDelta;
+        private final CompletableFuture<Answer> result = new CompletableFuture<>();
+        private final Map<Integer, Future<?>> attempts = new HashMap<>();
+        private final List<String> failed = new ArrayList<>();
+        private Exception firstError;
+        private int next;
+        private int active;
+        private int owner = -1;
+        private boolean hedged;
+
+        Race(String prompt, Consumer<String> onDelta) {
+            this.prompt = prompt;
+            this.onDelta = onDelta;
+        }
+
+        void start() {
+            calls.increment();
+            launch();
+            long delay = hedgeDelayNanos(onDelta != null);
+            if (delay >= 0) {
+                CompletableFuture.delayedExecutor(delay, TimeUnit.NANOSECONDS).execute(this::hedge);
+            }
+        }
+
+        void cancel() {
+            synchronized (this) {
+                result.cancel(true);
+            }
+            cancelAttempts(-1);
+        }
+
+        private void hedge() {
+            synchronized (this) {
+                // Only while the primary is the sole attempt and has not started streaming.
+                if (result.isDone() || owner >= 0 || next != 1 || active == 0) {
+                    return;
+                }
+                hedged = true;
+            }
+            hedges.increment();
+            launch();
+        }
+
+        private void launch() {
+            int index;
+            synchronized (this) {
+                if (result.isDone() || next >= chain.size()) {
+                    return;
+                }
+                index = next++;
+                active++;
+            }
+            Route route = chain.get(index);
+            long startedAt = System.nanoTime();
+            Future<?> attempt;
+            if (onDelta == null) {
+                CompletableFuture<String> call;
+                try {
+                    call = route.provider().generateAsync(prompt);
+                } catch (RuntimeException ex) {
+                    call = CompletableFuture.failedFuture(ex);
+                }
+                attempt = call;
+                call.whenComplete((text, error) -> finished(index, startedAt, text,
+                        error == null ? null : unwrap(error)));
+            } else {
+                attempt = LlmExecutors.BLOCKING.submit(() -> {
+                    String text;
+                    try {
+                        text = route.provider().generateStream(prompt, delta -> deliver(index, startedAt, delta));
+                    } catch (Exception ex) {
+                        finished(index, startedAt, null, ex);
+                        return;
+                    }
+                    finished(index, startedAt, text, null);
+                });
+            }
+            synchronized (this) {
+                if (!result.isDone()) {
+                    attempts.put(index, attempt);
+                    return;
+                }
+            }
+            attempt.cancel(true);
+        }
+
+        // The first attempt to produce text owns the stream; any other attempt is stopped here.
+        private void deliver(int index, long startedAt, String delta) {
+            boolean first = false;
+            synchronized (this) {
+                if (owner < 0 && !result.isDone()) {
+                    owner = index;
+                    first = true;
+                }
+                if (owner != index) {
+                    throw new CancellationException("Another provider answered first");
+                }
+            }
+            if (first) {
+                chain.get(index).latency().recordFirstDelta(System.nanoTime() - startedAt);
+                cancelAttempts(index);
+            }
+            onDelta.accept(delta);
+        }
+
+        private void finished(int index, long startedAt, String text, Exception error) {
+            boolean fallBack = false;
+            synchronized (this) {
+                active--;
+                attempts.remove(index);
+                if (result.isDone() || (owner >= 0 && owner != index)) {
+                    return;
+                }
+                if (error == null) {
+                    Route route = chain.get(index);
+                    route.latency().recordCompletion(System.nanoTime() - startedAt);
+                    if (hedged && index == 1) {
+                        hedgeWins.increment();
+                    }
+                    result.complete(new Answer(text == null ? "" : text, route.provider().name(), hedged, List.copyOf(failed)));
+                } else {
+                    failed.add(chain.get(index).provider().name());
+                    if (firstError == null) {
+                        firstError = error;
+                    } else if (firstError != error) {
+                        firstError.addSuppressed(error);
+                    }
+                    if (owner == index || (active == 0 && next >= chain.size())) {
+                        // Text already reached the caller, or there is nothing left to try.
+                        failures.increment();
+                        result.completeExceptionally(owner == index ? error : firstError);
+                    } else if (active == 0) {
+                        fallBack = true;
+                    }
+                }
+            }
+            if (result.isDone()) {
+                cancelAttempts(index);
+            } else if (fallBack) {
+                fallbacks.increment();
+                launch();
+            }
+        }
+
+        private void cancelAttempts(int except) {
+            List<Future<?>> others = new ArrayList<>();
+            synchronized (this) {
+                attempts.forEach((index, attempt) -> {
+                    if (index != except) {
+                        others.add(attempt);
+                    }
+                });
+            }
+            for (Future<?> attempt : others) {
+                attempt.cancel(true);
+            }
+        }
+    }
+}
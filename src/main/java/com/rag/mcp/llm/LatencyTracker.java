@@ -0,0 +1,77 @@
+package com.rag.mcp.llm;
+
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+// Sliding window of one provider's recent successful call latencies: time to the full answer and,
+// for streams, time to the first delta. Percentiles sort a copy of the window, which is cheap next
+// to an LLM call.
+final class LatencyTracker {
+    private static final int WINDOW = 256;
+    // Fewer samples than this give no percentile, so the policy's fixed delay applies.
+    private static final int MIN_SAMPLES = 20;
+
+    private final Window completion = new Window();
+    private final Window firstDelta = new Window();
+
+    void recordCompletion(long nanos) {
+        completion.add(nanos);
+    }
+
+    void recordFirstDelta(long nanos) {
+        firstDelta.add(nanos);
+    }
+
+    // -1 until enough calls have been seen.
+    long percentileNanos(boolean streaming, double percentile) {
+        return (streaming ? firstDelta : completion).percentile(percentile);
+    }
+
+    Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("completion", completion.stats());
+        stats.put("firstDelta", firstDelta.stats());
+        return stats;
+    }
+
+    private static final class Window {
+        private final long[] samples = new long[WINDOW];
+        private int count;
+        private int next;
+
+        synchronized void add(long nanos) {
+            samples[next] = nanos;
+            next = (next + 1) % WINDOW;
+            count = Math.min(WINDOW, count + 1);
+        }
+
+        synchronized long percentile(double percentile) {
+            if (count < MIN_SAMPLES) {
+                return -1;
+            }
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            int rank = (int) Math.ceil(percentile / 100 * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, rank))];
+        }
+
+        Map<String, Object> stats() {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            int samples;
+            synchronized (this) {
+                samples = count;
+            }
+            stats.put("samples", samples);
+            stats.put("p50Ms", millis(percentile(50)));
+            stats.put("p95Ms", millis(percentile(95)));
+            stats.put("p99Ms", millis(percentile(99)));
+            return stats;
+        }
+
+        private static Long millis(long nanos) {
+            return nanos < 0 ? null : TimeUnit.NANOSECONDS.toMillis(nanos);
+        }
+    }
+}
@@ -0,0 +1,12 @@
+package com.rag.mcp.llm;
+
+import com.rag.mcp.util.ThreadPools;
+
+import java.util.concurrent.ExecutorService;
+
+final class LlmExecutors {
+    static final ExecutorService BLOCKING = ThreadPools.perTaskExecutor("llm-call");
+
+    private LlmExecutors() {
+    }
+}
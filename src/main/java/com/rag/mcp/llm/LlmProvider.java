@@ -1,7 +1,31 @@
 package com.rag.mcp.llm;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
 public interface LlmProvider {
     String generate(String prompt) throws Exception;
 
+    // Streams text deltas to onDelta as they arrive and returns the full answer.
+    // Providers without a streaming API deliver the whole answer as a single delta.
+    default String generateStream(String prompt, Consumer<String> onDelta) throws Exception {
+        String answer = generate(prompt);
+        onDelta.accept(answer);
+        return answer;
+    }
+
+    // Non-blocking variant for callers that fan out many prompts. Providers backed by an async
+    // client override this; the default runs the blocking call on a shared per-task executor.
+    default CompletableFuture<String> generateAsync(String prompt) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return generate(prompt);
+            } catch (Exception ex) {
+                throw new CompletionException(ex);
+            }
+        }, LlmExecutors.BLOCKING);
+    }
+
     String name();
 }
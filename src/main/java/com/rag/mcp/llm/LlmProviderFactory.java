@@ -1,13 +1,79 @@
 package com.rag.mcp.llm;
 
 import com.rag.mcp.model.ProviderType;
+import com.rag.mcp.util.ThreadPools;
 
+import java.net.http.HttpClient;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Registry of long-lived providers: each is built on first use and reused for every request,
+// behind a CoalescingLlmProvider so identical concurrent prompts share one call.
+// Gemini and GitLab Duo share one HttpClient (and so one connection pool); its async callbacks
+// run on a per-task executor so generateAsync never pins a platform thread while waiting.
+// Callers get a HedgingLlmProvider routing to the requested provider and its fallbacks.
 public class LlmProviderFactory {
-    public LlmProvider getProvider(ProviderType providerType) {
+    private final HttpClient httpClient = HttpClient.newBuilder()
+            .connectTimeout(Duration.ofSeconds(20))
+            .executor(ThreadPools.perTaskExecutor("llm-http"))
+            .build();
+    private final Map<ProviderType, CoalescingLlmProvider> providers = new ConcurrentHashMap<>();
+    private final Map<ProviderType, LatencyTracker> latencies = new ConcurrentHashMap<>();
+    private final Map<ProviderType, HedgingLlmProvider> routed = new ConcurrentHashMap<>();
+    private final HedgePolicy hedgePolicy;
+
+    public LlmProviderFactory() {
+        this(HedgePolicy.NONE);
+    }
+
+    public LlmProviderFactory(HedgePolicy hedgePolicy) {
+        this.hedgePolicy = hedgePolicy;
+    }
+
+    public HedgingLlmProvider getProvider(ProviderType providerType) {
+        return routed.computeIfAbsent(providerType, type -> {
+            List<HedgingLlmProvider.Route> chain = new ArrayList<>();
+            chain.add(route(type));
+            for (ProviderType fallback : hedgePolicy.fallbacks()) {
+                if (fallback != type) {
+                    chain.add(route(fallback));
+                }
+            }
+            return new HedgingLlmProvider(chain, hedgePolicy);
+        });
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        providers.forEach((type, provider) -> {
+            Map<String, Object> providerStats = provider.stats();
+            providerStats.put("latency", latencies.get(type).stats());
+            HedgingLlmProvider routing = routed.get(type);
+            if (routing != null) {
+                providerStats.put("routing", routing.stats());
+            }
+            stats.put(provider.name(), providerStats);
+        });
+        return stats;
+    }
+
+    private HedgingLlmProvider.Route route(ProviderType type) {
+        // The tracker goes in first, so stats never sees a provider without one.
+        LatencyTracker latency = latencies.computeIfAbsent(type, key -> new LatencyTracker());
+        return new HedgingLlmProvider.Route(
+                providers.computeIfAbsent(type, key -> new CoalescingLlmProvider(new MeteredLlmProvider(create(key)))),
+                latency);
+    }
+
+    private LlmProvider create(ProviderType providerType) {
         return switch (providerType) {
             case BEDROCK -> new BedrockProvider();
-            case GEMINI -> new GeminiProvider();
-            case GITLAB_DUO -> new GitLabDuoProvider();
+            case GEMINI -> new GeminiProvider(httpClient);
+            case GITLAB_DUO -> new GitLabDuoProvider(httpClient);
         };
     }
 }
@@ -0,0 +1,97 @@
+package com.rag.mcp.llm;
+
+import com.rag.mcp.metrics.Metrics;
+
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.function.Consumer;
+
+// Records every upstream call of one provider: duration by call type, outcome, time to the first
+// streamed delta, in-flight count, prompt and answer sizes. Sits under the coalescing layer, so
+// a prompt shared by several callers is counted once.
+final class MeteredLlmProvider implements LlmProvider {
+    private final LlmProvider delegate;
+    private final String name;
+
+    MeteredLlmProvider(LlmProvider delegate) {
+        this.delegate = delegate;
+        this.name = delegate.name();
+    }
+
+    @Override
+    public String generate(String prompt) throws Exception {
+        long startedAt = start(prompt);
+        try {
+            return finish("blocking", startedAt, delegate.generate(prompt));
+        } catch (Exception ex) {
+            throw fail("blocking", startedAt, ex);
+        }
+    }
+
+    @Override
+    public String generateStream(String prompt, Consumer<String> onDelta) throws Exception {
+        long startedAt = start(prompt);
+        boolean[] first = {true};
+        try {
+            return finish("stream", startedAt, delegate.generateStream(prompt, delta -> {
+                if (first[0]) {
+                    first[0] = false;
+                    Metrics.LLM_FIRST_DELTA.labels(name).recordNanos(System.nanoTime() - startedAt);
+                }
+                onDelta.accept(delta);
+            }));
+        } catch (Exception ex) {
+            throw fail("stream", startedAt, ex);
+        }
+    }
+
+    @Override
+    public CompletableFuture<String> generateAsync(String prompt) {
+        long startedAt = start(prompt);
+        CompletableFuture<String> call;
+        try {
+            call = delegate.generateAsync(prompt);
+        } catch (RuntimeException ex) {
+            throw fail("async", startedAt, ex);
+        }
+        call.whenComplete((answer, error) -> {
+            if (error == null) {
+                finish("async", startedAt, answer);
+            } else {
+                fail("async", startedAt, error instanceof CompletionException && error.getCause() != null
+                        ? error.getCause() : error);
+            }
+        });
+        return call;
+    }
+
+    @Override
+    public String name() {
+        return name;
+    }
+
+    private long start(String prompt) {
+        Metrics.LLM_IN_FLIGHT.labels(name).increment();
+        Metrics.LLM_PROMPT_CHARS.labels(name).record(prompt.length());
+        return System.nanoTime();
+    }
+
+    private String finish(String call, long startedAt, String answer) {
+        end(call, startedAt, "ok");
+        Metrics.LLM_ANSWER_CHARS.labels(name).add(answer == null ? 0 : answer.length());
+        return answer;
+    }
+
+    private <T extends Throwable> T fail(String call, long startedAt, T error) {
+        end(call, startedAt, error instanceof CancellationException || error instanceof InterruptedException
+                ? "cancelled" : "error");
+        return error;
+    }
+
+    private void end(String call, long startedAt, String outcome) {
+        Metrics.LLM_IN_FLIGHT.labels(name).decrement();
+        Metrics.LLM_DURATION.labels(name, call).recordNanos(System.nanoTime() - startedAt);
+        Metrics.LLM_REQUESTS.labels(name, outcome).increment();
+    }
+}
@@ -0,0 +1,191 @@
+package com.rag.mcp.metrics;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+// Named metric families with label values, written out in the Prometheus text format (0.0.4).
+// Children are created on first use of a label combination and live for the life of the process,
+// so labels must come from small fixed sets (routes, operations, providers, status codes).
+public final class MetricRegistry {
+    private static final double[] QUANTILES = {0.5, 0.9, 0.99, 0.999};
+
+    private final List<Family<?>> families = new CopyOnWriteArrayList<>();
+
+    public Family<LongAdder> counter(String name, String help, String... labelNames) {
+        return register(new Family<>(name, help, "counter", labelNames, key -> new LongAdder()));
+    }
+
+    // Children are LongAdders moved up and down (e.g. in-flight counts); see also gauge(..., supplier).
+    public Family<LongAdder> gauge(String name, String help, String... labelNames) {
+        return register(new Family<>(name, help, "gauge", labelNames, key -> new LongAdder()));
+    }
+
+    // Exported as a summary with quantiles, _sum and _count. scale converts recorded units on
+    // export, e.g. 1e-6 for microsecond latencies reported in seconds.
+    public HistogramFamily histogram(String name, String help, double scale, String... labelNames) {
+        return register(new HistogramFamily(name, help, scale, labelNames));
+    }
+
+    // A gauge read at scrape time; registering the same name and labels again replaces the supplier.
+    public void gauge(String name, String help, List<String> labelNames, List<String> labelValues, LongSupplier supplier) {
+        SuppliedGauge family = null;
+        for (Family<?> existing : families) {
+            if (existing.name.equals(name) && existing instanceof SuppliedGauge gauge) {
+                family = gauge;
+            }
+        }
+        if (family == null) {
+            family = register(new SuppliedGauge(name, help, labelNames.toArray(String[]::new)));
+        }
+        family.suppliers.put(List.copyOf(labelValues), supplier);
+    }
+
+    public String scrape() {
+        StringBuilder out = new StringBuilder(16 * 1024);
+        for (Family<?> family : families) {
+            family.write(out);
+        }
+        return out.toString();
+    }
+
+    private <F extends Family<?>> F register(F family) {
+        families.add(family);
+        return family;
+    }
+
+    public static class Family<T> {
+        final String name;
+        private final String help;
+        private final String type;
+        private final String[] labelNames;
+        private final Function<List<String>, T> factory;
+        final Map<List<String>, T> children = new ConcurrentHashMap<>();
+
+        Family(String name, String help, String type, String[] labelNames, Function<List<String>, T> factory) {
+            this.name = name;
+            this.help = help;
+            this.type = type;
+            this.labelNames = labelNames;
+            this.factory = factory;
+        }
+
+        public T labels(String... values) {
+            if (values.length != labelNames.length) {
+                throw new IllegalArgumentException(name + " expects labels " + Arrays.toString(labelNames));
+            }
+            List<String> key = Arrays.asList(values);
+            T child = children.get(key);
+            return child != null ? child : children.computeIfAbsent(List.copyOf(key), factory);
+        }
+
+        void write(StringBuilder out) {
+            if (children.isEmpty()) {
+                return;
+            }
+            header(out);
+            for (Map.Entry<List<String>, T> child : sorted()) {
+                writeSample(out, name, child.getKey(), null, ((LongAdder) child.getValue()).sum());
+            }
+        }
+
+        void header(StringBuilder out) {
+            out.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            out.append("# TYPE ").append(name).append(' ').append(type).append('\n');
+        }
+
+        List<Map.Entry<List<String>, T>> sorted() {
+            List<Map.Entry<List<String>, T>> entries = new ArrayList<>(children.entrySet());
+            entries.sort((a, b) -> String.join("\u0000", a.getKey()).compareTo(String.join("\u0000", b.getKey())));
+            return entries;
+        }
+
+        void writeSample(StringBuilder out, String sampleName, List<String> values, String quantile, Object value) {
+            out.append(sampleName);
+            if (!values.isEmpty() || quantile != null) {
+                out.append('{');
+                for (int i = 0; i < values.size(); i++) {
+                    appendLabel(out, i == 0 ? "" : ",", labelNames[i], values.get(i));
+                }
+                if (quantile != null) {
+                    appendLabel(out, values.isEmpty() ? "" : ",", "quantile", quantile);
+                }
+                out.append('}');
+            }
+            out.append(' ').append(value).append('\n');
+        }
+
+        private static void appendLabel(StringBuilder out, String separator, String label, String value) {
+            out.append(separator).append(label).append("=\"");
+            for (int i = 0; i < value.length(); i++) {
+                char c = value.charAt(i);
+                switch (c) {
+                    case '\\' -> out.append("\\\\");
+                    case '"' -> out.append("\\\"");
+                    case '\n' -> out.append("\\n");
+                    default -> out.append(c);
+                }
+            }
+            out.append('"');
+        }
+    }
+
+    public static final class HistogramFamily extends Family<Histogram> {
+        private final double scale;
+
+        HistogramFamily(String name, String help, double scale, String[] labelNames) {
+            super(name, help, "summary", labelNames, key -> new Histogram());
+            this.scale = scale;
+        }
+
+        @Override
+        void write(StringBuilder out) {
+            if (children.isEmpty()) {
+                return;
+            }
+            header(out);
+            for (Map.Entry<List<String>, Histogram> child : sorted()) {
+                Histogram histogram = child.getValue();
+                long[] values = histogram.quantiles(QUANTILES);
+                for (int q = 0; q < QUANTILES.length; q++) {
+                    writeSample(out, name, child.getKey(), Double.toString(QUANTILES[q]), scaled(values[q]));
+                }
+                writeSample(out, name + "_sum", child.getKey(), null, scaled(histogram.sum()));
+                writeSample(out, name + "_count", child.getKey(), null, histogram.count());
+            }
+        }
+
+        private Object scaled(long value) {
+            return scale == 1 ? (Object) value : (Object) (value * scale);
+        }
+    }
+
+    private static final class SuppliedGauge extends Family<Object> {
+        private final Map<List<String>, LongSupplier> suppliers = new ConcurrentHashMap<>();
+
+        SuppliedGauge(String name, String help, String[] labelNames) {
+            super(name, help, "gauge", labelNames, key -> {
+                throw new UnsupportedOperationException("Supplied gauges have no children");
+            });
+        }
+
+        @Override
+        void write(StringBuilder out) {
+            if (suppliers.isEmpty()) {
+                return;
+            }
+            header(out);
+            List<List<String>> keys = new ArrayList<>(suppliers.keySet());
+            keys.sort((a, b) -> String.join("\u0000", a).compareTo(String.join("\u0000", b)));
+            for (List<String> key : keys) {
+                writeSample(out, name, key, null, suppliers.get(key).getAsLong());
+            }
+        }
+    }
+}
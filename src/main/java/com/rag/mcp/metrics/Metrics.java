@@ -0,0 +1,67 @@
+package com.rag.mcp.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+// Process-wide instruments, served on /metrics. Latency summaries are in seconds, sizes in their
+// own unit (bytes, characters, estimated tokens).
+public final class Metrics {
+    public static final MetricRegistry REGISTRY = new MetricRegistry();
+    private static final double MICROS = 1e-6;
+
+    public static final MetricRegistry.Family<LongAdder> HTTP_REQUESTS = REGISTRY.counter(
+            "mcp_http_requests_total", "HTTP requests by route and status code.", "route", "status");
+    public static final MetricRegistry.HistogramFamily HTTP_DURATION = REGISTRY.histogram(
+            "mcp_http_request_duration_seconds", "HTTP request time, including streaming the response.", MICROS, "route");
+    public static final MetricRegistry.Family<LongAdder> HTTP_IN_FLIGHT = REGISTRY.gauge(
+            "mcp_http_requests_in_flight", "HTTP requests being handled.", "route");
+    public static final MetricRegistry.Family<LongAdder> HTTP_REQUEST_BYTES = REGISTRY.counter(
+            "mcp_http_request_bytes_total", "HTTP request body bytes read.", "route");
+    public static final MetricRegistry.Family<LongAdder> HTTP_RESPONSE_BYTES = REGISTRY.counter(
+            "mcp_http_response_bytes_total", "HTTP response body bytes written.", "route");
+
+    public static final MetricRegistry.Family<LongAdder> CONFLUENCE_REQUESTS = REGISTRY.counter(
+            "mcp_confluence_requests_total", "Confluence REST calls by operation and status code (error for I/O failures).",
+            "operation", "status");
+    public static final MetricRegistry.HistogramFamily CONFLUENCE_DURATION = REGISTRY.histogram(
+            "mcp_confluence_request_duration_seconds", "Confluence REST call time, from send to full response.", MICROS,
+            "operation");
+    public static final MetricRegistry.HistogramFamily CONFLUENCE_QUEUE_WAIT = REGISTRY.histogram(
+            "mcp_confluence_rate_limit_wait_seconds", "Time a Confluence call waited for the adaptive concurrency limit.",
+            MICROS);
+    public static final MetricRegistry.Family<LongAdder> CONFLUENCE_IN_FLIGHT = REGISTRY.gauge(
+            "mcp_confluence_requests_in_flight", "Confluence REST calls in flight.");
+    public static final MetricRegistry.Family<LongAdder> CONFLUENCE_RESPONSE_BYTES = REGISTRY.counter(
+            "mcp_confluence_response_bytes_total", "Confluence response body bytes received, compressed size when gzipped.", "operation");
+    public static final MetricRegistry.Family<LongAdder> CONFLUENCE_RETRIES = REGISTRY.counter(
+            "mcp_confluence_retries_total", "Confluence calls retried after a throttle, gateway or I/O error.");
+
+    public static final MetricRegistry.HistogramFamily CRAWL_DURATION = REGISTRY.histogram(
+            "mcp_crawl_duration_seconds", "Time to crawl one root page tree.", MICROS, "mode");
+    public static final MetricRegistry.Family<LongAdder> CRAWL_PAGES = REGISTRY.counter(
+            "mcp_crawl_pages_total", "Pages crawled.", "mode");
+    public static final MetricRegistry.HistogramFamily CONVERSION_DURATION = REGISTRY.histogram(
+            "mcp_storage_conversion_duration_seconds", "Time to convert one page from storage format to text.", MICROS);
+    public static final MetricRegistry.Family<LongAdder> CONVERSION_CHARS = REGISTRY.counter(
+            "mcp_storage_conversion_chars_total", "Storage-format characters converted to text.");
+
+    public static final MetricRegistry.HistogramFamily QUERY_STAGE_DURATION = REGISTRY.histogram(
+            "mcp_query_stage_duration_seconds", "Time spent in each query stage.", MICROS, "stage");
+    public static final MetricRegistry.HistogramFamily QUERY_CONTEXT_TOKENS = REGISTRY.histogram(
+            "mcp_query_context_tokens", "Estimated tokens of Confluence context sent with a query.", 1, "answer_mode");
+
+    public static final MetricRegistry.Family<LongAdder> LLM_REQUESTS = REGISTRY.counter(
+            "mcp_llm_requests_total", "LLM provider calls by outcome (ok, error, cancelled).", "provider", "outcome");
+    public static final MetricRegistry.HistogramFamily LLM_DURATION = REGISTRY.histogram(
+            "mcp_llm_request_duration_seconds", "LLM provider call time to the full answer.", MICROS, "provider", "call");
+    public static final MetricRegistry.HistogramFamily LLM_FIRST_DELTA = REGISTRY.histogram(
+            "mcp_llm_first_delta_seconds", "Time to the first streamed delta of an LLM answer.", MICROS, "provider");
+    public static final MetricRegistry.Family<LongAdder> LLM_IN_FLIGHT = REGISTRY.gauge(
+            "mcp_llm_requests_in_flight", "LLM provider calls in flight.", "provider");
+    public static final MetricRegistry.HistogramFamily LLM_PROMPT_CHARS = REGISTRY.histogram(
+            "mcp_llm_prompt_chars", "Prompt size in characters.", 1, "provider");
+    public static final MetricRegistry.Family<LongAdder> LLM_ANSWER_CHARS = REGISTRY.counter(
+            "mcp_llm_answer_chars_total", "Answer characters received.", "provider");
+
+    private Metrics() {
+    }
+}
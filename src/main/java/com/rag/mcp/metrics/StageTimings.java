@@ -0,0 +1,42 @@
+package com.rag.mcp.metrics;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+// Per-request stage times: each lap goes to a stage histogram and, for the response's optional
+// "timings" object, into an ordered stage -> milliseconds map. Not thread-safe.
+public final class StageTimings {
+    private final MetricRegistry.HistogramFamily histogram;
+    private final long startedAt = System.nanoTime();
+    private final Map<String, Double> millis = new LinkedHashMap<>();
+
+    public StageTimings(MetricRegistry.HistogramFamily histogram) {
+        this.histogram = histogram;
+    }
+
+    // Records the time since `since` under stage and returns now, to pass to the next lap.
+    public long lap(String stage, long since) {
+        long now = System.nanoTime();
+        histogram.labels(stage).recordNanos(now - since);
+        millis.merge(stage, round(now - since), Double::sum);
+        return now;
+    }
+
+    // Stages recorded so far, without a total; for work that is not a whole request, like a batch.
+    public Map<String, Object> stages() {
+        return new LinkedHashMap<>(millis);
+    }
+
+    // Records the whole request under "total" and returns every stage plus the total.
+    public Map<String, Object> finish() {
+        long total = System.nanoTime() - startedAt;
+        histogram.labels("total").recordNanos(total);
+        Map<String, Object> timings = new LinkedHashMap<>(millis);
+        timings.put("total", round(total));
+        return timings;
+    }
+
+    private static double round(long nanos) {
+        return Math.round(nanos / 100_000.0) / 10.0;
+    }
+}
@@ -0,0 +1,26 @@
+package com.rag.mcp.model;
+
+import java.util.List;
+
+// Body of /api/query/batch: several questions over the same roots and settings. The inherited
+// query field is not used; queries holds the questions.
+public class BatchQueryRequest extends QueryRequest {
+    private List<String> queries;
+    private Integer concurrency;
+
+    public List<String> getQueries() {
+        return queries;
+    }
+
+    public void setQueries(List<String> queries) {
+        this.queries = queries;
+    }
+
+    public Integer getConcurrency() {
+        return concurrency;
+    }
+
+    public void setConcurrency(Integer concurrency) {
+        this.concurrency = concurrency;
+    }
+}
@@ -6,15 +6,35 @@ public class ConfluencePage {
     private final String parentId;
     private final int depth;
     private final String sourceUrl;
-    private final String content;
+    private final PageContent contentSource;
+    private volatile String content;
+    private final int version;
 
     public ConfluencePage(String pageId, String title, String parentId, int depth, String sourceUrl, String content) {
+        this(pageId, title, parentId, depth, sourceUrl, content, 0);
+    }
+
+    public ConfluencePage(String pageId, String title, String parentId, int depth, String sourceUrl, String content, int version) {
         this.pageId = pageId;
         this.title = title;
         this.parentId = parentId;
         this.depth = depth;
         this.sourceUrl = sourceUrl;
+        this.contentSource = null;
         this.content = content;
+        this.version = version;
+    }
+
+    // The content is decoded from contentSource on first use.
+    public ConfluencePage(String pageId, String title, String parentId, int depth, String sourceUrl,
+                          PageContent contentSource, int version) {
+        this.pageId = pageId;
+        this.title = title;
+        this.parentId = parentId;
+        this.depth = depth;
+        this.sourceUrl = sourceUrl;
+        this.contentSource = contentSource;
+        this.version = version;
     }
 
     public String getPageId() {
@@ -38,6 +58,42 @@ public class ConfluencePage {
     }
 
     public String getContent() {
-        return content;
+        String text = content;
+        if (text == null && contentSource != null) {
+            text = contentSource.text();
+            content = text;
+        }
+        return text;
+    }
+
+    // String.hashCode of the content (0 when there is none), read from the source without decoding
+    // when it is stored, so indexes can detect changes cheaply.
+    public int getContentHash() {
+        String text = content;
+        if (text != null) {
+            return text.hashCode();
+        }
+        return contentSource == null ? 0 : contentSource.contentHash();
+    }
+
+    // The content without keeping a decoded copy on this page, for indexes that keep only what
+    // they derive from it.
+    public String readContent() {
+        String text = content;
+        return text != null || contentSource == null ? text : contentSource.text();
+    }
+
+    // The same page without its content, for indexes that only need to point back at it.
+    public ConfluencePage withoutContent() {
+        return new ConfluencePage(pageId, title, parentId, depth, sourceUrl, (String) null, version);
+    }
+
+    // Where the content is decoded from, or null when it was given as a string.
+    public PageContent getContentSource() {
+        return contentSource;
+    }
+
+    public int getVersion() {
+        return version;
     }
 }
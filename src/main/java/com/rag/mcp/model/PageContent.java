@@ -0,0 +1,11 @@
+package com.rag.mcp.model;
+
+// Page text kept outside the page object, e.g. in the mapped corpus store, and decoded on access.
+public interface PageContent {
+    String text();
+
+    // String.hashCode of the text; sources that know it already answer without decoding.
+    default int contentHash() {
+        return text().hashCode();
+    }
+}
@@ -9,6 +9,13 @@ public class QueryRequest {
     private List<String> rootPageUrls; // New field for multiple URLs
     private Integer maxDepth;
     private Integer maxPages;
+    private Integer topK;
+    private String retrievalMode;
+    private Integer maxContextTokens;
+    private String answerMode;
+    private Boolean timings;
+    private String crawlMode;
+    private Boolean dedup;
 
     public String getQuery() {
         return query;
@@ -57,4 +64,60 @@ public class QueryRequest {
     public void setMaxPages(Integer maxPages) {
         this.maxPages = maxPages;
     }
+
+    public Integer getTopK() {
+        return topK;
+    }
+
+    public void setTopK(Integer topK) {
+        this.topK = topK;
+    }
+
+    public String getRetrievalMode() {
+        return retrievalMode;
+    }
+
+    public void setRetrievalMode(String retrievalMode) {
+        this.retrievalMode = retrievalMode;
+    }
+
+    public Integer getMaxContextTokens() {
+        return maxContextTokens;
+    }
+
+    public void setMaxContextTokens(Integer maxContextTokens) {
+        this.maxContextTokens = maxContextTokens;
+    }
+
+    public String getAnswerMode() {
+        return answerMode;
+    }
+
+    public void setAnswerMode(String answerMode) {
+        this.answerMode = answerMode;
+    }
+
+    public Boolean getTimings() {
+        return timings;
+    }
+
+    public void setTimings(Boolean timings) {
+        this.timings = timings;
+    }
+
+    public String getCrawlMode() {
+        return crawlMode;
+    }
+
+    public void setCrawlMode(String crawlMode) {
+        this.crawlMode = crawlMode;
+    }
+
+    public Boolean getDedup() {
+        return dedup;
+    }
+
+    public void setDedup(Boolean dedup) {
+        this.dedup = dedup;
+    }
 }
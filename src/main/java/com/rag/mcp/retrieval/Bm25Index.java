@@ -0,0 +1,376 @@
+package com.rag.mcp.retrieval;
+
+import com.rag.mcp.model.ConfluencePage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+// In-memory inverted index with BM25 ranking over page title and content.
+// Postings are varint-encoded (doc id delta, term frequency) pairs in one byte[] per term;
+// doc ids only grow, so an updated page is a tombstone plus a fresh doc id.
+public class Bm25Index {
+    private static final float K1 = 1.2f;
+    private static final float B = 0.75f;
+    private static final int TITLE_WEIGHT = 3;
+
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Map<String, Integer> termIds = new HashMap<>();
+    private PostingList[] postings = new PostingList[1024];
+    private int[] docFrequency = new int[1024];
+
+    private final Map<String, Integer> docIdsByPage = new HashMap<>();
+    private ConfluencePage[] docs = new ConfluencePage[1024];
+    private long[] fingerprints = new long[1024];
+    private int[] docLengths = new int[1024];
+    private int[][] docTerms = new int[1024][];
+    private final BitSet live = new BitSet();
+    private int nextDocId;
+    private int liveDocs;
+    private long totalLength;
+    private long deadPostings;
+    private long totalPostings;
+
+    public int indexPages(Collection<ConfluencePage> pages) {
+        int indexed = 0;
+        lock.writeLock().lock();
+        try {
+            for (ConfluencePage page : pages) {
+                long fingerprint = ChunkVectorIndex.fingerprint(page);
+                Integer existing = docIdsByPage.get(page.getPageId());
+                if (existing != null && fingerprints[existing] == fingerprint) {
+                    // Hold the caller's copy, so older copies (and any store mapping they read) can go.
+                    docs[existing] = page;
+                    continue;
+                }
+                if (existing != null) {
+                    removeDoc(existing);
+                }
+                addDoc(page, fingerprint);
+                indexed++;
+            }
+            if (deadPostings > 1024 && deadPostings * 4 > totalPostings) {
+                compact();
+            }
+            return indexed;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void removePage(String pageId) {
+        lock.writeLock().lock();
+        try {
+            Integer docId = docIdsByPage.remove(pageId);
+            if (docId != null) {
+                removeDoc(docId);
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    // Returns up to k pages by descending BM25 score, restricted to pageIds when given.
+    public List<ScoredPage> search(String query, int k, Set<String> pageIds) {
+        lock.readLock().lock();
+        try {
+            if (liveDocs == 0 || k <= 0) {
+                return List.of();
+            }
+            BitSet allowed = null;
+            if (pageIds != null) {
+                allowed = new BitSet(nextDocId);
+                for (String pageId : pageIds) {
+                    Integer docId = docIdsByPage.get(pageId);
+                    if (docId != null) {
+                        allowed.set(docId);
+                    }
+                }
+            }
+
+            float averageLength = (float) totalLength / liveDocs;
+            float[] scores = new float[nextDocId];
+            int[] touched = new int[Math.min(nextDocId, 1024)];
+            int touchedCount = 0;
+            for (String term : new LinkedHashSet<>(Tokenizer.tokenize(query))) {
+                Integer termId = termIds.get(term);
+                if (termId == null || docFrequency[termId] == 0) {
+                    continue;
+                }
+                int df = docFrequency[termId];
+                float idf = (float) Math.log(1 + (liveDocs - df + 0.5) / (df + 0.5));
+                PostingList list = postings[termId];
+                int position = 0;
+                int docId = 0;
+                while (position < list.length) {
+                    int delta = 0;
+                    int shift = 0;
+                    byte b;
+                    do {
+                        b = list.bytes[position++];
+                        delta |= (b & 0x7f) << shift;
+                        shift += 7;
+                    } while (b < 0);
+                    docId += delta;
+                    int tf = 0;
+                    shift = 0;
+                    do {
+                        b = list.bytes[position++];
+                        tf |= (b & 0x7f) << shift;
+                        shift += 7;
+                    } while (b < 0);
+
+                    if (!live.get(docId) || (allowed != null && !allowed.get(docId))) {
+                        continue;
+                    }
+                    float norm = K1 * (1 - B + B * docLengths[docId] / averageLength);
+                    if (scores[docId] == 0f) {
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touched.length * 2);
+                        }
+                        touched[touchedCount++] = docId;
+                    }
+                    scores[docId] += idf * tf * (K1 + 1) / (tf + norm);
+                }
+            }
+            return topK(scores, touched, touchedCount, k);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public Map<String, Object> stats() {
+        lock.readLock().lock();
+        try {
+            Map<String, Object> stats = new LinkedHashMap<>();
+            stats.put("pages", liveDocs);
+            stats.put("terms", termIds.size());
+            stats.put("postings", totalPostings - deadPostings);
+            long postingBytes = 0;
+            for (int i = 0; i < termIds.size(); i++) {
+                postingBytes += postings[i].length;
+            }
+            stats.put("postingBytes", postingBytes);
+            return stats;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    // Min-heap of size k over parallel primitive arrays, then sorted descending.
+    private List<ScoredPage> topK(float[] scores, int[] touched, int touchedCount, int k) {
+        int limit = Math.min(k, touchedCount);
+        int[] heapDocs = new int[limit];
+        float[] heapScores = new float[limit];
+        int size = 0;
+        for (int i = 0; i < touchedCount; i++) {
+            int docId = touched[i];
+            float score = scores[docId];
+            if (size < limit) {
+                int j = size++;
+                while (j > 0 && heapScores[(j - 1) >>> 1] > score) {
+                    heapDocs[j] = heapDocs[(j - 1) >>> 1];
+                    heapScores[j] = heapScores[(j - 1) >>> 1];
+                    j = (j - 1) >>> 1;
+                }
+                heapDocs[j] = docId;
+                heapScores[j] = score;
+            } else if (score > heapScores[0]) {
+                int j = 0;
+                while (true) {
+                    int child = 2 * j + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && heapScores[child + 1] < heapScores[child]) {
+                        child++;
+                    }
+                    if (heapScores[child] >= score) {
+                        break;
+                    }
+                    heapDocs[j] = heapDocs[child];
+                    heapScores[j] = heapScores[child];
+                    j = child;
+                }
+                heapDocs[j] = docId;
+                heapScores[j] = score;
+            }
+        }
+
+        List<ScoredPage> results = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            results.add(new ScoredPage(docs[heapDocs[i]], heapScores[i]));
+        }
+        results.sort((a, b) -> Double.compare(b.score(), a.score()));
+        return results;
+    }
+
+    private void addDoc(ConfluencePage page, long fingerprint) {
+        int docId = nextDocId++;
+        ensureDocCapacity(docId + 1);
+
+        Map<String, Integer> frequencies = new HashMap<>();
+        int length = 0;
+        for (String token : Tokenizer.tokenize(page.getTitle())) {
+            frequencies.merge(token, TITLE_WEIGHT, Integer::sum);
+            length += TITLE_WEIGHT;
+        }
+        for (String token : Tokenizer.tokenize(page.readContent())) {
+            frequencies.merge(token, 1, Integer::sum);
+            length++;
+        }
+
+        int[] terms = new int[frequencies.size()];
+        int i = 0;
+        for (Map.Entry<String, Integer> entry : frequencies.entrySet()) {
+            int termId = termIds.computeIfAbsent(entry.getKey(), key -> newTerm());
+            postings[termId].append(docId, entry.getValue());
+            docFrequency[termId]++;
+            terms[i++] = termId;
+        }
+        totalPostings += terms.length;
+
+        docs[docId] = page;
+        fingerprints[docId] = fingerprint;
+        docLengths[docId] = length;
+        docTerms[docId] = terms;
+        docIdsByPage.put(page.getPageId(), docId);
+        live.set(docId);
+        liveDocs++;
+        totalLength += length;
+    }
+
+    private void removeDoc(int docId) {
+        if (!live.get(docId)) {
+            return;
+        }
+        live.clear(docId);
+        liveDocs--;
+        totalLength -= docLengths[docId];
+        for (int termId : docTerms[docId]) {
+            docFrequency[termId]--;
+        }
+        deadPostings += docTerms[docId].length;
+        docs[docId] = null;
+        docTerms[docId] = null;
+    }
+
+    // Rewrites every posting list without tombstoned docs and renumbers live docs densely.
+    private void compact() {
+        int[] remap = new int[nextDocId];
+        int next = 0;
+        for (int docId = 0; docId < nextDocId; docId++) {
+            remap[docId] = live.get(docId) ? next++ : -1;
+        }
+        for (int termId = 0; termId < termIds.size(); termId++) {
+            PostingList rewritten = new PostingList();
+            PostingList list = postings[termId];
+            int position = 0;
+            int docId = 0;
+            while (position < list.length) {
+                int[] decoded = list.decode(position, docId);
+                position = decoded[0];
+                docId = decoded[1];
+                if (remap[docId] >= 0) {
+                    rewritten.append(remap[docId], decoded[2]);
+                }
+            }
+            postings[termId] = rewritten;
+        }
+        for (int docId = 0; docId < nextDocId; docId++) {
+            int target = remap[docId];
+            if (target >= 0 && target != docId) {
+                docs[target] = docs[docId];
+                fingerprints[target] = fingerprints[docId];
+                docLengths[target] = docLengths[docId];
+                docTerms[target] = docTerms[docId];
+                docIdsByPage.put(docs[target].getPageId(), target);
+            }
+        }
+        for (int docId = next; docId < nextDocId; docId++) {
+            docs[docId] = null;
+            docTerms[docId] = null;
+        }
+        live.clear();
+        live.set(0, next);
+        nextDocId = next;
+        totalPostings -= deadPostings;
+        deadPostings = 0;
+    }
+
+    private int newTerm() {
+        int termId = termIds.size();
+        if (termId == postings.length) {
+            postings = Arrays.copyOf(postings, termId * 2);
+            docFrequency = Arrays.copyOf(docFrequency, termId * 2);
+        }
+        postings[termId] = new PostingList();
+        return termId;
+    }
+
+    private void ensureDocCapacity(int required) {
+        if (docs.length >= required) {
+            return;
+        }
+        int capacity = Math.max(required, docs.length * 2);
+        docs = Arrays.copyOf(docs, capacity);
+        fingerprints = Arrays.copyOf(fingerprints, capacity);
+        docLengths = Arrays.copyOf(docLengths, capacity);
+        docTerms = Arrays.copyOf(docTerms, capacity);
+    }
+
+    public record ScoredPage(ConfluencePage page, double score) {
+    }
+
+    private static final class PostingList {
+        private byte[] bytes = new byte[8];
+        private int length;
+        private int lastDocId;
+
+        void append(int docId, int tf) {
+            writeVarint(docId - lastDocId);
+            writeVarint(tf);
+            lastDocId = docId;
+        }
+
+        // Returns {nextPosition, docId, tf}.
+        int[] decode(int position, int previousDocId) {
+            int delta = 0;
+            int shift = 0;
+            byte b;
+            do {
+                b = bytes[position++];
+                delta |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            int tf = 0;
+            shift = 0;
+            do {
+                b = bytes[position++];
+                tf |= (b & 0x7f) << shift;
+                shift += 7;
+            } while (b < 0);
+            return new int[]{position, previousDocId + delta, tf};
+        }
+
+        private void writeVarint(int value) {
+            if (length + 5 > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + 5));
+            }
+            while ((value & ~0x7f) != 0) {
+                bytes[length++] = (byte) ((value & 0x7f) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+    }
+}
@@ -0,0 +1,163 @@
+package com.rag.mcp.retrieval;
+
+import com.rag.mcp.model.ConfluencePage;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+// Long-lived chunk index shared by all requests. Pages are (re)embedded only when their
+// version or content changed since they were last indexed. Chunks point back at a copy of the
+// page without its content, so the index holds no page text beyond the chunks themselves.
+// Replaced and removed chunks are tombstones in the graph; once they make up a quarter of it, the
+// live chunks are copied into a fresh graph (no re-embedding) that searches switch to at once.
+public class ChunkVectorIndex {
+    private static final int REBUILD_MIN_DELETED = 1024;
+
+    private final EmbeddingProvider embeddingProvider;
+    private final TextChunker chunker;
+    private volatile Graph graph;
+    private final Map<String, IndexedPage> pages = new ConcurrentHashMap<>();
+    private final Object writeLock = new Object();
+    private final AtomicLong chunksEmbedded = new AtomicLong();
+    private final AtomicLong rebuilds = new AtomicLong();
+
+    public ChunkVectorIndex(EmbeddingProvider embeddingProvider, TextChunker chunker) {
+        this.embeddingProvider = embeddingProvider;
+        this.chunker = chunker;
+        this.graph = new Graph(new HnswIndex(embeddingProvider.dimensions()), new ConcurrentHashMap<>());
+    }
+
+    public int indexPages(Collection<ConfluencePage> candidates) throws Exception {
+        int embedded = 0;
+        for (ConfluencePage page : candidates) {
+            long fingerprint = fingerprint(page);
+            IndexedPage existing = pages.get(page.getPageId());
+            if (existing != null && existing.fingerprint() == fingerprint) {
+                continue;
+            }
+
+            List<PageChunk> chunks = chunker.chunk(page.withoutContent(), page.readContent());
+            List<String> texts = new ArrayList<>(chunks.size());
+            // The title is embedded with every chunk so a chunk stays meaningful on its own.
+            for (PageChunk chunk : chunks) {
+                texts.add(page.getTitle() + "\n" + chunk.text());
+            }
+            List<float[]> vectors = embeddingProvider.embedAll(texts);
+
+            synchronized (writeLock) {
+                IndexedPage previous = pages.get(page.getPageId());
+                if (previous != null && previous.fingerprint() == fingerprint) {
+                    continue;
+                }
+                Graph current = graph;
+                int[] nodes = new int[chunks.size()];
+                for (int i = 0; i < chunks.size(); i++) {
+                    nodes[i] = current.index().add(vectors.get(i));
+                    current.chunks().put(nodes[i], chunks.get(i));
+                }
+                pages.put(page.getPageId(), new IndexedPage(fingerprint, nodes));
+                if (previous != null) {
+                    removeNodes(previous.nodes());
+                }
+            }
+            embedded += chunks.size();
+        }
+        chunksEmbedded.addAndGet(embedded);
+        return embedded;
+    }
+
+    public void removePage(String pageId) {
+        synchronized (writeLock) {
+            IndexedPage previous = pages.remove(pageId);
+            if (previous != null) {
+                removeNodes(previous.nodes());
+            }
+        }
+    }
+
+
+    // Restricts hits to the given page ids so a request only sees the trees it asked for.
+    public List<ScoredChunk> search(String query, int topK, Set<String> pageIds) throws Exception {
+        float[] vector = embeddingProvider.embed(query);
+        Graph current = graph;
+        List<ScoredChunk> results = new ArrayList<>();
+        for (HnswIndex.Hit hit : current.index().search(vector, topK, node -> {
+            PageChunk chunk = current.chunks().get(node);
+            return chunk != null && (pageIds == null || pageIds.contains(chunk.page().getPageId()));
+        })) {
+            PageChunk chunk = current.chunks().get(hit.node());
+            if (chunk != null) {
+                results.add(new ScoredChunk(chunk, hit.similarity()));
+            }
+        }
+        return results;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("embeddingProvider", embeddingProvider.name());
+        stats.put("dimensions", embeddingProvider.dimensions());
+        stats.put("pages", pages.size());
+        Graph current = graph;
+        stats.put("liveChunks", current.index().size());
+        stats.put("deletedChunks", current.index().deletedCount());
+        stats.put("rebuilds", rebuilds.get());
+        stats.put("chunksEmbedded", chunksEmbedded.get());
+        return stats;
+    }
+
+    // Called with writeLock held.
+    private void removeNodes(int[] nodes) {
+        Graph current = graph;
+        for (int node : nodes) {
+            current.index().remove(node);
+            current.chunks().remove(node);
+        }
+        int deleted = current.index().deletedCount();
+        if (deleted >= REBUILD_MIN_DELETED && deleted * 4L > current.index().size() + deleted) {
+            rebuild(current);
+        }
+    }
+
+    // Copies the live vectors into a new graph and renumbers every page's nodes. Searches keep using
+    // the old graph until the new one is published.
+    private void rebuild(Graph current) {
+        Graph fresh = new Graph(new HnswIndex(embeddingProvider.dimensions()), new ConcurrentHashMap<>());
+        Map<String, IndexedPage> renumbered = new HashMap<>();
+        for (Map.Entry<String, IndexedPage> entry : pages.entrySet()) {
+            int[] nodes = entry.getValue().nodes();
+            int[] moved = new int[nodes.length];
+            for (int i = 0; i < nodes.length; i++) {
+                moved[i] = fresh.index().add(current.index().vector(nodes[i]));
+                fresh.chunks().put(moved[i], current.chunks().get(nodes[i]));
+            }
+            renumbered.put(entry.getKey(), new IndexedPage(entry.getValue().fingerprint(), moved));
+        }
+        graph = fresh;
+        pages.putAll(renumbered);
+        rebuilds.incrementAndGet();
+    }
+
+    // Uses the content hash rather than the content, so stored pages are not decoded just to
+    // find out they are unchanged.
+    static long fingerprint(ConfluencePage page) {
+        long hash = page.getVersion();
+        hash = hash * 31 + (page.getTitle() == null ? 0 : page.getTitle().hashCode());
+        hash = hash * 31 + page.getContentHash();
+        return hash;
+    }
+
+    private record IndexedPage(long fingerprint, int[] nodes) {
+    }
+
+    // The graph and its node -> chunk map, swapped together on rebuild.
+    private record Graph(HnswIndex index, Map<Integer, PageChunk> chunks) {
+    }
+}
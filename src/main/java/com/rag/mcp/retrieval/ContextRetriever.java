@@ -0,0 +1,194 @@
+package com.rag.mcp.retrieval;
+
+import com.rag.mcp.model.ConfluencePage;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class ContextRetriever {
+    // Reciprocal rank fusion constant from Cormack et al.; dampens the influence of top ranks.
+    private static final int RRF_K = 60;
+
+    private final ChunkVectorIndex vectorIndex;
+    private final Bm25Index bm25Index;
+    private final Mode defaultMode;
+    private final int defaultTopK;
+    private final int maxPages;
+    private final int maxIndexedPages;
+    // Page ids in both indexes, least recently requested first. Live-crawled trees are indexed too,
+    // so without a bound the indexes would keep every page ever asked about.
+    private final LinkedHashMap<String, Boolean> indexedPages = new LinkedHashMap<>(16, 0.75f, true);
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ContextRetriever(ChunkVectorIndex vectorIndex, Bm25Index bm25Index, Mode defaultMode, int defaultTopK,
+                            int maxPages, int maxIndexedPages) {
+        this.vectorIndex = vectorIndex;
+        this.bm25Index = bm25Index;
+        this.defaultMode = defaultMode;
+        this.defaultTopK = defaultTopK;
+        this.maxPages = maxPages;
+        this.maxIndexedPages = maxIndexedPages;
+    }
+
+    // Indexes any new or changed pages, then returns the best context among this request's pages.
+    // bm25 returns whole pages; vector returns chunks; hybrid fuses both rankings per page.
+    public List<ScoredChunk> retrieve(String query, List<ConfluencePage> pages, String mode, Integer topK) throws Exception {
+        Mode effectiveMode = mode == null || mode.isBlank() ? defaultMode : Mode.from(mode);
+        if (effectiveMode == Mode.NONE) {
+            List<ScoredChunk> all = new ArrayList<>(pages.size());
+            for (ConfluencePage page : pages) {
+                all.add(wholePage(page, 0));
+            }
+            return all;
+        }
+
+        Set<String> pageIds = new HashSet<>();
+        for (ConfluencePage page : pages) {
+            pageIds.add(page.getPageId());
+        }
+        int k = topK == null || topK <= 0 ? defaultTopK : topK;
+        // Marked before indexing so a concurrent request's eviction passes over this request's pages.
+        touch(pageIds);
+        try {
+            return rank(query, pages, pageIds, effectiveMode, k);
+        } finally {
+            evictLeastRecentlyUsed();
+        }
+    }
+
+    private List<ScoredChunk> rank(String query, List<ConfluencePage> pages, Set<String> pageIds, Mode effectiveMode,
+                                   int k) throws Exception {
+        List<ScoredChunk> chunkHits = List.of();
+        if (effectiveMode != Mode.BM25) {
+            vectorIndex.indexPages(pages);
+            chunkHits = vectorIndex.search(query, k, pageIds);
+        }
+        if (effectiveMode == Mode.VECTOR) {
+            return chunkHits;
+        }
+
+        bm25Index.indexPages(pages);
+        List<Bm25Index.ScoredPage> pageHits = bm25Index.search(query, maxPages, pageIds);
+        if (effectiveMode == Mode.BM25) {
+            List<ScoredChunk> results = new ArrayList<>(pageHits.size());
+            for (Bm25Index.ScoredPage hit : pageHits) {
+                results.add(wholePage(hit.page(), hit.score()));
+            }
+            return results;
+        }
+        return fuse(pageHits, chunkHits);
+    }
+
+    // Drops a page that no longer exists (or left the synced trees) from both indexes.
+    public void removePage(String pageId) {
+        synchronized (indexedPages) {
+            indexedPages.remove(pageId);
+        }
+        vectorIndex.removePage(pageId);
+        bm25Index.removePage(pageId);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("defaultMode", defaultMode.name().toLowerCase());
+        stats.put("defaultTopK", defaultTopK);
+        stats.put("maxPages", maxPages);
+        synchronized (indexedPages) {
+            stats.put("indexedPages", indexedPages.size());
+        }
+        stats.put("maxIndexedPages", maxIndexedPages);
+        stats.put("evictions", evictions.get());
+        stats.put("vector", vectorIndex.stats());
+        stats.put("bm25", bm25Index.stats());
+        return stats;
+    }
+
+    private void touch(Set<String> pageIds) {
+        synchronized (indexedPages) {
+            for (String pageId : pageIds) {
+                indexedPages.put(pageId, Boolean.TRUE);
+            }
+        }
+    }
+
+    // Drops the least recently requested pages beyond maxIndexedPages. A page evicted here while
+    // another request indexes it again is simply re-indexed by its next request.
+    private void evictLeastRecentlyUsed() {
+        List<String> evicted = new ArrayList<>();
+        synchronized (indexedPages) {
+            Iterator<String> eldest = indexedPages.keySet().iterator();
+            while (indexedPages.size() > maxIndexedPages && eldest.hasNext()) {
+                evicted.add(eldest.next());
+                eldest.remove();
+            }
+        }
+        for (String pageId : evicted) {
+            vectorIndex.removePage(pageId);
+            bm25Index.removePage(pageId);
+        }
+        evictions.addAndGet(evicted.size());
+    }
+
+    private List<ScoredChunk> fuse(List<Bm25Index.ScoredPage> pageHits, List<ScoredChunk> chunkHits) {
+        Map<String, Double> fused = new HashMap<>();
+        Map<String, ConfluencePage> pagesById = new HashMap<>();
+        for (int rank = 0; rank < pageHits.size(); rank++) {
+            ConfluencePage page = pageHits.get(rank).page();
+            fused.merge(page.getPageId(), 1.0 / (RRF_K + rank + 1), Double::sum);
+            pagesById.put(page.getPageId(), page);
+        }
+        Map<String, List<ScoredChunk>> chunksByPage = new LinkedHashMap<>();
+        int pageRank = 0;
+        for (ScoredChunk hit : chunkHits) {
+            String pageId = hit.chunk().page().getPageId();
+            if (!chunksByPage.containsKey(pageId)) {
+                fused.merge(pageId, 1.0 / (RRF_K + pageRank + 1), Double::sum);
+                pageRank++;
+            }
+            chunksByPage.computeIfAbsent(pageId, key -> new ArrayList<>()).add(hit);
+            pagesById.putIfAbsent(pageId, hit.chunk().page());
+        }
+
+        List<String> ranked = new ArrayList<>(fused.keySet());
+        ranked.sort((a, b) -> Double.compare(fused.get(b), fused.get(a)));
+        List<ScoredChunk> results = new ArrayList<>();
+        for (String pageId : ranked.subList(0, Math.min(maxPages, ranked.size()))) {
+            double score = fused.get(pageId);
+            List<ScoredChunk> chunks = chunksByPage.get(pageId);
+            if (chunks == null) {
+                results.add(wholePage(pagesById.get(pageId), score));
+                continue;
+            }
+            for (ScoredChunk chunk : chunks) {
+                results.add(new ScoredChunk(chunk.chunk(), score));
+            }
+        }
+        return results;
+    }
+
+    private static ScoredChunk wholePage(ConfluencePage page, double score) {
+        return new ScoredChunk(new PageChunk(page, 0, page.getContent() == null ? "" : page.getContent()), score);
+    }
+
+    public enum Mode {
+        NONE,
+        VECTOR,
+        BM25,
+        HYBRID;
+
+        public static Mode from(String value) {
+            try {
+                return Mode.valueOf(value.trim().toUpperCase());
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unknown retrieval mode: " + value + " (expected none, vector, bm25 or hybrid)");
+            }
+        }
+    }
+}
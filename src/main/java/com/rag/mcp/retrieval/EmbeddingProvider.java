@@ -0,0 +1,21 @@
+package com.rag.mcp.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public interface EmbeddingProvider {
+    // Returned vectors must be L2-normalized so cosine similarity is a dot product.
+    float[] embed(String text) throws Exception;
+
+    default List<float[]> embedAll(List<String> texts) throws Exception {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (String text : texts) {
+            vectors.add(embed(text));
+        }
+        return vectors;
+    }
+
+    int dimensions();
+
+    String name();
+}
@@ -0,0 +1,92 @@
+package com.rag.mcp.retrieval;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+public class GeminiEmbeddingProvider implements EmbeddingProvider {
+    private static final ObjectMapper MAPPER = new ObjectMapper();
+    private static final int BATCH_SIZE = 100;
+    private final HttpClient httpClient = HttpClient.newBuilder().connectTimeout(Duration.ofSeconds(20)).build();
+    private final String apiKey;
+    private final String model;
+
+    public GeminiEmbeddingProvider() {
+        this.apiKey = System.getenv("GEMINI_API_KEY");
+        if (apiKey == null || apiKey.isBlank()) {
+            throw new IllegalStateException("GEMINI_API_KEY is not configured");
+        }
+        this.model = System.getenv().getOrDefault("GEMINI_EMBEDDING_MODEL", "text-embedding-004");
+    }
+
+    @Override
+    public float[] embed(String text) throws Exception {
+        return embedAll(List.of(text)).get(0);
+    }
+
+    @Override
+    public List<float[]> embedAll(List<String> texts) throws Exception {
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (int from = 0; from < texts.size(); from += BATCH_SIZE) {
+            vectors.addAll(embedBatch(texts.subList(from, Math.min(texts.size(), from + BATCH_SIZE))));
+        }
+        return vectors;
+    }
+
+    private List<float[]> embedBatch(List<String> texts) throws Exception {
+        String endpoint = "https://generativelanguage.googleapis.com/v1beta/models/" + model + ":batchEmbedContents?key=" + apiKey;
+        List<Map<String, Object>> requests = new ArrayList<>();
+        for (String text : texts) {
+            requests.add(Map.of(
+                    "model", "models/" + model,
+                    "content", Map.of("parts", new Object[]{Map.of("text", text)})
+            ));
+        }
+
+        HttpRequest request = HttpRequest.newBuilder()
+                .uri(URI.create(endpoint))
+                .header("Content-Type", "application/json")
+                .timeout(Duration.ofSeconds(60))
+                .POST(HttpRequest.BodyPublishers.ofString(MAPPER.writeValueAsString(Map.of("requests", requests)), StandardCharsets.UTF_8))
+                .build();
+
+        HttpResponse<String> response = httpClient.send(request, HttpResponse.BodyHandlers.ofString());
+        if (response.statusCode() < 200 || response.statusCode() >= 300) {
+            throw new IllegalStateException("Gemini embedding request failed: " + response.statusCode() + " - " + response.body());
+        }
+
+        JsonNode embeddings = MAPPER.readTree(response.body()).path("embeddings");
+        if (!embeddings.isArray() || embeddings.size() != texts.size()) {
+            throw new IllegalStateException("Gemini embedding response had " + embeddings.size() + " vectors for " + texts.size() + " inputs");
+        }
+        List<float[]> vectors = new ArrayList<>(texts.size());
+        for (JsonNode embedding : embeddings) {
+            JsonNode values = embedding.path("values");
+            float[] vector = new float[values.size()];
+            for (int i = 0; i < vector.length; i++) {
+                vector[i] = (float) values.get(i).asDouble();
+            }
+            vectors.add(HashingEmbeddingProvider.normalize(vector));
+        }
+        return vectors;
+    }
+
+    @Override
+    public int dimensions() {
+        return 768;
+    }
+
+    @Override
+    public String name() {
+        return "gemini";
+    }
+}
@@ -0,0 +1,105 @@
+package com.rag.mcp.retrieval;
+
+import java.nio.charset.StandardCharsets;
+
+// Deterministic, offline embedder: signed feature hashing of word unigrams and bigrams
+// with sublinear term weighting. No model, no network, stable across runs and JVMs.
+public class HashingEmbeddingProvider implements EmbeddingProvider {
+    private final int dimensions;
+
+    public HashingEmbeddingProvider() {
+        this(384);
+    }
+
+    public HashingEmbeddingProvider(int dimensions) {
+        this.dimensions = dimensions;
+    }
+
+    @Override
+    public float[] embed(String text) {
+        float[] vector = new float[dimensions];
+        String previous = null;
+        for (String token : Tokenizer.tokenize(text)) {
+            add(vector, token, 1f);
+            if (previous != null) {
+                add(vector, previous + ' ' + token, 0.5f);
+            }
+            previous = token;
+        }
+        for (int i = 0; i < dimensions; i++) {
+            if (vector[i] != 0f) {
+                vector[i] = Math.signum(vector[i]) * (float) Math.log1p(Math.abs(vector[i]));
+            }
+        }
+        return normalize(vector);
+    }
+
+    @Override
+    public int dimensions() {
+        return dimensions;
+    }
+
+    @Override
+    public String name() {
+        return "hashing";
+    }
+
+    private void add(float[] vector, String feature, float weight) {
+        int hash = murmur3(feature.getBytes(StandardCharsets.UTF_8));
+        int bucket = Math.floorMod(hash, dimensions);
+        vector[bucket] += (hash & 0x80000000) == 0 ? weight : -weight;
+    }
+
+    static float[] normalize(float[] vector) {
+        double norm = 0;
+        for (float value : vector) {
+            norm += value * value;
+        }
+        if (norm == 0) {
+            return vector;
+        }
+        float scale = (float) (1.0 / Math.sqrt(norm));
+        for (int i = 0; i < vector.length; i++) {
+            vector[i] *= scale;
+        }
+        return vector;
+    }
+
+    private static int murmur3(byte[] data) {
+        int h = 0x9747b28c;
+        int length = data.length;
+        int i = 0;
+        while (i + 4 <= length) {
+            int k = (data[i] & 0xff) | (data[i + 1] & 0xff) << 8 | (data[i + 2] & 0xff) << 16 | (data[i + 3] & 0xff) << 24;
+            k *= 0xcc9e2d51;
+            k = Integer.rotateLeft(k, 15);
+            k *= 0x1b873593;
+            h ^= k;
+            h = Integer.rotateLeft(h, 13);
+            h = h * 5 + 0xe6546b64;
+            i += 4;
+        }
+        int remaining = length - i;
+        if (remaining > 0) {
+            int k = 0;
+            if (remaining == 3) {
+                k ^= (data[i + 2] & 0xff) << 16;
+            }
+            if (remaining >= 2) {
+                k ^= (data[i + 1] & 0xff) << 8;
+            }
+            k ^= data[i] & 0xff;
+            k *= 0xcc9e2d51;
+            k = Integer.rotateLeft(k, 15);
+            k *= 0x1b873593;
+            h ^= k;
+        }
+        h ^= length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+}
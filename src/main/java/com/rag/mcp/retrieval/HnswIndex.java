@@ -0,0 +1,426 @@
+package com.rag.mcp.retrieval;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.function.IntPredicate;
+
+// Hierarchical navigable small world graph over L2-normalized vectors (cosine similarity).
+// Vectors live in one flat float[]; neighbour lists are int[] with the count in slot 0.
+// Removal is a tombstone: deleted nodes still route searches but are never returned. Their vectors
+// and links are only reclaimed by building a fresh index from the live nodes (see ChunkVectorIndex).
+public class HnswIndex {
+    private final int dimensions;
+    private final int maxConnections;
+    private final int maxConnectionsLayer0;
+    private final int efConstruction;
+    private final int efSearch;
+    private final double levelMultiplier;
+    private final Random random = new Random(42);
+    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+    private float[] vectors = new float[0];
+    private int[][][] links = new int[0][][];
+    private final BitSet deleted = new BitSet();
+    private int size;
+    private int deletedCount;
+    private int entryPoint = -1;
+    private int maxLevel = -1;
+
+    public HnswIndex(int dimensions) {
+        this(dimensions, 16, 128, 100);
+    }
+
+    public HnswIndex(int dimensions, int maxConnections, int efConstruction, int efSearch) {
+        this.dimensions = dimensions;
+        this.maxConnections = maxConnections;
+        this.maxConnectionsLayer0 = maxConnections * 2;
+        this.efConstruction = efConstruction;
+        this.efSearch = efSearch;
+        this.levelMultiplier = 1.0 / Math.log(maxConnections);
+    }
+
+    public int add(float[] vector) {
+        if (vector.length != dimensions) {
+            throw new IllegalArgumentException("Expected " + dimensions + " dimensions but got " + vector.length);
+        }
+        lock.writeLock().lock();
+        try {
+            int node = size;
+            ensureCapacity(node + 1);
+            System.arraycopy(vector, 0, vectors, node * dimensions, dimensions);
+            int level = randomLevel();
+            links[node] = new int[level + 1][];
+            for (int l = 0; l <= level; l++) {
+                links[node][l] = new int[(l == 0 ? maxConnectionsLayer0 : maxConnections) + 1];
+            }
+            size++;
+
+            if (entryPoint < 0) {
+                entryPoint = node;
+                maxLevel = level;
+                return node;
+            }
+
+            int current = entryPoint;
+            for (int l = maxLevel; l > level; l--) {
+                current = greedyClosest(node, current, l);
+            }
+            for (int l = Math.min(level, maxLevel); l >= 0; l--) {
+                Heap candidates = searchLayer(vectors, node * dimensions, current, efConstruction, l);
+                int capacity = l == 0 ? maxConnectionsLayer0 : maxConnections;
+                int[] selected = selectNeighbours(node, candidates, maxConnections);
+                for (int neighbour : selected) {
+                    connect(node, neighbour, l, capacity);
+                    connect(neighbour, node, l, capacity);
+                }
+                current = candidates.bestNode();
+            }
+            if (level > maxLevel) {
+                maxLevel = level;
+                entryPoint = node;
+            }
+            return node;
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public void remove(int node) {
+        lock.writeLock().lock();
+        try {
+            if (node >= 0 && node < size && !deleted.get(node)) {
+                deleted.set(node);
+                deletedCount++;
+            }
+        } finally {
+            lock.writeLock().unlock();
+        }
+    }
+
+    public List<Hit> search(float[] query, int k, IntPredicate accept) {
+        lock.readLock().lock();
+        try {
+            if (entryPoint < 0 || k <= 0) {
+                return List.of();
+            }
+            int current = entryPoint;
+            for (int l = maxLevel; l > 0; l--) {
+                current = greedyClosest(query, 0, current, l);
+            }
+            // Widen the beam until enough live, accepted nodes are found (filters can be selective).
+            int ef = Math.max(efSearch, k);
+            while (true) {
+                Heap results = searchLayer(query, 0, current, ef, 0);
+                List<Hit> hits = results.sortedHits(node -> !deleted.get(node) && (accept == null || accept.test(node)));
+                if (hits.size() >= k || ef >= size) {
+                    return hits.size() > k ? hits.subList(0, k) : hits;
+                }
+                ef = Math.min(size, ef * 4);
+            }
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int size() {
+        lock.readLock().lock();
+        try {
+            return size - deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int deletedCount() {
+        lock.readLock().lock();
+        try {
+            return deletedCount;
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    public int dimensions() {
+        return dimensions;
+    }
+
+    // A copy of the node's vector, for rebuilding.
+    public float[] vector(int node) {
+        lock.readLock().lock();
+        try {
+            return Arrays.copyOfRange(vectors, node * dimensions, (node + 1) * dimensions);
+        } finally {
+            lock.readLock().unlock();
+        }
+    }
+
+    private int randomLevel() {
+        return (int) (-Math.log(1.0 - random.nextDouble()) * levelMultiplier);
+    }
+
+    private void ensureCapacity(int required) {
+        if (links.length >= required) {
+            return;
+        }
+        int capacity = Math.max(required, Math.max(16, links.length * 2));
+        links = Arrays.copyOf(links, capacity);
+        vectors = Arrays.copyOf(vectors, capacity * dimensions);
+    }
+
+    private int greedyClosest(int node, int start, int level) {
+        return greedyClosest(vectors, node * dimensions, start, level);
+    }
+
+    private int greedyClosest(float[] query, int queryOffset, int start, int level) {
+        int current = start;
+        float best = distance(query, queryOffset, current);
+        boolean improved = true;
+        while (improved) {
+            improved = false;
+            int[] neighbours = links[current][level];
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int candidate = neighbours[i];
+                float d = distance(query, queryOffset, candidate);
+                if (d < best) {
+                    best = d;
+                    current = candidate;
+                    improved = true;
+                }
+            }
+        }
+        return current;
+    }
+
+    private Heap searchLayer(float[] query, int queryOffset, int entry, int ef, int level) {
+        BitSet visited = new BitSet(size);
+        Heap candidates = new Heap(ef * 2, false);
+        Heap results = new Heap(ef + 1, true);
+        float entryDistance = distance(query, queryOffset, entry);
+        candidates.push(entry, entryDistance);
+        results.push(entry, entryDistance);
+        visited.set(entry);
+
+        while (candidates.size() > 0) {
+            float candidateDistance = candidates.topDistance();
+            int candidate = candidates.pop();
+            if (candidateDistance > results.topDistance() && results.size() >= ef) {
+                break;
+            }
+            int[] neighbours = links[candidate].length > level ? links[candidate][level] : null;
+            if (neighbours == null) {
+                continue;
+            }
+            for (int i = 1; i <= neighbours[0]; i++) {
+                int neighbour = neighbours[i];
+                if (visited.get(neighbour)) {
+                    continue;
+                }
+                visited.set(neighbour);
+                float d = distance(query, queryOffset, neighbour);
+                if (results.size() < ef || d < results.topDistance()) {
+                    candidates.push(neighbour, d);
+                    results.push(neighbour, d);
+                    if (results.size() > ef) {
+                        results.pop();
+                    }
+                }
+            }
+        }
+        return results;
+    }
+
+    // Heuristic from the HNSW paper: keep a candidate only if it is closer to the base node
+    // than to every neighbour already selected, which keeps the graph navigable across clusters.
+    private int[] selectNeighbours(int base, Heap candidates, int limit) {
+        int[] nodes = candidates.nodesByDistance();
+        int[] selected = new int[Math.min(limit, nodes.length)];
+        int count = 0;
+        for (int i = 0; i < nodes.length && count < selected.length; i++) {
+            int candidate = nodes[i];
+            float toBase = distance(base, candidate);
+            boolean keep = true;
+            for (int j = 0; j < count; j++) {
+                if (distance(candidate, selected[j]) < toBase) {
+                    keep = false;
+                    break;
+                }
+            }
+            if (keep) {
+                selected[count++] = candidate;
+            }
+        }
+        // Fill remaining slots with the nearest pruned candidates so sparse regions stay connected.
+        for (int i = 0; i < nodes.length && count < selected.length; i++) {
+            if (!contains(selected, count, nodes[i])) {
+                selected[count++] = nodes[i];
+            }
+        }
+        return Arrays.copyOf(selected, count);
+    }
+
+    private void connect(int from, int to, int level, int capacity) {
+        int[] neighbours = links[from][level];
+        int count = neighbours[0];
+        if (contains(neighbours, 1, count + 1, to)) {
+            return;
+        }
+        if (count < capacity) {
+            neighbours[count + 1] = to;
+            neighbours[0] = count + 1;
+            return;
+        }
+        Heap pool = new Heap(capacity + 1, true);
+        for (int i = 1; i <= count; i++) {
+            pool.push(neighbours[i], distance(from, neighbours[i]));
+        }
+        pool.push(to, distance(from, to));
+        int[] kept = selectNeighbours(from, pool, capacity);
+        System.arraycopy(kept, 0, neighbours, 1, kept.length);
+        neighbours[0] = kept.length;
+    }
+
+    private static boolean contains(int[] values, int count, int value) {
+        return contains(values, 0, count, value);
+    }
+
+    private static boolean contains(int[] values, int from, int to, int value) {
+        for (int i = from; i < to; i++) {
+            if (values[i] == value) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private float distance(int a, int b) {
+        return distance(vectors, a * dimensions, b);
+    }
+
+    private float distance(float[] query, int queryOffset, int node) {
+        int offset = node * dimensions;
+        float dot = 0f;
+        for (int i = 0; i < dimensions; i++) {
+            dot += query[queryOffset + i] * vectors[offset + i];
+        }
+        return 1f - dot;
+    }
+
+    public record Hit(int node, float similarity) {
+    }
+
+    // Binary heap over parallel primitive arrays; max-heap keeps the worst result on top.
+    private static final class Heap {
+        private int[] nodes;
+        private float[] distances;
+        private int size;
+        private final boolean max;
+
+        Heap(int capacity, boolean max) {
+            this.nodes = new int[Math.max(4, capacity)];
+            this.distances = new float[nodes.length];
+            this.max = max;
+        }
+
+        int size() {
+            return size;
+        }
+
+        float topDistance() {
+            return size == 0 ? Float.MAX_VALUE : distances[0];
+        }
+
+        void push(int node, float distance) {
+            if (size == nodes.length) {
+                nodes = Arrays.copyOf(nodes, size * 2);
+                distances = Arrays.copyOf(distances, size * 2);
+            }
+            int i = size++;
+            while (i > 0) {
+                int parent = (i - 1) >>> 1;
+                if (!before(distance, distances[parent])) {
+                    break;
+                }
+                nodes[i] = nodes[parent];
+                distances[i] = distances[parent];
+                i = parent;
+            }
+            nodes[i] = node;
+            distances[i] = distance;
+        }
+
+        int pop() {
+            int top = nodes[0];
+            size--;
+            if (size > 0) {
+                int node = nodes[size];
+                float distance = distances[size];
+                int i = 0;
+                while (true) {
+                    int child = 2 * i + 1;
+                    if (child >= size) {
+                        break;
+                    }
+                    if (child + 1 < size && before(distances[child + 1], distances[child])) {
+                        child++;
+                    }
+                    if (!before(distances[child], distance)) {
+                        break;
+                    }
+                    nodes[i] = nodes[child];
+                    distances[i] = distances[child];
+                    i = child;
+                }
+                nodes[i] = node;
+                distances[i] = distance;
+            }
+            return top;
+        }
+
+        int bestNode() {
+            int best = nodes[0];
+            float bestDistance = distances[0];
+            for (int i = 1; i < size; i++) {
+                if (distances[i] < bestDistance) {
+                    bestDistance = distances[i];
+                    best = nodes[i];
+                }
+            }
+            return best;
+        }
+
+        // Distances are in [0, 2], so their IEEE bits sort like the floats themselves;
+        // packing (distance, node) into one long allows a primitive sort.
+        int[] nodesByDistance() {
+            long[] packed = new long[size];
+            for (int i = 0; i < size; i++) {
+                packed[i] = ((long) Float.floatToIntBits(Math.max(0f, distances[i])) << 32) | (nodes[i] & 0xffffffffL);
+            }
+            Arrays.sort(packed);
+            int[] sorted = new int[size];
+            for (int i = 0; i < size; i++) {
+                sorted[i] = (int) packed[i];
+            }
+            return sorted;
+        }
+
+        List<Hit> sortedHits(IntPredicate accept) {
+            List<Hit> hits = new ArrayList<>(size);
+            for (int i = 0; i < size; i++) {
+                if (accept.test(nodes[i])) {
+                    hits.add(new Hit(nodes[i], 1f - distances[i]));
+                }
+            }
+            hits.sort((a, b) -> Float.compare(b.similarity(), a.similarity()));
+            return hits;
+        }
+
+        private boolean before(float a, float b) {
+            return max ? a > b : a < b;
+        }
+    }
+}
@@ -0,0 +1,6 @@
+package com.rag.mcp.retrieval;
+
+import com.rag.mcp.model.ConfluencePage;
+
+public record PageChunk(ConfluencePage page, int index, String text) {
+}
@@ -0,0 +1,4 @@
+package com.rag.mcp.retrieval;
+
+public record ScoredChunk(PageChunk chunk, double score) {
+}
@@ -0,0 +1,80 @@
+package com.rag.mcp.retrieval;
+
+import com.rag.mcp.model.ConfluencePage;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// Splits page content into overlapping windows, preferring to cut at sentence ends.
+public class TextChunker {
+    private final int chunkChars;
+    private final int overlapChars;
+
+    public TextChunker() {
+        this(1200, 150);
+    }
+
+    public TextChunker(int chunkChars, int overlapChars) {
+        this.chunkChars = Math.max(200, chunkChars);
+        this.overlapChars = Math.max(0, Math.min(overlapChars, this.chunkChars / 2));
+    }
+
+    public List<PageChunk> chunk(ConfluencePage page) {
+        return chunk(page, page.getContent());
+    }
+
+    // Chunks content on behalf of page, which the chunks then refer to.
+    public List<PageChunk> chunk(ConfluencePage page, String text) {
+        List<PageChunk> chunks = new ArrayList<>();
+        String content = text == null ? "" : text;
+        if (content.isBlank()) {
+            chunks.add(new PageChunk(page, 0, ""));
+            return chunks;
+        }
+
+        int start = 0;
+        while (start < content.length()) {
+            int end = Math.min(content.length(), start + chunkChars);
+            if (end < content.length()) {
+                end = breakPoint(content, start, end);
+            }
+            chunks.add(new PageChunk(page, chunks.size(), content.substring(start, end).trim()));
+            if (end >= content.length()) {
+                break;
+            }
+            start = Math.max(start + 1, skipToWordStart(content, end - overlapChars));
+        }
+        return chunks;
+    }
+
+    // Prefers a section boundary (a Markdown heading line from StorageFormatConverter), then a
+    // sentence end, then any whitespace, in the last 30% of the window.
+    private int breakPoint(String content, int start, int end) {
+        int floor = start + (chunkChars * 7) / 10;
+        for (int i = end - 1; i > floor; i--) {
+            if (content.charAt(i) == '#' && content.charAt(i - 1) == '\n') {
+                return i;
+            }
+        }
+        for (int i = end - 1; i > floor; i--) {
+            char c = content.charAt(i);
+            if ((c == '.' || c == '!' || c == '?' || c == '\n') && Character.isWhitespace(content.charAt(i + 1))) {
+                return i + 1;
+            }
+        }
+        for (int i = end - 1; i > floor; i--) {
+            if (Character.isWhitespace(content.charAt(i))) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static int skipToWordStart(String content, int index) {
+        int i = Math.max(0, index);
+        while (i > 0 && i < content.length() && !Character.isWhitespace(content.charAt(i - 1))) {
+            i++;
+        }
+        return i;
+    }
+}
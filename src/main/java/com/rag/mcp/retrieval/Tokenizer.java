@@ -0,0 +1,38 @@
+package com.rag.mcp.retrieval;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+public final class Tokenizer {
+    private static final Set<String> STOP_WORDS = Set.of(
+            "a", "an", "and", "are", "as", "at", "be", "but", "by", "for", "from", "has", "have", "in", "into",
+            "is", "it", "its", "of", "on", "or", "that", "the", "their", "this", "to", "was", "were", "which",
+            "will", "with", "what", "how", "why", "who", "do", "does", "we", "our", "you", "your"
+    );
+
+    private Tokenizer() {
+    }
+
+    // Lower-cased letter/digit runs, stop words removed. Single pass, no regex.
+    public static List<String> tokenize(String text) {
+        List<String> tokens = new ArrayList<>();
+        if (text == null || text.isEmpty()) {
+            return tokens;
+        }
+        StringBuilder current = new StringBuilder();
+        for (int i = 0; i <= text.length(); i++) {
+            char c = i < text.length() ? text.charAt(i) : ' ';
+            if (Character.isLetterOrDigit(c)) {
+                current.append(Character.toLowerCase(c));
+            } else if (current.length() > 0) {
+                String token = current.toString();
+                if (!STOP_WORDS.contains(token)) {
+                    tokens.add(token);
+                }
+                current.setLength(0);
+            }
+        }
+        return tokens;
+    }
+}
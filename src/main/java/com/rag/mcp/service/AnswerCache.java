@@ -0,0 +1,92 @@
+package com.rag.mcp.service;
+
+import com.rag.mcp.cache.BoundedCache;
+import com.rag.mcp.model.ConfluencePage;
+
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+// Caches generated answers. The key covers the normalized question, the provider, the roots, the
+// context budget and the (pageId, version) of every page sent as context, so an edit to any of
+// those pages changes the key and the stale answer simply stops matching and ages out of the LRU.
+public class AnswerCache {
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+    private static final long SOURCE_OVERHEAD_BYTES = 256;
+
+    private final BoundedCache<String, CachedAnswer> cache;
+
+    public AnswerCache(int maxEntries, long maxBytes, Duration ttl) {
+        this.cache = new BoundedCache<>(maxEntries, maxBytes, ttl, AnswerCache::weigh);
+    }
+
+    public CachedAnswer get(String key) {
+        return cache.get(key);
+    }
+
+    public void put(String key, CachedAnswer answer) {
+        cache.put(key, answer);
+    }
+
+    public Map<String, Object> stats() {
+        return cache.stats();
+    }
+
+    public static String key(String query, String provider, List<String> rootUrls, int contextBudget,
+                             List<ConfluencePage> contextPages) {
+        MessageDigest digest = sha256();
+        update(digest, normalize(query));
+        update(digest, provider);
+        update(digest, String.join(",", rootUrls));
+        update(digest, Integer.toString(contextBudget));
+        for (ConfluencePage page : contextPages) {
+            update(digest, page.getPageId());
+            // Pages without a known version fall back to their content so edits still change the key.
+            update(digest, page.getVersion() > 0
+                    ? Integer.toString(page.getVersion())
+                    : "c" + page.getContentHash());
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    static String normalize(String query) {
+        String normalized = query.trim().toLowerCase(Locale.ROOT).replaceAll("\\s+", " ");
+        int end = normalized.length();
+        while (end > 0 && "?.!".indexOf(normalized.charAt(end - 1)) >= 0) {
+            end--;
+        }
+        return normalized.substring(0, end).trim();
+    }
+
+    private static void update(MessageDigest digest, String value) {
+        digest.update((value == null ? "" : value).getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+
+    private static long weigh(CachedAnswer answer) {
+        long weight = ENTRY_OVERHEAD_BYTES + 2L * answer.answer().length();
+        for (Map<String, Object> source : answer.sources()) {
+            weight += SOURCE_OVERHEAD_BYTES;
+            for (Object value : source.values()) {
+                weight += value instanceof String text ? 2L * text.length() : 16;
+            }
+        }
+        return weight;
+    }
+
+    public record CachedAnswer(String answer, List<Map<String, Object>> sources) {
+    }
+}
@@ -0,0 +1,293 @@
+package com.rag.mcp.service;
+
+import com.rag.mcp.model.ConfluencePage;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+// Finds which pages an answer cites, in one pass over the answer. An Aho-Corasick automaton is built
+// once over every page's title, id and URL (lowercased, whitespace collapsed); the answer is fed
+// through it as it arrives, whole or in streamed pieces. A hit counts only on word boundaries, and
+// a hit inside a longer one ("Deployment" inside "Deployment Guide") is dropped.
+public final class CitationMatcher {
+    // Shorter numeric ids would match ordinary numbers in the answer.
+    private static final int MIN_ID_LENGTH = 5;
+
+    private final List<ConfluencePage> pages;
+    private final int[] keywordPage;
+    private final int[] keywordLength;
+    private final boolean[] keywordNeedsStartBoundary;
+    private final boolean[] keywordNeedsEndBoundary;
+    private final int maxKeywordLength;
+
+    // Trie edges of node n are edgeLabel/edgeTarget[edgeStart[n] .. edgeStart[n + 1]), sorted by label.
+    private final int[] edgeStart;
+    private final char[] edgeLabel;
+    private final int[] edgeTarget;
+    private final int[] fail;
+    // Keyword ending at the node (-1 if none), and the nearest node along the fail chain that ends one.
+    private final int[] nodeKeyword;
+    private final int[] outputLink;
+
+    public CitationMatcher(List<ConfluencePage> pages) {
+        this.pages = List.copyOf(pages);
+
+        List<Map<Character, Integer>> children = new ArrayList<>();
+        List<Integer> keywordAt = new ArrayList<>();
+        children.add(new HashMap<>());
+        keywordAt.add(-1);
+        Map<String, Integer> keywords = new HashMap<>();
+        List<Integer> pageOfKeyword = new ArrayList<>();
+        List<String> keywordText = new ArrayList<>();
+
+        for (int p = 0; p < this.pages.size(); p++) {
+            ConfluencePage page = this.pages.get(p);
+            List<String> keys = new ArrayList<>(3);
+            keys.add(page.getTitle());
+            if (page.getPageId() != null && page.getPageId().length() >= MIN_ID_LENGTH) {
+                keys.add(page.getPageId());
+            }
+            keys.add(page.getSourceUrl());
+            for (String key : keys) {
+                String normalized = normalize(key);
+                // The first page with a given title keeps it, as with the old equalsIgnoreCase scan.
+                if (normalized.isEmpty() || keywords.containsKey(normalized)) {
+                    continue;
+                }
+                keywords.put(normalized, pageOfKeyword.size());
+                int node = 0;
+                for (int i = 0; i < normalized.length(); i++) {
+                    Integer next = children.get(node).get(normalized.charAt(i));
+                    if (next == null) {
+                        next = children.size();
+                        children.get(node).put(normalized.charAt(i), next);
+                        children.add(new HashMap<>());
+                        keywordAt.add(-1);
+                    }
+                    node = next;
+                }
+                keywordAt.set(node, pageOfKeyword.size());
+                pageOfKeyword.add(p);
+                keywordText.add(normalized);
+            }
+        }
+
+        int keywordCount = pageOfKeyword.size();
+        keywordPage = new int[keywordCount];
+        keywordLength = new int[keywordCount];
+        keywordNeedsStartBoundary = new boolean[keywordCount];
+        keywordNeedsEndBoundary = new boolean[keywordCount];
+        int longest = 0;
+        for (int k = 0; k < keywordCount; k++) {
+            String text = keywordText.get(k);
+            keywordPage[k] = pageOfKeyword.get(k);
+            keywordLength[k] = text.length();
+            keywordNeedsStartBoundary[k] = Character.isLetterOrDigit(text.charAt(0));
+            keywordNeedsEndBoundary[k] = Character.isLetterOrDigit(text.charAt(text.length() - 1));
+            longest = Math.max(longest, text.length());
+        }
+        maxKeywordLength = longest;
+
+        int nodeCount = children.size();
+        edgeStart = new int[nodeCount + 1];
+        edgeLabel = new char[nodeCount - 1];
+        edgeTarget = new int[nodeCount - 1];
+        nodeKeyword = new int[nodeCount];
+        int edge = 0;
+        for (int n = 0; n < nodeCount; n++) {
+            edgeStart[n] = edge;
+            nodeKeyword[n] = keywordAt.get(n);
+            char[] labels = new char[children.get(n).size()];
+            int i = 0;
+            for (char label : children.get(n).keySet()) {
+                labels[i++] = label;
+            }
+            Arrays.sort(labels);
+            for (char label : labels) {
+                edgeLabel[edge] = label;
+                edgeTarget[edge] = children.get(n).get(label);
+                edge++;
+            }
+        }
+        edgeStart[nodeCount] = edge;
+
+        // Breadth-first so every node's fail target is final before its children need it.
+        fail = new int[nodeCount];
+        outputLink = new int[nodeCount];
+        outputLink[0] = -1;
+        int[] queue = new int[nodeCount];
+        int head = 0;
+        int tail = 0;
+        for (int e = edgeStart[0]; e < edgeStart[1]; e++) {
+            fail[edgeTarget[e]] = 0;
+            outputLink[edgeTarget[e]] = -1;
+            queue[tail++] = edgeTarget[e];
+        }
+        while (head < tail) {
+            int node = queue[head++];
+            for (int e = edgeStart[node]; e < edgeStart[node + 1]; e++) {
+                int child = edgeTarget[e];
+                int state = fail[node];
+                int next;
+                while ((next = child(state, edgeLabel[e])) < 0 && state != 0) {
+                    state = fail[state];
+                }
+                fail[child] = next < 0 ? 0 : next;
+                outputLink[child] = nodeKeyword[fail[child]] >= 0 ? fail[child] : outputLink[fail[child]];
+                queue[tail++] = child;
+            }
+        }
+    }
+
+    // Pages cited anywhere in the text, in order of first citation.
+    public List<ConfluencePage> match(String text) {
+        Scan scan = scan();
+        scan.feed(text);
+        return scan.finish();
+    }
+
+    public Scan scan() {
+        return new Scan();
+    }
+
+    public int pageCount() {
+        return pages.size();
+    }
+
+    private int child(int node, char label) {
+        int low = edgeStart[node];
+        int high = edgeStart[node + 1] - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            char value = edgeLabel[mid];
+            if (value < label) {
+                low = mid + 1;
+            } else if (value > label) {
+                high = mid - 1;
+            } else {
+                return edgeTarget[mid];
+            }
+        }
+        return -1;
+    }
+
+    static String normalize(String value) {
+        if (value == null) {
+            return "";
+        }
+        StringBuilder normalized = new StringBuilder(value.length());
+        boolean space = false;
+        for (int i = 0; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (Character.isWhitespace(c) || c == '\u00A0') {
+                space = normalized.length() > 0;
+            } else {
+                if (space) {
+                    normalized.append(' ');
+                    space = false;
+                }
+                normalized.append(Character.toLowerCase(c));
+            }
+        }
+        return normalized.toString();
+    }
+
+    // Incremental matching over text that arrives in pieces (e.g. streamed answer deltas). Not thread-safe.
+    public final class Scan {
+        // The last maxKeywordLength + 1 normalized characters, to check the boundary before a hit.
+        private final char[] recent;
+        private final int recentMask;
+        private long position;
+        private int state;
+        private boolean pendingSpace;
+        // Hits whose last character was the latest one; their end boundary is decided by the next char.
+        private final List<long[]> waiting = new ArrayList<>();
+        private final List<long[]> hits = new ArrayList<>();
+
+        private Scan() {
+            int size = Integer.highestOneBit(Math.max(2, maxKeywordLength + 1)) << 1;
+            recent = new char[size];
+            recentMask = size - 1;
+        }
+
+        public void feed(CharSequence text) {
+            for (int i = 0; i < text.length(); i++) {
+                char c = text.charAt(i);
+                if (Character.isWhitespace(c) || c == '\u00A0') {
+                    pendingSpace = position > 0;
+                    continue;
+                }
+                if (pendingSpace) {
+                    pendingSpace = false;
+                    step(' ');
+                }
+                step(Character.toLowerCase(c));
+            }
+        }
+
+        // Pages cited so far, in order of first citation; hits still waiting on their end boundary are included.
+        public List<ConfluencePage> cited() {
+            List<long[]> all = new ArrayList<>(hits);
+            all.addAll(waiting);
+            return resolve(all);
+        }
+
+        public List<ConfluencePage> finish() {
+            hits.addAll(waiting);
+            waiting.clear();
+            return resolve(hits);
+        }
+
+        private void step(char c) {
+            if (!waiting.isEmpty()) {
+                boolean boundary = !Character.isLetterOrDigit(c);
+                for (long[] hit : waiting) {
+                    if (boundary || !keywordNeedsEndBoundary[(int) hit[2]]) {
+                        hits.add(hit);
+                    }
+                }
+                waiting.clear();
+            }
+
+            recent[(int) (position & recentMask)] = c;
+            position++;
+
+            int next;
+            while ((next = child(state, c)) < 0 && state != 0) {
+                state = fail[state];
+            }
+            state = next < 0 ? 0 : next;
+
+            for (int node = nodeKeyword[state] >= 0 ? state : outputLink[state]; node >= 0; node = outputLink[node]) {
+                int keyword = nodeKeyword[node];
+                long start = position - keywordLength[keyword];
+                if (keywordNeedsStartBoundary[keyword] && start > 0
+                        && Character.isLetterOrDigit(recent[(int) ((start - 1) & recentMask)])) {
+                    continue;
+                }
+                waiting.add(new long[]{start, position, keyword});
+            }
+        }
+
+        private List<ConfluencePage> resolve(List<long[]> found) {
+            List<long[]> ordered = new ArrayList<>(found);
+            // By start, longest first, so a hit nested in an earlier, longer one is skipped.
+            ordered.sort((a, b) -> a[0] != b[0] ? Long.compare(a[0], b[0]) : Long.compare(b[1], a[1]));
+            Set<ConfluencePage> cited = new LinkedHashSet<>();
+            long coveredUntil = -1;
+            for (long[] hit : ordered) {
+                if (hit[1] <= coveredUntil) {
+                    continue;
+                }
+                coveredUntil = hit[1];
+                cited.add(pages.get(keywordPage[(int) hit[2]]));
+            }
+            return new ArrayList<>(cited);
+        }
+    }
+}
@@ -0,0 +1,166 @@
+package com.rag.mcp.service;
+
+import com.rag.mcp.model.ProviderType;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// Fits ranked page excerpts into a token budget. Pages that fit get their full text; the rest
+// of the budget is shared by relevance (rank) among the pages that do not, and each of those is
+// cut at a sentence boundary. Pages whose share would be too small to be useful are dropped.
+public class ContextPacker {
+    static final int HEADER_TOKENS = 48;
+    private static final int MIN_USEFUL_TOKENS = 96;
+
+    public static int budgetFor(ProviderType providerType) {
+        return switch (providerType) {
+            case BEDROCK -> envInt("BEDROCK_CONTEXT_TOKENS", 120_000);
+            case GEMINI -> envInt("GEMINI_CONTEXT_TOKENS", 200_000);
+            case GITLAB_DUO -> envInt("GITLAB_DUO_CONTEXT_TOKENS", 60_000);
+        };
+    }
+
+    // ranked=false means the excerpts are in crawl order and share the budget equally.
+    public Packed pack(List<PageExcerpt> excerpts, int budgetTokens, boolean ranked) {
+        int count = excerpts.size();
+        int[] needed = new int[count];
+        long totalNeeded = 0;
+        for (int i = 0; i < count; i++) {
+            needed[i] = TokenEstimator.estimate(excerpts.get(i).text());
+            totalNeeded += needed[i] + HEADER_TOKENS;
+        }
+
+        int[] allotted = new int[count];
+        if (totalNeeded <= budgetTokens) {
+            System.arraycopy(needed, 0, allotted, 0, count);
+        } else {
+            allocate(needed, allotted, budgetTokens, ranked);
+        }
+
+        List<PageExcerpt> packed = new ArrayList<>();
+        int packedTokens = 0;
+        int droppedTokens = 0;
+        int truncatedPages = 0;
+        int droppedPages = 0;
+        for (int i = 0; i < count; i++) {
+            PageExcerpt excerpt = excerpts.get(i);
+            if (allotted[i] <= 0) {
+                droppedPages++;
+                droppedTokens += needed[i];
+                continue;
+            }
+            String text = excerpt.text();
+            if (allotted[i] < needed[i]) {
+                text = cut(text, allotted[i]);
+                truncatedPages++;
+            }
+            int tokens = TokenEstimator.estimate(text);
+            packedTokens += tokens;
+            droppedTokens += needed[i] - tokens;
+            packed.add(new PageExcerpt(excerpt.page(), text, excerpt.score()));
+        }
+        return new Packed(packed, budgetTokens, packedTokens + packed.size() * HEADER_TOKENS, droppedTokens,
+                truncatedPages, droppedPages);
+    }
+
+    // Water-filling: repeatedly give every unsatisfied page its weighted share of what is left;
+    // pages needing less than their share are settled in full and free budget for the others.
+    // When the least relevant open page's share is too small to be useful it is dropped and the
+    // shares are recomputed.
+    private static void allocate(int[] needed, int[] allotted, int budgetTokens, boolean ranked) {
+        int count = needed.length;
+        double[] weights = new double[count];
+        boolean[] open = new boolean[count];
+        for (int i = 0; i < count; i++) {
+            weights[i] = ranked ? 1.0 / Math.sqrt(i + 1) : 1.0;
+            open[i] = true;
+        }
+
+        long remaining = budgetTokens;
+        while (true) {
+            boolean settled = true;
+            while (settled) {
+                settled = false;
+                double weightSum = openWeight(weights, open);
+                for (int i = 0; i < count && weightSum > 0; i++) {
+                    if (open[i] && needed[i] + HEADER_TOKENS <= remaining * weights[i] / weightSum) {
+                        allotted[i] = needed[i];
+                        remaining -= needed[i] + HEADER_TOKENS;
+                        open[i] = false;
+                        settled = true;
+                    }
+                }
+            }
+
+            double weightSum = openWeight(weights, open);
+            int leastRelevant = -1;
+            for (int i = count - 1; i >= 0 && leastRelevant < 0; i--) {
+                leastRelevant = open[i] ? i : -1;
+            }
+            if (leastRelevant < 0 || remaining * weights[leastRelevant] / weightSum - HEADER_TOKENS >= MIN_USEFUL_TOKENS) {
+                break;
+            }
+            open[leastRelevant] = false;
+        }
+
+        double weightSum = openWeight(weights, open);
+        for (int i = 0; i < count; i++) {
+            if (open[i]) {
+                allotted[i] = (int) Math.max(0, remaining * weights[i] / weightSum - HEADER_TOKENS);
+            }
+        }
+    }
+
+    private static double openWeight(double[] weights, boolean[] open) {
+        double sum = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (open[i]) {
+                sum += weights[i];
+            }
+        }
+        return sum;
+    }
+
+    // Cuts at the last sentence end that fits; falls back to a word boundary.
+    static String cut(String text, int maxTokens) {
+        // Two tokens are reserved for the " ..." marker.
+        int end = TokenEstimator.prefixLength(text, Math.max(0, maxTokens - 2));
+        if (end >= text.length()) {
+            return text;
+        }
+        int floor = end / 2;
+        for (int i = end - 1; i > floor; i--) {
+            char c = text.charAt(i);
+            if ((c == '.' || c == '!' || c == '?' || c == '\n') && (i + 1 >= text.length() || Character.isWhitespace(text.charAt(i + 1)))) {
+                return text.substring(0, i + 1) + " ...";
+            }
+        }
+        for (int i = end - 1; i > floor; i--) {
+            if (Character.isWhitespace(text.charAt(i))) {
+                return text.substring(0, i) + " ...";
+            }
+        }
+        return text.substring(0, end) + "...";
+    }
+
+    private static int envInt(String key, int fallback) {
+        String value = System.getenv(key);
+        return value == null || value.isBlank() ? fallback : Integer.parseInt(value.trim());
+    }
+
+    public record Packed(List<PageExcerpt> excerpts, int budgetTokens, int packedTokens, int droppedTokens,
+                         int truncatedPages, int droppedPages) {
+        public Map<String, Object> summary() {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("budgetTokens", budgetTokens);
+            summary.put("packedTokens", packedTokens);
+            summary.put("droppedTokens", droppedTokens);
+            summary.put("pagesPacked", excerpts.size());
+            summary.put("pagesTruncated", truncatedPages);
+            summary.put("pagesDropped", droppedPages);
+            return summary;
+        }
+    }
+}
@@ -0,0 +1,442 @@
+package com.rag.mcp.service;
+
+import com.rag.mcp.cache.BoundedCache;
+import com.rag.mcp.llm.LlmProvider;
+
+import java.nio.CharBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.LongAdder;
+
+// Answers over more context than fits one prompt. The excerpts are cut into batches that each fit
+// the context budget (a page too large for one batch is split across several). In the map phase
+// every batch goes to the provider with an extraction prompt, up to mapConcurrency calls at once
+// across all queries. The findings are then merged into one prompt in the usual response format,
+// which the caller sends as the reduce call. Findings too large for that prompt are first merged
+// in rounds. Every call's result is cached by provider and prompt, so asking again over a mostly
+// unchanged tree only repeats the batches whose pages changed.
+public class MapReduceAnswerer {
+    static final String NO_FINDINGS = "NO RELEVANT INFORMATION";
+    // Smallest batch worth a call, whatever the request's maxContextTokens.
+    private static final int MIN_BATCH_TOKENS = 512;
+    private static final long ENTRY_OVERHEAD_BYTES = 128;
+
+    private final int mapConcurrency;
+    private final Semaphore mapSlots;
+    private final BoundedCache<String, String> findingsCache;
+
+    private final LongAdder queries = new LongAdder();
+    private final LongAdder mapCalls = new LongAdder();
+    private final LongAdder mergeCalls = new LongAdder();
+    private final LongAdder cachedCalls = new LongAdder();
+
+    // cacheMaxEntries <= 0 disables the findings cache.
+    public MapReduceAnswerer(int mapConcurrency, int cacheMaxEntries, long cacheMaxBytes, Duration cacheTtl) {
+        this.mapConcurrency = Math.max(1, mapConcurrency);
+        this.mapSlots = new Semaphore(this.mapConcurrency);
+        this.findingsCache = cacheMaxEntries > 0
+                ? new BoundedCache<>(cacheMaxEntries, cacheMaxBytes, cacheTtl,
+                        findings -> ENTRY_OVERHEAD_BYTES + 2L * findings.length())
+                : null;
+    }
+
+    // Runs the map phase (and any merge rounds) and returns the reduce prompt. Progress for each
+    // finished call is reported from the thread that completed it.
+    public Reduction prepare(String question, List<String> rootUrls, int retrievedPageCount, List<PageExcerpt> excerpts,
+                             LlmProvider provider, int contextBudget, QueryListener listener) throws Exception {
+        queries.increment();
+        int budget = Math.max(MIN_BATCH_TOKENS, contextBudget);
+        List<List<PageExcerpt>> batches = batches(excerpts, budget);
+        Set<String> pageIds = new LinkedHashSet<>();
+        int splitPages = 0;
+        for (PageExcerpt excerpt : excerpts) {
+            pageIds.add(excerpt.page().getPageId());
+            if (TokenEstimator.estimate(excerpt.text()) + ContextPacker.HEADER_TOKENS > budget) {
+                splitPages++;
+            }
+        }
+
+        List<String> mapPrompts = new ArrayList<>(batches.size());
+        for (List<PageExcerpt> batch : batches) {
+            mapPrompts.add(mapPrompt(question, batch));
+        }
+        Calls mapped = callAll("map", mapPrompts, provider, listener, mapCalls);
+
+        List<String> findings = new ArrayList<>();
+        for (String result : mapped.results()) {
+            if (hasFindings(result)) {
+                findings.add(result.trim());
+            }
+        }
+        int relevantBatches = findings.size();
+
+        // Each finding is capped a little under half the budget (cut's " ..." marker can add a
+        // token), so any two fit one merge prompt and every round shrinks the list.
+        int cap = budget / 2 - ContextPacker.HEADER_TOKENS - 8;
+        int rounds = 0;
+        int cachedMerges = 0;
+        while (findings.size() > 1 && tokens(findings) > budget) {
+            List<String> capped = new ArrayList<>(findings.size());
+            for (String finding : findings) {
+                capped.add(ContextPacker.cut(finding, cap));
+            }
+            List<List<String>> groups = group(capped, budget);
+            List<String> mergePrompts = new ArrayList<>();
+            for (List<String> group : groups) {
+                if (group.size() > 1) {
+                    mergePrompts.add(mergePrompt(question, group));
+                }
+            }
+            Calls merged = callAll("merge", mergePrompts, provider, listener, mergeCalls);
+            cachedMerges += merged.cached();
+            findings = new ArrayList<>(groups.size());
+            int next = 0;
+            for (List<String> group : groups) {
+                String combined = group.size() > 1 ? merged.results().get(next++) : group.get(0);
+                if (hasFindings(combined)) {
+                    findings.add(combined.trim());
+                }
+            }
+            rounds++;
+        }
+        if (findings.size() == 1 && tokens(findings) > budget) {
+            findings.set(0, ContextPacker.cut(findings.get(0), budget - ContextPacker.HEADER_TOKENS));
+        }
+
+        Map<String, Object> summary = new LinkedHashMap<>();
+        summary.put("mode", "map-reduce");
+        summary.put("budgetTokens", contextBudget);
+        summary.put("pagesMapped", pageIds.size());
+        summary.put("pagesSplit", splitPages);
+        summary.put("batches", batches.size());
+        summary.put("cachedBatches", mapped.cached());
+        summary.put("batchesWithFindings", relevantBatches);
+        summary.put("mergeRounds", rounds);
+        summary.put("cachedMerges", cachedMerges);
+        int findingsTokens = tokens(findings);
+        summary.put("findingsTokens", findingsTokens);
+        return new Reduction(reducePrompt(question, rootUrls, retrievedPageCount, pageIds.size(), batches.size(), findings),
+                findingsTokens, summary);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("mapConcurrency", mapConcurrency);
+        stats.put("inFlight", mapConcurrency - mapSlots.availablePermits());
+        stats.put("queries", queries.sum());
+        stats.put("mapCalls", mapCalls.sum());
+        stats.put("mergeCalls", mergeCalls.sum());
+        stats.put("cachedCalls", cachedCalls.sum());
+        if (findingsCache != null) {
+            stats.put("findingsCache", findingsCache.stats());
+        }
+        return stats;
+    }
+
+    // Greedy in excerpt order, so pages that sit together in the tree tend to share a batch.
+    static List<List<PageExcerpt>> batches(List<PageExcerpt> excerpts, int budgetTokens) {
+        int pieceTokens = budgetTokens - ContextPacker.HEADER_TOKENS;
+        List<List<PageExcerpt>> batches = new ArrayList<>();
+        List<PageExcerpt> current = new ArrayList<>();
+        int currentTokens = 0;
+        for (PageExcerpt excerpt : excerpts) {
+            for (PageExcerpt piece : split(excerpt, pieceTokens)) {
+                int cost = TokenEstimator.estimate(piece.text()) + ContextPacker.HEADER_TOKENS;
+                if (!current.isEmpty() && currentTokens + cost > budgetTokens) {
+                    batches.add(current);
+                    current = new ArrayList<>();
+                    currentTokens = 0;
+                }
+                current.add(piece);
+                currentTokens += cost;
+            }
+        }
+        if (!current.isEmpty()) {
+            batches.add(current);
+        }
+        return batches;
+    }
+
+    // Splits at a line break (or a space) in the second half of each piece, so nothing is dropped.
+    private static List<PageExcerpt> split(PageExcerpt excerpt, int maxTokens) {
+        String text = excerpt.text();
+        if (TokenEstimator.estimate(text) <= maxTokens) {
+            return List.of(excerpt);
+        }
+        List<PageExcerpt> pieces = new ArrayList<>();
+        int start = 0;
+        while (start < text.length()) {
+            int end = start + TokenEstimator.prefixLength(CharBuffer.wrap(text, start, text.length()), maxTokens);
+            if (end < text.length()) {
+                int floor = start + (end - start) / 2;
+                int breakAt = text.lastIndexOf('\n', end - 1);
+                if (breakAt <= floor) {
+                    breakAt = text.lastIndexOf(' ', end - 1);
+                }
+                end = breakAt > floor ? breakAt + 1 : Math.max(end, start + 1);
+            }
+            String piece = text.substring(start, end).strip();
+            if (!piece.isEmpty()) {
+                pieces.add(new PageExcerpt(excerpt.page(), piece, excerpt.score()));
+            }
+            start = end;
+        }
+        return pieces;
+    }
+
+    private static List<List<String>> group(List<String> findings, int budgetTokens) {
+        List<List<String>> groups = new ArrayList<>();
+        List<String> current = new ArrayList<>();
+        int currentTokens = 0;
+        for (String finding : findings) {
+            int cost = TokenEstimator.estimate(finding) + ContextPacker.HEADER_TOKENS;
+            if (!current.isEmpty() && currentTokens + cost > budgetTokens) {
+                groups.add(current);
+                current = new ArrayList<>();
+                currentTokens = 0;
+            }
+            current.add(finding);
+            currentTokens += cost;
+        }
+        if (!current.isEmpty()) {
+            groups.add(current);
+        }
+        return groups;
+    }
+
+    // Cached results are taken first; the rest are sent at once, each holding a map slot until it
+    // completes. The first failure cancels whatever is still running and is rethrown.
+    private Calls callAll(String stage, List<String> prompts, LlmProvider provider, QueryListener listener,
+                          LongAdder callCounter) throws Exception {
+        int count = prompts.size();
+        String[] results = new String[count];
+        String[] keys = new String[count];
+        int cached = 0;
+        for (int i = 0; i < count; i++) {
+            keys[i] = findingsCache == null ? null : cacheKey(provider.name(), prompts.get(i));
+            results[i] = keys[i] == null ? null : findingsCache.get(keys[i]);
+            if (results[i] != null) {
+                cached++;
+            }
+        }
+        cachedCalls.add(cached);
+        Progress progress = new Progress(stage, count, cached, listener);
+        progress.report();
+
+        List<CompletableFuture<String>> pending = new ArrayList<>();
+        List<Integer> pendingIndex = new ArrayList<>();
+        try {
+            for (int i = 0; i < count; i++) {
+                if (results[i] != null) {
+                    continue;
+                }
+                mapSlots.acquire();
+                CompletableFuture<String> call;
+                try {
+                    call = provider.generateAsync(prompts.get(i));
+                } catch (RuntimeException ex) {
+                    mapSlots.release();
+                    throw ex;
+                }
+                callCounter.increment();
+                String key = keys[i];
+                call.whenComplete((result, error) -> {
+                    mapSlots.release();
+                    if (error == null) {
+                        if (key != null && result != null) {
+                            findingsCache.put(key, result);
+                        }
+                        progress.completed();
+                    }
+                });
+                pending.add(call);
+                pendingIndex.add(i);
+                // Stop sending once a call has already failed.
+                if (call.isCompletedExceptionally()) {
+                    break;
+                }
+            }
+            for (int p = 0; p < pending.size(); p++) {
+                results[pendingIndex.get(p)] = await(pending.get(p));
+            }
+        } catch (Exception ex) {
+            for (CompletableFuture<String> call : pending) {
+                call.cancel(true);
+            }
+            throw ex;
+        }
+        return new Calls(Arrays.asList(results), cached);
+    }
+
+    private static String await(CompletableFuture<String> call) throws Exception {
+        try {
+            String result = call.get();
+            return result == null ? "" : result;
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause() instanceof CompletionException wrapped && wrapped.getCause() != null
+                    ? wrapped.getCause() : ex.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            throw ex;
+        } catch (CancellationException ex) {
+            throw new IllegalStateException("LLM call was cancelled", ex);
+        }
+    }
+
+    private static boolean hasFindings(String result) {
+        if (result == null || result.isBlank()) {
+            return false;
+        }
+        String trimmed = result.strip();
+        return !(trimmed.length() <= NO_FINDINGS.length() + 2
+                && trimmed.toUpperCase().startsWith(NO_FINDINGS));
+    }
+
+    private static int tokens(List<String> findings) {
+        int total = 0;
+        for (String finding : findings) {
+            total += TokenEstimator.estimate(finding) + ContextPacker.HEADER_TOKENS;
+        }
+        return total;
+    }
+
+    // The prompt does not mention the batch's position, so an unchanged batch keeps its cache key
+    // when pages elsewhere in the tree change.
+    static String mapPrompt(String question, List<PageExcerpt> batch) {
+        StringBuilder context = new StringBuilder();
+        QueryOrchestrator.appendSources(context, batch);
+        return """
+                You are extracting facts from one batch of Confluence pages. Other batches are read
+                separately, and your notes will be merged with theirs to answer the question below.
+
+                INSTRUCTIONS:
+                1. Use ONLY the Confluence context provided below. Do not infer or fabricate information.
+                2. List every fact, decision, figure or detail that helps answer the question as a bullet point.
+                3. End each bullet with the title of its source page in square brackets, e.g. "[Release Process]".
+                4. Keep exact names, numbers and dates. Note where a page raises the topic but leaves it open.
+                5. If nothing in this batch is relevant, reply with exactly: NO RELEVANT INFORMATION
+
+                """ + "User question: " + question + "\n" +
+                "\nConfluence context:" + context;
+    }
+
+    static String mergePrompt(String question, List<String> findings) {
+        StringBuilder notes = new StringBuilder();
+        appendFindings(notes, "Notes", findings);
+        return """
+                You are merging notes that were extracted from different batches of Confluence pages
+                to answer the question below.
+
+                INSTRUCTIONS:
+                1. Merge the notes into one list of bullet points. Remove duplicates but keep every distinct fact.
+                2. Keep the source page titles in square brackets at the end of each bullet.
+                3. If notes contradict each other, keep both and say that they conflict.
+                4. Do not add anything that is not in the notes.
+
+                """ + "User question: " + question + "\n" +
+                "\nNotes to merge:" + notes;
+    }
+
+    static String reducePrompt(String question, List<String> rootUrls, int retrievedPageCount, int pageCount,
+                               int batchCount, List<String> findings) {
+        StringBuilder notes = new StringBuilder();
+        if (findings.isEmpty()) {
+            notes.append("\n(No batch contained information relevant to the question.)\n");
+        } else {
+            appendFindings(notes, "Findings", findings);
+        }
+        return """
+                You are an expert technical analyst specializing in Confluence knowledge base analysis.
+                Your role is to provide comprehensive, well-structured, and actionable answers.
+
+                The Confluence pages were too many for one prompt, so they were read in batches. The facts
+                found in each batch are listed below, each tagged with its source page title.
+
+                INSTRUCTIONS:
+                1. Use ONLY the findings provided below. Do not infer or fabricate information.
+                2. If information is insufficient, explicitly state what is missing.
+                3. Reference specific source pages by title when citing information.
+                4. Structure your response using the format below.
+
+                """ + QueryOrchestrator.RESPONSE_FORMAT + """
+
+                ---
+                """ + "Root URLs: " + String.join(", ", rootUrls) + "\n" +
+                "Total pages retrieved: " + retrievedPageCount + "\n" +
+                "Pages read in batches: " + pageCount + " (" + batchCount + " batches)\n" +
+                "User question: " + question + "\n" +
+                "\nFindings from the Confluence context:" + notes;
+    }
+
+    private static void appendFindings(StringBuilder target, String label, List<String> findings) {
+        for (int i = 0; i < findings.size(); i++) {
+            target.append("\n--- ").append(label).append(' ').append(i + 1).append(" ---\n")
+                    .append(findings.get(i)).append("\n");
+        }
+    }
+
+    private static String cacheKey(String provider, String prompt) {
+        MessageDigest digest;
+        try {
+            digest = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException ex) {
+            throw new IllegalStateException(ex);
+        }
+        digest.update(provider.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+        digest.update(prompt.getBytes(StandardCharsets.UTF_8));
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    public record Reduction(String prompt, int findingsTokens, Map<String, Object> summary) {
+    }
+
+    private record Calls(List<String> results, int cached) {
+    }
+
+    // Completions arrive on provider threads; reporting is serialized so counts go out in order.
+    private static final class Progress {
+        private final String stage;
+        private final int total;
+        private final int cached;
+        private final QueryListener listener;
+        private int done;
+
+        Progress(String stage, int total, int cached, QueryListener listener) {
+            this.stage = stage;
+            this.total = total;
+            this.cached = cached;
+            this.listener = listener;
+            this.done = cached;
+        }
+
+        synchronized void completed() {
+            done++;
+            report();
+        }
+
+        synchronized void report() {
+            Map<String, Object> details = new LinkedHashMap<>();
+            details.put("batches", total);
+            details.put("cachedBatches", cached);
+            details.put("completedBatches", done);
+            listener.onProgress(stage, details);
+        }
+    }
+}
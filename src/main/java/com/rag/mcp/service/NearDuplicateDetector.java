@@ -0,0 +1,237 @@
+package com.rag.mcp.service;
+
+import com.rag.mcp.cache.BoundedCache;
+import com.rag.mcp.model.ConfluencePage;
+import com.rag.mcp.retrieval.Tokenizer;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.atomic.LongAdder;
+
+// Collapses near-duplicate pages (copied templates, per-release copies of the same runbook) so the
+// prompt carries one copy. Each page gets a MinHash signature over 4-word shingles of its text,
+// cached by page version. LSH banding (32 bands of 4 rows) proposes candidate pairs, which count
+// as duplicates when their estimated Jaccard similarity reaches the threshold; clusters are
+// transitive. The page with the most text represents its cluster, the first crawled on a tie.
+public class NearDuplicateDetector {
+    private static final int HASHES = 128;
+    private static final int ROWS_PER_BAND = 4;
+    private static final int SHINGLE_WORDS = 4;
+    // Stubs shorter than this ("See the child pages.") are never treated as duplicates.
+    private static final int MIN_TOKENS = 2 * SHINGLE_WORDS;
+    private static final long ENTRY_OVERHEAD_BYTES = 96;
+    private static final long[] SEEDS = new SplittableRandom(0x5eed_d00dL).longs(HASHES).toArray();
+    private static final Signature TOO_SHORT = new Signature(null, 0);
+
+    private final double threshold;
+    private final BoundedCache<String, Signature> signatures;
+
+    private final LongAdder runs = new LongAdder();
+    private final LongAdder clusters = new LongAdder();
+    private final LongAdder pagesCollapsed = new LongAdder();
+    private final LongAdder tokensSaved = new LongAdder();
+
+    // threshold is the estimated Jaccard similarity of two pages' shingle sets, from 0 to 1.
+    public NearDuplicateDetector(double threshold, int cacheMaxEntries) {
+        this.threshold = threshold;
+        long entryBytes = ENTRY_OVERHEAD_BYTES + 4L * HASHES;
+        this.signatures = new BoundedCache<>(cacheMaxEntries, Math.max(1, cacheMaxEntries) * entryBytes, null,
+                signature -> entryBytes);
+    }
+
+    // Keeps the pages' crawl order; alternates are keyed by the representative's page id.
+    public Result deduplicate(List<ConfluencePage> pages) {
+        runs.increment();
+        int n = pages.size();
+        Signature[] signed = new Signature[n];
+        for (int i = 0; i < n; i++) {
+            signed[i] = signature(pages.get(i));
+        }
+
+        int[] parent = new int[n];
+        for (int i = 0; i < n; i++) {
+            parent[i] = i;
+        }
+        for (int band = 0; band < HASHES / ROWS_PER_BAND; band++) {
+            Map<Long, List<Integer>> buckets = new HashMap<>();
+            for (int i = 0; i < n; i++) {
+                if (signed[i].minHashes() != null) {
+                    buckets.computeIfAbsent(bandHash(signed[i].minHashes(), band), key -> new ArrayList<>()).add(i);
+                }
+            }
+            for (List<Integer> bucket : buckets.values()) {
+                for (int a = 0; a < bucket.size(); a++) {
+                    for (int b = a + 1; b < bucket.size(); b++) {
+                        int x = find(parent, bucket.get(a));
+                        int y = find(parent, bucket.get(b));
+                        if (x != y && similarity(signed[bucket.get(a)], signed[bucket.get(b)]) >= threshold) {
+                            parent[Math.max(x, y)] = Math.min(x, y);
+                        }
+                    }
+                }
+            }
+        }
+
+        Map<Integer, List<Integer>> members = new LinkedHashMap<>();
+        for (int i = 0; i < n; i++) {
+            members.computeIfAbsent(find(parent, i), key -> new ArrayList<>()).add(i);
+        }
+        boolean[] kept = new boolean[n];
+        Map<String, List<ConfluencePage>> alternates = new LinkedHashMap<>();
+        int clusterCount = 0;
+        int collapsed = 0;
+        long saved = 0;
+        for (List<Integer> cluster : members.values()) {
+            int representative = cluster.get(0);
+            for (int member : cluster) {
+                if (signed[member].tokens() > signed[representative].tokens()) {
+                    representative = member;
+                }
+            }
+            kept[representative] = true;
+            if (cluster.size() == 1) {
+                continue;
+            }
+            clusterCount++;
+            String representativeId = pages.get(representative).getPageId();
+            List<ConfluencePage> others = alternates.computeIfAbsent(representativeId, key -> new ArrayList<>());
+            for (int member : cluster) {
+                if (member == representative) {
+                    continue;
+                }
+                collapsed++;
+                saved += signed[member].tokens();
+                // A page reached from two roots is dropped without being listed as its own alternate.
+                ConfluencePage page = pages.get(member);
+                if (!page.getPageId().equals(representativeId)
+                        && others.stream().noneMatch(other -> other.getPageId().equals(page.getPageId()))) {
+                    others.add(page);
+                }
+            }
+            if (others.isEmpty()) {
+                alternates.remove(representativeId);
+            }
+        }
+
+        List<ConfluencePage> representatives = new ArrayList<>(n - collapsed);
+        for (int i = 0; i < n; i++) {
+            if (kept[i]) {
+                representatives.add(pages.get(i));
+            }
+        }
+        clusters.add(clusterCount);
+        pagesCollapsed.add(collapsed);
+        tokensSaved.add(saved);
+        return new Result(representatives, alternates, clusterCount, collapsed, saved);
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("threshold", threshold);
+        stats.put("runs", runs.sum());
+        stats.put("clusters", clusters.sum());
+        stats.put("pagesCollapsed", pagesCollapsed.sum());
+        stats.put("estimatedTokensSaved", tokensSaved.sum());
+        stats.put("signatureCache", signatures.stats());
+        return stats;
+    }
+
+    private Signature signature(ConfluencePage page) {
+        // Pages without a known version fall back to their content hash, as in AnswerCache.key. The
+        // text is only read on a miss, so stored pages are not decoded for a cached signature.
+        String key = page.getPageId() + "@" + (page.getVersion() > 0 ? page.getVersion() : "c" + page.getContentHash());
+        Signature signature = signatures.get(key);
+        if (signature == null) {
+            String content = page.readContent();
+            signature = compute(content == null ? "" : content);
+            signatures.put(key, signature);
+        }
+        return signature;
+    }
+
+    static Signature compute(String content) {
+        List<String> words = Tokenizer.tokenize(content);
+        int tokens = TokenEstimator.estimate(content);
+        if (words.size() < MIN_TOKENS) {
+            return tokens == 0 ? TOO_SHORT : new Signature(null, tokens);
+        }
+        long[] wordHashes = new long[words.size()];
+        for (int i = 0; i < wordHashes.length; i++) {
+            wordHashes[i] = mix(words.get(i).hashCode());
+        }
+        long[] minimum = new long[HASHES];
+        Arrays.fill(minimum, Long.MAX_VALUE);
+        for (int start = 0; start + SHINGLE_WORDS <= wordHashes.length; start++) {
+            long shingle = 0;
+            for (int k = 0; k < SHINGLE_WORDS; k++) {
+                shingle = mix(shingle + wordHashes[start + k]);
+            }
+            for (int h = 0; h < HASHES; h++) {
+                long value = mix(shingle ^ SEEDS[h]);
+                if (value < minimum[h]) {
+                    minimum[h] = value;
+                }
+            }
+        }
+        // The high half of each minimum is plenty to compare on and halves the cached size.
+        int[] minHashes = new int[HASHES];
+        for (int h = 0; h < HASHES; h++) {
+            minHashes[h] = (int) (minimum[h] >>> 32);
+        }
+        return new Signature(minHashes, tokens);
+    }
+
+    // Share of equal minimums, an unbiased estimate of the Jaccard similarity of the shingle sets.
+    static double similarity(Signature a, Signature b) {
+        int equal = 0;
+        for (int h = 0; h < HASHES; h++) {
+            if (a.minHashes()[h] == b.minHashes()[h]) {
+                equal++;
+            }
+        }
+        return (double) equal / HASHES;
+    }
+
+    private static long bandHash(int[] minHashes, int band) {
+        long hash = band;
+        for (int row = band * ROWS_PER_BAND; row < (band + 1) * ROWS_PER_BAND; row++) {
+            hash = mix(hash + minHashes[row]);
+        }
+        return hash;
+    }
+
+    private static int find(int[] parent, int i) {
+        while (parent[i] != i) {
+            parent[i] = parent[parent[i]];
+            i = parent[i];
+        }
+        return i;
+    }
+
+    // splitmix64 finalizer.
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xbf58476d1ce4e5b9L;
+        z = (z ^ (z >>> 27)) * 0x94d049bb133111ebL;
+        return z ^ (z >>> 31);
+    }
+
+    // minHashes is null for pages too short to compare; tokens is the page's estimated prompt cost.
+    record Signature(int[] minHashes, int tokens) {
+    }
+
+    public record Result(List<ConfluencePage> pages, Map<String, List<ConfluencePage>> alternates, int clusters,
+                         int pagesCollapsed, long estimatedTokensSaved) {
+        public Map<String, Object> summary() {
+            Map<String, Object> summary = new LinkedHashMap<>();
+            summary.put("clusters", clusters);
+            summary.put("pagesCollapsed", pagesCollapsed);
+            summary.put("estimatedTokensSaved", estimatedTokensSaved);
+            return summary;
+        }
+    }
+}
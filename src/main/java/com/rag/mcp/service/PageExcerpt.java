@@ -0,0 +1,7 @@
+package com.rag.mcp.service;
+
+import com.rag.mcp.model.ConfluencePage;
+
+// A page as it is placed into the prompt: either its (trimmed) content or the retrieved chunks of it.
+public record PageExcerpt(ConfluencePage page, String text, double score) {
+}
@@ -0,0 +1,15 @@
+package com.rag.mcp.service;
+
+import java.util.Map;
+
+// Receives pipeline progress and answer text while a query runs; used by the streaming endpoint.
+public interface QueryListener {
+    QueryListener NONE = new QueryListener() {
+    };
+
+    default void onProgress(String stage, Map<String, Object> details) {
+    }
+
+    default void onDelta(String text) {
+    }
+}
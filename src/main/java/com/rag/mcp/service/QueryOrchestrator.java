@@ -1,105 +1,420 @@
 package com.rag.mcp.service;
 
+import com.fasterxml.jackson.databind.JsonSerializable;
 import com.rag.mcp.confluence.ConfluenceExtractorService;
-import com.rag.mcp.llm.LlmProvider;
+import com.rag.mcp.confluence.ConfluenceMirror;
+import com.rag.mcp.confluence.ConfluenceSyncService;
+import com.rag.mcp.llm.HedgingLlmProvider;
 import com.rag.mcp.llm.LlmProviderFactory;
+import com.rag.mcp.metrics.Metrics;
+import com.rag.mcp.metrics.StageTimings;
+import com.rag.mcp.model.BatchQueryRequest;
 import com.rag.mcp.model.ConfluencePage;
 import com.rag.mcp.model.ProviderType;
 import com.rag.mcp.model.QueryRequest;
+import com.rag.mcp.retrieval.ContextRetriever;
+import com.rag.mcp.retrieval.ScoredChunk;
+import com.rag.mcp.util.ThreadPools;
 
 import java.net.URI;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
 import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
 public class QueryOrchestrator {
     public static final String DEFAULT_ROOT_URL = "https://akshatanand.atlassian.net/wiki/spaces/~5e80e683cb85aa0c1448bd0f/pages/327681/Software+architecture+review";
     private static final Pattern PAGE_ID_PATTERN = Pattern.compile("/pages/(\\d+)");
+    static final int DEFAULT_BATCH_CONCURRENCY = 8;
+    private static final int MAX_BATCH_QUESTIONS = 500;
 
     private final ConfluenceExtractorService extractorService;
     private final LlmProviderFactory llmProviderFactory;
+    private final ConfluenceMirror mirror;
+    private final ConfluenceSyncService syncService;
+    private final ContextRetriever retriever;
+    private final ContextPacker contextPacker = new ContextPacker();
+    private final AnswerCache answerCache;
+    private final MapReduceAnswerer mapReduceAnswerer;
+    private final NearDuplicateDetector duplicateDetector;
+    private final int batchConcurrency;
+    private final ExecutorService batchExecutor = ThreadPools.perTaskExecutor("batch");
 
     public QueryOrchestrator(ConfluenceExtractorService extractorService, LlmProviderFactory llmProviderFactory) {
+        this(extractorService, llmProviderFactory, null, null, null, null, null, DEFAULT_BATCH_CONCURRENCY);
+    }
+
+    // Every collaborator after llmProviderFactory may be null: without a sync service every tree is
+    // crawled live, without a retriever every page goes into the prompt, without an answer cache every
+    // question reaches the provider, without a map-reduce answerer requests always get a single prompt,
+    // and without a duplicate detector every crawled page is a context candidate. batchConcurrency caps how many questions of one batch are answered at once.
+    public QueryOrchestrator(ConfluenceExtractorService extractorService, LlmProviderFactory llmProviderFactory,
+                             ConfluenceSyncService syncService, ContextRetriever retriever, AnswerCache answerCache,
+                             MapReduceAnswerer mapReduceAnswerer, NearDuplicateDetector duplicateDetector,
+                             int batchConcurrency) {
         this.extractorService = extractorService;
         this.llmProviderFactory = llmProviderFactory;
+        this.syncService = syncService;
+        this.mirror = syncService == null ? null : syncService.mirror();
+        this.retriever = retriever;
+        if (syncService != null && retriever != null) {
+            syncService.onPageRemoved(retriever::removePage);
+        }
+        this.answerCache = answerCache;
+        this.mapReduceAnswerer = mapReduceAnswerer;
+        this.duplicateDetector = duplicateDetector;
+        this.batchConcurrency = Math.max(1, batchConcurrency);
     }
 
     public Map<String, Object> process(QueryRequest request) throws Exception {
+        return process(request, QueryListener.NONE);
+    }
+
+    // Same pipeline as process(request), reporting each stage and streaming the answer to the listener.
+    public Map<String, Object> process(QueryRequest request, QueryListener listener) throws Exception {
         validate(request);
 
         ProviderType providerType = ProviderType.from(request.getProvider());
+        AnswerMode answerMode = answerMode(request);
         List<String> rootUrls = getRootUrls(request);
+        StageTimings timings = new StageTimings(Metrics.QUERY_STAGE_DURATION);
+
+        listener.onProgress("crawl", Map.of("rootPageUrls", rootUrls));
+        Corpus corpus = crawl(request, rootUrls, timings);
+        Map<String, Object> response = answer(request, request.getQuery(), providerType, answerMode, corpus, timings, listener);
+        Map<String, Object> stageTimings = timings.finish();
+        if (Boolean.TRUE.equals(request.getTimings())) {
+            response.put("timings", stageTimings);
+        }
+        return response;
+    }
 
-        int maxDepth = request.getMaxDepth() == null ? 5 : Math.max(0, request.getMaxDepth());
-        int maxPages = request.getMaxPages() == null ? 200 : Math.max(1, request.getMaxPages());
+    // Answers every question of the batch over one crawl of the shared roots. Up to batchConcurrency
+    // questions (fewer if the request asks) run at once, and each result goes to onResult as soon as
+    // it is ready, tagged with the question's index. A failed question becomes an error result; a
+    // failing onResult (the client went away) stops the batch once the running questions finish.
+    public Map<String, Object> processBatch(BatchQueryRequest request, Consumer<Map<String, Object>> onResult)
+            throws Exception {
+        List<String> questions = validateBatch(request);
+        ProviderType providerType = ProviderType.from(request.getProvider());
+        AnswerMode answerMode = answerMode(request);
+        List<String> rootUrls = getRootUrls(request);
+        long startedAt = System.nanoTime();
+        StageTimings timings = new StageTimings(Metrics.QUERY_STAGE_DURATION);
+        Corpus corpus = crawl(request, rootUrls, timings);
+
+        int concurrency = request.getConcurrency() == null || request.getConcurrency() <= 0
+                ? batchConcurrency : Math.min(batchConcurrency, request.getConcurrency());
+        Semaphore slots = new Semaphore(concurrency);
+        AtomicReference<RuntimeException> aborted = new AtomicReference<>();
+        LongAdder failed = new LongAdder();
+        for (int i = 0; i < questions.size() && aborted.get() == null; i++) {
+            slots.acquire();
+            int index = i;
+            batchExecutor.execute(() -> {
+                try {
+                    Map<String, Object> result = new LinkedHashMap<>();
+                    result.put("index", index);
+                    result.put("query", questions.get(index));
+                    try {
+                        StageTimings questionTimings = new StageTimings(Metrics.QUERY_STAGE_DURATION);
+                        result.putAll(answer(request, questions.get(index), providerType, answerMode, corpus,
+                                questionTimings, QueryListener.NONE));
+                        Map<String, Object> stageTimings = questionTimings.finish();
+                        if (Boolean.TRUE.equals(request.getTimings())) {
+                            result.put("timings", stageTimings);
+                        }
+                    } catch (Exception ex) {
+                        failed.increment();
+                        result.put("status", "error");
+                        result.put("message", ex.getMessage() == null || ex.getMessage().isBlank()
+                                ? ex.getClass().getSimpleName() : ex.getMessage());
+                    }
+                    onResult.accept(result);
+                } catch (RuntimeException ex) {
+                    aborted.compareAndSet(null, ex);
+                } finally {
+                    slots.release();
+                }
+            });
+        }
+        // Holding every slot means every started question has reported.
+        slots.acquire(concurrency);
+        if (aborted.get() != null) {
+            throw aborted.get();
+        }
 
-        List<ConfluencePage> allPages = new java.util.ArrayList<>();
-        for (String rootUrl : rootUrls) {
-            String rootPageId = extractPageId(rootUrl);
-            List<ConfluencePage> pages = extractorService.fetchTree(rootPageId, maxDepth, maxPages / rootUrls.size());
-            allPages.addAll(pages);
-            if (allPages.size() >= maxPages) break;
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("status", "ok");
+        response.put("mode", "batch");
+        response.put("rootPageUrls", rootUrls);
+        response.put("retrievedPageCount", corpus.allPages().size());
+        if (corpus.duplicates() != null) {
+            response.put("dedup", corpus.duplicates().summary());
         }
-        // Trim to maxPages if exceeded
-        if (allPages.size() > maxPages) {
-            allPages = allPages.subList(0, maxPages);
+        response.put("questionCount", questions.size());
+        response.put("failedCount", failed.sum());
+        response.put("concurrency", concurrency);
+        if (Boolean.TRUE.equals(request.getTimings())) {
+            Map<String, Object> batchTimings = new LinkedHashMap<>(timings.stages());
+            batchTimings.put("total", Math.round((System.nanoTime() - startedAt) / 100_000.0) / 10.0);
+            response.put("timings", batchTimings);
         }
+        return response;
+    }
 
-        String prompt = buildPrompt(request.getQuery(), rootUrls, allPages);
-        LlmProvider provider = llmProviderFactory.getProvider(providerType);
-        String answer = provider.generate(prompt);
+    // Crawls (or snapshots) the roots and collapses near-duplicates, once per query or batch.
+    private Corpus crawl(QueryRequest request, List<String> rootUrls, StageTimings timings) throws Exception {
+        long mark = System.nanoTime();
+        List<ConfluencePage> allPages = collectPages(request, rootUrls);
+        mark = timings.lap("crawl", mark);
+        // Near-duplicates are collapsed before retrieval, so they take neither index work nor prompt space.
+        NearDuplicateDetector.Result duplicates = duplicateDetector == null || Boolean.FALSE.equals(request.getDedup())
+                ? null : duplicateDetector.deduplicate(allPages);
+        if (duplicates != null) {
+            timings.lap("dedup", mark);
+        }
+        return new Corpus(rootUrls, allPages, duplicates);
+    }
 
-        // Parse referenced sources from the answer
-        List<Map<String, Object>> referencedSources = extractReferencedSources(answer, allPages);
+    // Everything after the crawl for one question: retrieval, packing, generation and sources.
+    private Map<String, Object> answer(QueryRequest request, String question, ProviderType providerType,
+                                       AnswerMode answerMode, Corpus corpus, StageTimings timings,
+                                       QueryListener listener) throws Exception {
+        long mark = System.nanoTime();
+        List<String> rootUrls = corpus.rootUrls();
+        List<ConfluencePage> allPages = corpus.allPages();
+        NearDuplicateDetector.Result duplicates = corpus.duplicates();
+        listener.onProgress("retrieval", Map.of("retrievedPageCount", allPages.size()));
+        List<PageExcerpt> excerpts = selectContext(request, question,
+                duplicates == null ? allPages : duplicates.pages());
+        mark = timings.lap("retrieval", mark);
+        int contextBudget = contextBudget(request, providerType);
+        ContextPacker.Packed packed = contextPacker.pack(excerpts, contextBudget,
+                excerpts.stream().anyMatch(excerpt -> excerpt.score() != 0));
+        mark = timings.lap("packing", mark);
+        // In auto mode, a context that had to be cut is answered by map-reduce over all of it instead.
+        boolean mapReduce = switch (answerMode) {
+            case SINGLE -> false;
+            case MAP_REDUCE -> true;
+            case AUTO -> mapReduceAnswerer != null && (packed.droppedPages() > 0 || packed.truncatedPages() > 0);
+        };
+        List<ConfluencePage> contextPages = (mapReduce ? excerpts : packed.excerpts()).stream()
+                .map(PageExcerpt::page).distinct().toList();
+        Map<String, Object> contextSummary = packed.summary();
+
+        HedgingLlmProvider provider = llmProviderFactory.getProvider(providerType);
+        Map<String, Object> generation = new LinkedHashMap<>();
+        generation.put("provider", provider.name());
+        generation.put("answerMode", mapReduce ? "map-reduce" : "single");
+        generation.put("contextPageCount", contextPages.size());
+
+        String cacheKey = answerCache == null ? null
+                : AnswerCache.key(question, mapReduce ? provider.name() + "/map-reduce" : provider.name(),
+                rootUrls, contextBudget, contextPages);
+        AnswerCache.CachedAnswer cached = cacheKey == null ? null : answerCache.get(cacheKey);
+        String answer;
+        HedgingLlmProvider.Answer generated = null;
+        List<Map<String, Object>> referencedSources;
+        if (cached != null) {
+            generation.put("context", contextSummary);
+            generation.put("cached", true);
+            listener.onProgress("generation", generation);
+            answer = cached.answer();
+            referencedSources = cached.sources();
+            listener.onDelta(answer);
+        } else {
+            String prompt;
+            if (mapReduce) {
+                MapReduceAnswerer.Reduction reduction = mapReduceAnswerer.prepare(question, rootUrls,
+                        allPages.size(), excerpts, provider, contextBudget, listener);
+                contextSummary = reduction.summary();
+                prompt = reduction.prompt();
+                mark = timings.lap("map", mark);
+                Metrics.QUERY_CONTEXT_TOKENS.labels("map-reduce").record(reduction.findingsTokens());
+            } else {
+                prompt = buildPrompt(question, rootUrls, allPages.size(), packed.excerpts());
+                mark = timings.lap("prompt", mark);
+                Metrics.QUERY_CONTEXT_TOKENS.labels("single").record(packed.packedTokens());
+            }
+            generation.put("context", contextSummary);
+            listener.onProgress("generation", generation);
+            // Citations are matched as the answer streams in, so no second pass is needed at the end.
+            CitationMatcher.Scan citations = new CitationMatcher(contextPages).scan();
+            if (listener == QueryListener.NONE) {
+                generated = provider.generateAnswer(prompt, null);
+                citations.feed(generated.text());
+            } else {
+                generated = provider.generateAnswer(prompt, delta -> {
+                    citations.feed(delta);
+                    listener.onDelta(delta);
+                });
+            }
+            answer = generated.text();
+            timings.lap("generation", mark);
+            referencedSources = referencedSources(citations.finish(), contextPages);
+            if (cacheKey != null) {
+                answerCache.put(cacheKey, new AnswerCache.CachedAnswer(answer, List.copyOf(referencedSources)));
+            }
+        }
 
         Map<String, Object> response = new LinkedHashMap<>();
         response.put("status", "ok");
         response.put("provider", provider.name());
+        response.put("answerMode", mapReduce ? "map-reduce" : "single");
+        response.put("cached", cached != null);
+        if (generated != null) {
+            response.put("answeredBy", generated.provider());
+            response.put("hedged", generated.hedged());
+            if (!generated.failedProviders().isEmpty()) {
+                response.put("failedProviders", generated.failedProviders());
+            }
+        }
         response.put("rootPageUrls", rootUrls);
         response.put("retrievedPageCount", allPages.size());
+        response.put("contextPageCount", contextPages.size());
+        response.put("context", contextSummary);
+        if (duplicates != null) {
+            response.put("dedup", duplicates.summary());
+            referencedSources = withAlternates(referencedSources, duplicates.alternates());
+        }
         response.put("sources", referencedSources);
         response.put("answer", answer);
         return response;
     }
 
     public Map<String, Object> extractOnly(QueryRequest request) throws Exception {
+        List<Map<String, Object>> pages = new ArrayList<>();
+        Map<String, Object> response = extractOnly(request, pages::add);
+        response.put("pages", pages);
+        return response;
+    }
+
+    // Streaming form: each page goes to onPage as soon as it is crawled and is not retained. Returns
+    // the response without "pages".
+    public Map<String, Object> extractOnly(QueryRequest request, Consumer<Map<String, Object>> onPage) throws Exception {
         validateExtractionRequest(request);
 
         List<String> rootUrls = getRootUrls(request);
 
+        int pageCount = collectPages(request, rootUrls, page -> onPage.accept(pageData(page)));
+
+        Map<String, Object> response = new LinkedHashMap<>();
+        response.put("status", "ok");
+        response.put("mode", "extract-only");
+        response.put("rootPageUrls", rootUrls);
+        response.put("retrievedPageCount", pageCount);
+        return response;
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("status", "ok");
+        stats.put("confluence", extractorService.stats());
+        stats.put("llm", llmProviderFactory.stats());
+        if (retriever != null) {
+            stats.put("retrieval", retriever.stats());
+        }
+        if (syncService != null) {
+            stats.put("sync", syncService.stats());
+        }
+        if (answerCache != null) {
+            stats.put("answerCache", answerCache.stats());
+        }
+        if (mapReduceAnswerer != null) {
+            stats.put("mapReduce", mapReduceAnswerer.stats());
+        }
+        if (duplicateDetector != null) {
+            stats.put("dedup", duplicateDetector.stats());
+        }
+        return stats;
+    }
+
+    private List<ConfluencePage> collectPages(QueryRequest request, List<String> rootUrls) throws Exception {
+        List<ConfluencePage> allPages = new ArrayList<>();
+        collectPages(request, rootUrls, allPages::add);
+        return allPages;
+    }
+
+    private int collectPages(QueryRequest request, List<String> rootUrls, Consumer<ConfluencePage> onPage) throws Exception {
         int maxDepth = request.getMaxDepth() == null ? 5 : Math.max(0, request.getMaxDepth());
         int maxPages = request.getMaxPages() == null ? 200 : Math.max(1, request.getMaxPages());
+        ConfluenceExtractorService.CrawlMode crawlMode = request.getCrawlMode() == null || request.getCrawlMode().isBlank()
+                ? null : ConfluenceExtractorService.CrawlMode.from(request.getCrawlMode());
 
-        List<ConfluencePage> allPages = new java.util.ArrayList<>();
+        int pageCount = 0;
         for (String rootUrl : rootUrls) {
             String rootPageId = extractPageId(rootUrl);
-            List<ConfluencePage> pages = extractorService.fetchTree(rootPageId, maxDepth, maxPages / rootUrls.size());
-            allPages.addAll(pages);
-            if (allPages.size() >= maxPages) break;
+            // Each root gets an equal share, and never more than what is left of maxPages.
+            int rootBudget = Math.min(maxPages / rootUrls.size(), maxPages - pageCount);
+            // Serve from the background-synced mirror when it holds this tree; crawl live otherwise.
+            if (mirror != null && mirror.covers(rootPageId)) {
+                List<ConfluencePage> pages = mirror.snapshot(rootPageId, maxDepth, rootBudget);
+                pages.forEach(onPage);
+                pageCount += pages.size();
+            } else {
+                pageCount += extractorService.fetchTree(rootPageId, maxDepth, rootBudget, crawlMode, request.getQuery(), onPage);
+            }
+            if (pageCount >= maxPages) break;
         }
-        // Trim to maxPages if exceeded
-        if (allPages.size() > maxPages) {
-            allPages = allPages.subList(0, maxPages);
+        return pageCount;
+    }
+
+    // Without a retriever every page goes into the prompt. With one, only the pages it ranks do,
+    // best first, each carrying its retrieved chunks in document order (or its whole content).
+    private List<PageExcerpt> selectContext(QueryRequest request, String question, List<ConfluencePage> pages)
+            throws Exception {
+        List<PageExcerpt> excerpts = new ArrayList<>();
+        if (retriever == null) {
+            for (ConfluencePage page : pages) {
+                excerpts.add(new PageExcerpt(page, page.getContent() == null ? "" : page.getContent(), 0));
+            }
+            return excerpts;
         }
 
-        Map<String, Object> response = new LinkedHashMap<>();
-        response.put("status", "ok");
-        response.put("mode", "extract-only");
-        response.put("rootPageUrls", rootUrls);
-        response.put("retrievedPageCount", allPages.size());
-        response.put("pages", allPages.stream().map(page -> {
-            Map<String, Object> pageData = new LinkedHashMap<>();
-            pageData.put("pageId", page.getPageId());
-            pageData.put("title", page.getTitle());
-            pageData.put("parentId", page.getParentId());
-            pageData.put("depth", page.getDepth());
-            pageData.put("sourceUrl", page.getSourceUrl());
-            pageData.put("content", page.getContent());
-            return pageData;
-        }).toList());
-        return response;
+        Map<String, ConfluencePage> pagesById = new HashMap<>();
+        for (ConfluencePage page : pages) {
+            pagesById.putIfAbsent(page.getPageId(), page);
+        }
+        Map<String, List<ScoredChunk>> chunksByPage = new LinkedHashMap<>();
+        for (ScoredChunk hit : retriever.retrieve(question, pages, request.getRetrievalMode(), request.getTopK())) {
+            chunksByPage.computeIfAbsent(hit.chunk().page().getPageId(), key -> new ArrayList<>()).add(hit);
+        }
+        for (Map.Entry<String, List<ScoredChunk>> entry : chunksByPage.entrySet()) {
+            ConfluencePage page = pagesById.get(entry.getKey());
+            if (page == null) {
+                continue;
+            }
+            List<ScoredChunk> hits = new ArrayList<>(entry.getValue());
+            double bestScore = hits.get(0).score();
+            hits.sort(Comparator.comparingInt(hit -> hit.chunk().index()));
+            StringBuilder text = new StringBuilder();
+            for (ScoredChunk hit : hits) {
+                if (text.length() > 0) {
+                    text.append("\n...\n");
+                }
+                text.append(hit.chunk().text());
+            }
+            excerpts.add(new PageExcerpt(page, text.toString(), bestScore));
+        }
+        return excerpts;
+    }
+
+    private int contextBudget(QueryRequest request, ProviderType providerType) {
+        int providerBudget = ContextPacker.budgetFor(providerType);
+        if (request.getMaxContextTokens() == null || request.getMaxContextTokens() <= 0) {
+            return providerBudget;
+        }
+        return Math.min(providerBudget, request.getMaxContextTokens());
     }
 
     private void validate(QueryRequest request) {
@@ -111,6 +426,33 @@ public class QueryOrchestrator {
         }
     }
 
+    private List<String> validateBatch(BatchQueryRequest request) {
+        if (request == null) {
+            throw new IllegalArgumentException("Request body is required");
+        }
+        if (request.getQueries() == null || request.getQueries().isEmpty()) {
+            throw new IllegalArgumentException("queries is required");
+        }
+        if (request.getQueries().size() > MAX_BATCH_QUESTIONS) {
+            throw new IllegalArgumentException("A batch holds at most " + MAX_BATCH_QUESTIONS + " queries");
+        }
+        for (String query : request.getQueries()) {
+            if (query == null || query.isBlank()) {
+                throw new IllegalArgumentException("queries must not contain blank entries");
+            }
+        }
+        return List.copyOf(request.getQueries());
+    }
+
+    private AnswerMode answerMode(QueryRequest request) {
+        AnswerMode answerMode = request.getAnswerMode() == null || request.getAnswerMode().isBlank()
+                ? AnswerMode.AUTO : AnswerMode.from(request.getAnswerMode());
+        if (answerMode == AnswerMode.MAP_REDUCE && mapReduceAnswerer == null) {
+            throw new IllegalArgumentException("map_reduce answers are disabled on this server (MAP_REDUCE_CONCURRENCY=0)");
+        }
+        return answerMode;
+    }
+
     private void validateExtractionRequest(QueryRequest request) {
         if (request == null) {
             throw new IllegalArgumentException("Request body is required");
@@ -144,7 +486,7 @@ public class QueryOrchestrator {
         return rootUrls;
     }
 
-    private String extractPageId(String pageUrl) {
+    public static String extractPageId(String pageUrl) {
         URI uri = URI.create(pageUrl);
         Matcher matcher = PAGE_ID_PATTERN.matcher(uri.getPath());
         if (!matcher.find()) {
@@ -153,17 +495,10 @@ public class QueryOrchestrator {
         return matcher.group(1);
     }
 
-    private String buildPrompt(String userQuestion, List<String> rootUrls, List<ConfluencePage> pages) {
+    // Package-private and static so the benchmarks can drive the prompt and citation paths directly.
+    static String buildPrompt(String userQuestion, List<String> rootUrls, int retrievedPageCount, List<PageExcerpt> excerpts) {
         StringBuilder context = new StringBuilder();
-        for (int i = 0; i < pages.size(); i++) {
-            ConfluencePage page = pages.get(i);
-            context.append("\n--- Source ").append(i + 1).append(" ---\n")
-                    .append("Page ID  : ").append(page.getPageId()).append("\n")
-                    .append("Title    : ").append(page.getTitle()).append("\n")
-                    .append("Depth    : ").append(page.getDepth()).append("\n")
-                    .append("URL      : ").append(page.getSourceUrl()).append("\n")
-                    .append("Content  :\n").append(trim(page.getContent(), 4000)).append("\n");
-        }
+        appendSources(context, excerpts);
 
         String rootUrlsStr = String.join(", ", rootUrls);
 
@@ -177,88 +512,125 @@ public class QueryOrchestrator {
                 3. Reference specific source pages by title when citing information.
                 4. Structure your response using the format below.
 
-                RESPONSE FORMAT:
-                ## Summary
-                A concise 2-3 sentence overview answering the core question.
-
-                ## Key Findings
-                - Bullet points covering the main facts, decisions, or details found.
-                - Group related points together logically.
-
-                ## Details
-                Expand on the key findings with relevant context, explanations, and relationships
-                between different pieces of information. Use sub-headings if multiple topics are covered.
-
-                ## Sources Referenced
-                List each Confluence page title used in this answer.
-
-                ## Gaps & Limitations
-                Note any areas where the available documentation is incomplete or unclear.
-                If no gaps exist, write "None identified."
+                """ + RESPONSE_FORMAT + """
 
                 ---
-                Root URLs: """ + rootUrlsStr + "\n" +
-                "Total pages retrieved: " + pages.size() + "\n" +
+                """ + "Root URLs: " + rootUrlsStr + "\n" +
+                "Total pages retrieved: " + retrievedPageCount + "\n" +
+                "Pages included as context: " + excerpts.size() + "\n" +
                 "User question: " + userQuestion + "\n" +
                 "\nConfluence context:" + context;
     }
 
-    private String trim(String text, int maxChars) {
-        if (text == null) {
-            return "";
+    // Shared with the map-reduce answer so both modes return the same structure.
+    static final String RESPONSE_FORMAT = """
+            RESPONSE FORMAT:
+            ## Summary
+            A concise 2-3 sentence overview answering the core question.
+
+            ## Key Findings
+            - Bullet points covering the main facts, decisions, or details found.
+            - Group related points together logically.
+
+            ## Details
+            Expand on the key findings with relevant context, explanations, and relationships
+            between different pieces of information. Use sub-headings if multiple topics are covered.
+
+            ## Sources Referenced
+            List each Confluence page title used in this answer.
+
+            ## Gaps & Limitations
+            Note any areas where the available documentation is incomplete or unclear.
+            If no gaps exist, write "None identified."
+            """;
+
+    static void appendSources(StringBuilder context, List<PageExcerpt> excerpts) {
+        for (int i = 0; i < excerpts.size(); i++) {
+            ConfluencePage page = excerpts.get(i).page();
+            context.append("\n--- Source ").append(i + 1).append(" ---\n")
+                    .append("Page ID  : ").append(page.getPageId()).append("\n")
+                    .append("Title    : ").append(page.getTitle()).append("\n")
+                    .append("Depth    : ").append(page.getDepth()).append("\n")
+                    .append("URL      : ").append(page.getSourceUrl()).append("\n")
+                    .append("Content  :\n").append(excerpts.get(i).text()).append("\n");
         }
-        if (text.length() <= maxChars) {
-            return text;
+    }
+
+    private static Map<String, Object> pageData(ConfluencePage page) {
+        Map<String, Object> pageData = new LinkedHashMap<>();
+        pageData.put("pageId", page.getPageId());
+        pageData.put("title", page.getTitle());
+        pageData.put("parentId", page.getParentId());
+        pageData.put("depth", page.getDepth());
+        pageData.put("sourceUrl", page.getSourceUrl());
+        // Stored pages serialize their text straight from the corpus store, without decoding it.
+        pageData.put("content", page.getContentSource() instanceof JsonSerializable stored ? stored : page.getContent());
+        return pageData;
+    }
+
+    static List<Map<String, Object>> extractReferencedSources(String answer, List<ConfluencePage> pages) {
+        return referencedSources(new CitationMatcher(pages).match(answer), pages);
+    }
+
+    // Falls back to every context page when the answer cites none of them.
+    private static List<Map<String, Object>> referencedSources(List<ConfluencePage> cited, List<ConfluencePage> pages) {
+        List<Map<String, Object>> referencedSources = new ArrayList<>();
+        for (ConfluencePage page : cited.isEmpty() ? pages : cited) {
+            Map<String, Object> source = new LinkedHashMap<>();
+            source.put("pageId", page.getPageId());
+            source.put("title", page.getTitle());
+            source.put("parentId", page.getParentId());
+            source.put("depth", page.getDepth());
+            source.put("sourceUrl", page.getSourceUrl());
+            referencedSources.add(source);
         }
-        return text.substring(0, maxChars) + "...";
+        return referencedSources;
     }
 
-    private List<Map<String, Object>> extractReferencedSources(String answer, List<ConfluencePage> allPages) {
-        List<Map<String, Object>> referencedSources = new java.util.ArrayList<>();
-
-        // Find the "Sources Referenced" section in the answer
-        Pattern sourcesPattern = Pattern.compile("## Sources Referenced\\s*(.*?)(?=\\n##|\\n---|\\n*$)", Pattern.DOTALL);
-        Matcher sourcesMatcher = sourcesPattern.matcher(answer);
-
-        if (sourcesMatcher.find()) {
-            String sourcesSection = sourcesMatcher.group(1);
-            // Extract page titles from the sources section
-            Pattern titlePattern = Pattern.compile("(.+?)(?=\\n|$)");
-            Matcher titleMatcher = titlePattern.matcher(sourcesSection);
-
-            while (titleMatcher.find()) {
-                String title = titleMatcher.group(1).trim();
-                if (!title.isEmpty() && !title.equals("## Sources Referenced")) {
-                    // Find the matching page by title
-                    for (ConfluencePage page : allPages) {
-                        if (page.getTitle() != null && page.getTitle().trim().equalsIgnoreCase(title)) {
-                            Map<String, Object> source = new LinkedHashMap<>();
-                            source.put("pageId", page.getPageId());
-                            source.put("title", page.getTitle());
-                            source.put("parentId", page.getParentId());
-                            source.put("depth", page.getDepth());
-                            source.put("sourceUrl", page.getSourceUrl());
-                            referencedSources.add(source);
-                            break; // Found the matching page, no need to continue searching
-                        }
-                    }
-                }
+    // Attached after caching, so a cached answer still lists the alternates of the current crawl.
+    private static List<Map<String, Object>> withAlternates(List<Map<String, Object>> sources,
+                                                            Map<String, List<ConfluencePage>> alternates) {
+        if (alternates.isEmpty()) {
+            return sources;
+        }
+        List<Map<String, Object>> merged = new ArrayList<>(sources.size());
+        for (Map<String, Object> source : sources) {
+            List<ConfluencePage> pages = alternates.get(String.valueOf(source.get("pageId")));
+            if (pages == null) {
+                merged.add(source);
+                continue;
+            }
+            Map<String, Object> withAlternates = new LinkedHashMap<>(source);
+            List<Map<String, Object>> alternateSources = new ArrayList<>(pages.size());
+            for (ConfluencePage page : pages) {
+                Map<String, Object> alternate = new LinkedHashMap<>();
+                alternate.put("pageId", page.getPageId());
+                alternate.put("title", page.getTitle());
+                alternate.put("sourceUrl", page.getSourceUrl());
+                alternateSources.add(alternate);
             }
+            withAlternates.put("alternateSources", alternateSources);
+            merged.add(withAlternates);
         }
+        return merged;
+    }
 
-        // If no sources were referenced or parsing failed, return all sources as fallback
-        if (referencedSources.isEmpty()) {
-            for (ConfluencePage page : allPages) {
-                Map<String, Object> source = new LinkedHashMap<>();
-                source.put("pageId", page.getPageId());
-                source.put("title", page.getTitle());
-                source.put("parentId", page.getParentId());
-                source.put("depth", page.getDepth());
-                source.put("sourceUrl", page.getSourceUrl());
-                referencedSources.add(source);
+    // The pages one crawl produced; duplicates is null when dedup is off.
+    private record Corpus(List<String> rootUrls, List<ConfluencePage> allPages, NearDuplicateDetector.Result duplicates) {
+    }
+
+    public enum AnswerMode {
+        // Map-reduce only when the context does not fit one prompt.
+        AUTO,
+        SINGLE,
+        MAP_REDUCE;
+
+        public static AnswerMode from(String value) {
+            try {
+                return AnswerMode.valueOf(value.trim().toUpperCase().replace('-', '_'));
+            } catch (IllegalArgumentException ex) {
+                throw new IllegalArgumentException("Unknown answer mode: " + value + " (expected auto, single or map_reduce)");
             }
         }
-
-        return referencedSources;
     }
 }
@@ -0,0 +1,53 @@
+package com.rag.mcp.service;
+
+// Fast single-pass approximation of BPE token counts (cl100k / Claude style tokenizers):
+// a word costs one token per ~4 letters, digits group by three, and every punctuation or
+// symbol character is its own token. Whitespace is folded into the following token.
+public final class TokenEstimator {
+    private TokenEstimator() {
+    }
+
+    public static int estimate(CharSequence text) {
+        return text == null ? 0 : tokensUntil(text, Integer.MAX_VALUE)[0];
+    }
+
+    // Returns the end index of the longest prefix that fits into maxTokens.
+    public static int prefixLength(CharSequence text, int maxTokens) {
+        return tokensUntil(text, maxTokens)[1];
+    }
+
+    // Returns {tokens, endIndex}; stops before the token that would exceed maxTokens.
+    private static int[] tokensUntil(CharSequence text, int maxTokens) {
+        int tokens = 0;
+        int i = 0;
+        int length = text.length();
+        while (i < length) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            int start = i;
+            int cost;
+            if (Character.isLetter(c)) {
+                while (i < length && Character.isLetter(text.charAt(i))) {
+                    i++;
+                }
+                cost = (i - start + 3) / 4;
+            } else if (Character.isDigit(c)) {
+                while (i < length && Character.isDigit(text.charAt(i))) {
+                    i++;
+                }
+                cost = (i - start + 2) / 3;
+            } else {
+                i++;
+                cost = 1;
+            }
+            if (tokens + cost > maxTokens) {
+                return new int[]{tokens, start};
+            }
+            tokens += cost;
+        }
+        return new int[]{tokens, length};
+    }
+}
@@ -0,0 +1,63 @@
+package com.rag.mcp.util;
+
+import java.io.FilterInputStream;
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.concurrent.atomic.LongAdder;
+
+// Stream wrappers that count the bytes passing through, e.g. HTTP bodies for metrics.
+public final class CountingStreams {
+    private CountingStreams() {
+    }
+
+    public static final class Input extends FilterInputStream {
+        private final LongAdder bytes;
+
+        public Input(InputStream in, LongAdder bytes) {
+            super(in);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public int read() throws IOException {
+            int b = super.read();
+            if (b >= 0) {
+                bytes.increment();
+            }
+            return b;
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) throws IOException {
+            int read = in.read(buffer, offset, length);
+            if (read > 0) {
+                bytes.add(read);
+            }
+            return read;
+        }
+    }
+
+    public static final class Output extends FilterOutputStream {
+        private final LongAdder bytes;
+
+        public Output(OutputStream out, LongAdder bytes) {
+            super(out);
+            this.bytes = bytes;
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            out.write(b);
+            bytes.increment();
+        }
+
+        // FilterOutputStream would write array slices one byte at a time.
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            out.write(buffer, offset, length);
+            bytes.add(length);
+        }
+    }
+}
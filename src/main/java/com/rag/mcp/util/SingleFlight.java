@@ -0,0 +1,149 @@
+package com.rag.mcp.util;
+
+import java.time.Duration;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Supplier;
+
+// Coalesces concurrent calls for the same key into one in-flight future. Every caller gets its
+// own view of the shared result, so cancelling a view only detaches that caller; the underlying
+// call is cancelled only once every caller has given up. Finished calls are forgotten, so this
+// is request deduplication, not a cache.
+public class SingleFlight<K, V> {
+    private final Map<K, Call> calls = new ConcurrentHashMap<>();
+    private final LongAdder executed = new LongAdder();
+    private final LongAdder coalesced = new LongAdder();
+    private final LongAdder abandoned = new LongAdder();
+
+    public CompletableFuture<V> execute(K key, Supplier<CompletableFuture<V>> loader) {
+        while (true) {
+            Call call = calls.get(key);
+            if (call == null) {
+                Call created = new Call(key);
+                call = calls.putIfAbsent(key, created);
+                if (call == null) {
+                    CompletableFuture<V> view = created.join();
+                    executed.increment();
+                    created.start(loader);
+                    return view;
+                }
+            }
+            CompletableFuture<V> view = call.join();
+            if (view != null) {
+                coalesced.increment();
+                return view;
+            }
+            // Lost a race with the last waiter abandoning that call; start a fresh one.
+        }
+    }
+
+    public Map<String, Object> stats() {
+        Map<String, Object> stats = new LinkedHashMap<>();
+        stats.put("inFlight", calls.size());
+        stats.put("executed", executed.sum());
+        stats.put("coalesced", coalesced.sum());
+        stats.put("abandoned", abandoned.sum());
+        return stats;
+    }
+
+    // Waits for a view, rethrowing the original failure. An interrupted caller cancels only its view.
+    public static <T> T await(CompletableFuture<T> view) throws Exception {
+        return await(view, null);
+    }
+
+    // Like await(view), but gives up after timeout (null waits indefinitely). A caller that times out
+    // cancels only its view, as an interrupted one does, so a stalled call cannot pin it forever.
+    public static <T> T await(CompletableFuture<T> view, Duration timeout) throws Exception {
+        try {
+            return timeout == null ? view.get() : view.get(timeout.toNanos(), TimeUnit.NANOSECONDS);
+        } catch (InterruptedException ex) {
+            view.cancel(true);
+            throw ex;
+        } catch (TimeoutException ex) {
+            view.cancel(true);
+            throw new TimeoutException("No result within " + timeout.toSeconds() + "s");
+        } catch (ExecutionException ex) {
+            Throwable cause = ex.getCause();
+            if (cause instanceof Exception exception) {
+                throw exception;
+            }
+            if (cause instanceof Error error) {
+                throw error;
+            }
+            throw ex;
+        }
+    }
+
+    private final class Call {
+        private final K key;
+        private final CompletableFuture<V> shared = new CompletableFuture<>();
+        private CompletableFuture<V> source;
+        private int waiters;
+        private boolean abandonedByAll;
+
+        Call(K key) {
+            this.key = key;
+        }
+
+        void start(Supplier<CompletableFuture<V>> loader) {
+            CompletableFuture<V> started;
+            try {
+                started = loader.get();
+            } catch (RuntimeException | Error ex) {
+                started = CompletableFuture.failedFuture(ex);
+            }
+            synchronized (this) {
+                source = started;
+                if (abandonedByAll) {
+                    started.cancel(true);
+                }
+            }
+            started.whenComplete((value, error) -> {
+                calls.remove(key, this);
+                if (error != null) {
+                    shared.completeExceptionally(error instanceof CompletionException && error.getCause() != null
+                            ? error.getCause() : error);
+                } else {
+                    shared.complete(value);
+                }
+            });
+        }
+
+        // Returns a fresh view of the shared result, or null if every earlier waiter already left.
+        synchronized CompletableFuture<V> join() {
+            if (abandonedByAll) {
+                return null;
+            }
+            waiters++;
+            CompletableFuture<V> view = shared.copy();
+            view.whenComplete((value, error) -> {
+                if (error instanceof CancellationException) {
+                    leave();
+                }
+            });
+            return view;
+        }
+
+        private synchronized void leave() {
+            waiters--;
+            if (waiters > 0 || shared.isDone()) {
+                return;
+            }
+            abandonedByAll = true;
+            abandoned.increment();
+            calls.remove(key, this);
+            if (source != null) {
+                source.cancel(true);
+            }
+            shared.cancel(true);
+        }
+    }
+}
@@ -0,0 +1,128 @@
+package com.rag.mcp.confluence;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class AdaptiveConcurrencyLimiterTest {
+    private static final Duration TARGET = Duration.ofSeconds(10);
+
+    @Test
+    void queuesCallsBeyondTheLimitInOrder() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(2, 2, TARGET);
+        long a = limiter.acquire().get();
+        long b = limiter.acquire().get();
+        CompletableFuture<Long> third = limiter.acquire();
+        CompletableFuture<Long> fourth = limiter.acquire();
+        assertFalse(third.isDone());
+        assertEquals(2, limiter.stats().get("waiting"));
+
+        limiter.release(a, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, null);
+        assertTrue(third.isDone());
+        assertFalse(fourth.isDone());
+
+        limiter.release(b, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, null);
+        assertTrue(fourth.isDone());
+        assertEquals(2, limiter.stats().get("inFlight"));
+    }
+
+    @Test
+    void growsAdditivelyAndShrinksByHalfOnThrottling() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 8, TARGET);
+        for (int i = 0; i < 4; i++) {
+            limiter.release(limiter.acquire().get(), AdaptiveConcurrencyLimiter.Outcome.SUCCESS, null);
+        }
+        double grown = (double) limiter.stats().get("limit");
+        assertTrue(grown > 4.8 && grown < 5.0, "limit " + grown);
+
+        limiter.release(limiter.acquire().get(), AdaptiveConcurrencyLimiter.Outcome.THROTTLED, null);
+        assertEquals(Math.round(grown * 50) / 100.0, (double) limiter.stats().get("limit"), 0.02);
+        limiter.release(limiter.acquire().get(), AdaptiveConcurrencyLimiter.Outcome.DROPPED, null);
+        assertEquals(1L, limiter.stats().get("throttled"));
+        assertEquals(1L, limiter.stats().get("dropped"));
+    }
+
+    @Test
+    void neverGrowsPastTheMaximumOrShrinksBelowOne() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(3, 3, TARGET);
+        for (int i = 0; i < 50; i++) {
+            limiter.release(limiter.acquire().get(), AdaptiveConcurrencyLimiter.Outcome.SUCCESS, null);
+        }
+        assertEquals(3.0, limiter.stats().get("limit"));
+
+        for (int i = 0; i < 10; i++) {
+            limiter.release(limiter.acquire().get(), AdaptiveConcurrencyLimiter.Outcome.THROTTLED, null);
+            TimeUnit.MILLISECONDS.sleep(2);
+        }
+        assertEquals(1.0, limiter.stats().get("limit"));
+    }
+
+    @Test
+    void retryAfterPausesNewCallsUntilItPasses() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(4, 4, TARGET);
+        limiter.release(limiter.acquire().get(), AdaptiveConcurrencyLimiter.Outcome.THROTTLED, Duration.ofMillis(200));
+
+        CompletableFuture<Long> waiting = limiter.acquire();
+        assertFalse(waiting.isDone());
+        assertTrue((long) limiter.stats().get("pausedForMs") > 0);
+
+        waiting.get(5, TimeUnit.SECONDS);
+    }
+
+    @Test
+    void cancelledWaitersDoNotTakeASlot() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, TARGET);
+        long held = limiter.acquire().get();
+        CompletableFuture<Long> cancelled = limiter.acquire();
+        CompletableFuture<Long> next = limiter.acquire();
+        cancelled.cancel(true);
+
+        limiter.release(held, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, null);
+
+        assertTrue(next.isDone() && !next.isCompletedExceptionally());
+        assertEquals(1, limiter.stats().get("inFlight"));
+    }
+
+    @Test
+    void cancellingAQueuedCallGivesItsSlotBack() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, TARGET);
+        long held = limiter.acquire().get();
+        AtomicInteger calls = new AtomicInteger();
+        CompletableFuture<String> queued = limiter.run(startedAt -> {
+            calls.incrementAndGet();
+            return CompletableFuture.completedFuture("ran");
+        });
+
+        // What SingleFlight does when every caller of a shared request gives up.
+        queued.cancel(true);
+        limiter.release(held, AdaptiveConcurrencyLimiter.Outcome.SUCCESS, null);
+
+        assertEquals(0, calls.get());
+        assertEquals(0, limiter.stats().get("inFlight"));
+        assertTrue(limiter.acquire().isDone());
+    }
+
+    @Test
+    void aCallThatStartedKeepsItsSlotUntilItReleases() throws Exception {
+        AdaptiveConcurrencyLimiter limiter = new AdaptiveConcurrencyLimiter(1, 1, TARGET);
+        AtomicLong started = new AtomicLong();
+        CompletableFuture<String> running = limiter.run(startedAt -> {
+            started.set(startedAt);
+            return new CompletableFuture<>();
+        });
+
+        running.cancel(true);
+        assertEquals(1, limiter.stats().get("inFlight"));
+
+        limiter.release(started.get(), AdaptiveConcurrencyLimiter.Outcome.SUCCESS, null);
+        assertEquals(0, limiter.stats().get("inFlight"));
+    }
+}
@@ -0,0 +1,166 @@
+package com.rag.mcp.confluence;
+
+import com.rag.mcp.model.PageContent;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CorpusStoreTest {
+    @TempDir
+    Path directory;
+
+    @Test
+    void restoresPagesAndRootsAfterReopening() throws IOException {
+        CorpusStore store = CorpusStore.open(directory);
+        PageContent stored = store.put("1", "Root", null, 3, "https://wiki/1", text("Grüße aus dem Wiki ✓"));
+        store.put("2", "Child", "1", 1, "https://wiki/2", text("child text"));
+        store.addRoot("1");
+        assertEquals("Grüße aus dem Wiki ✓", stored.text());
+
+        CorpusStore reopened = CorpusStore.open(directory);
+
+        List<CorpusStore.StoredPage> pages = reopened.pages();
+        assertEquals(List.of("1", "2"), pages.stream().map(CorpusStore.StoredPage::pageId).toList());
+        CorpusStore.StoredPage root = pages.get(0);
+        assertEquals("Root", root.title());
+        assertEquals(3, root.version());
+        assertEquals("https://wiki/1", root.sourceUrl());
+        assertEquals("Grüße aus dem Wiki ✓", root.content().text());
+        assertEquals("Grüße aus dem Wiki ✓".hashCode(), root.content().contentHash());
+        assertEquals("1", pages.get(1).parentId());
+        assertEquals(Set.of("1"), reopened.roots());
+        assertEquals(2, reopened.stats().get("restoredPages"));
+    }
+
+    @Test
+    void unchangedVersionsDoNotRewriteText() throws IOException {
+        CorpusStore store = CorpusStore.open(directory);
+        store.put("1", "Page", null, 4, "https://wiki/1", text("version four"));
+        Object segmentBytes = store.stats().get("segmentBytes");
+        Object indexRecords = store.stats().get("indexRecords");
+
+        store.put("1", "Page", null, 4, "https://wiki/1", text("version four"));
+        PageContent same = store.put("1", "Page", null, 4, "https://wiki/1", () -> {
+            throw new AssertionError("an unchanged version must not be read");
+        });
+
+        assertEquals("version four", same.text());
+        assertEquals(segmentBytes, store.stats().get("segmentBytes"));
+        assertEquals(indexRecords, store.stats().get("indexRecords"));
+
+        store.put("1", "Page", null, 5, "https://wiki/1", text("version five"));
+        assertEquals("version five", CorpusStore.open(directory).pages().get(0).content().text());
+    }
+
+    @Test
+    void removalsSurviveReopening() throws IOException {
+        CorpusStore store = CorpusStore.open(directory);
+        store.put("1", "One", null, 1, null, text("one"));
+        store.put("2", "Two", null, 1, null, text("two"));
+        store.addRoot("1");
+        store.addRoot("2");
+        store.remove("1");
+        store.removeRoot("2");
+
+        CorpusStore reopened = CorpusStore.open(directory);
+
+        assertEquals(List.of("2"), reopened.pages().stream().map(CorpusStore.StoredPage::pageId).toList());
+        assertEquals(Set.of("1"), reopened.roots());
+        assertEquals(3L, reopened.stats().get("liveBytes"));
+    }
+
+    @Test
+    void dropsATornIndexTailAndKeepsWriting() throws IOException {
+        CorpusStore store = CorpusStore.open(directory);
+        store.put("1", "One", null, 1, null, text("first page"));
+        store.put("2", "Two", null, 1, null, text("second page"));
+        Path index = directory.resolve("corpus-0.idx");
+        long complete = Files.size(index);
+        store.put("3", "Three", null, 1, null, text("third page"));
+        // Cut the last record in half, as a crash during the write would.
+        try (FileChannel channel = FileChannel.open(index, StandardOpenOption.WRITE)) {
+            channel.truncate(complete + (Files.size(index) - complete) / 2);
+        }
+
+        CorpusStore recovered = CorpusStore.open(directory);
+
+        assertEquals(List.of("1", "2"), recovered.pages().stream().map(CorpusStore.StoredPage::pageId).toList());
+        assertEquals(complete, Files.size(index));
+        recovered.put("3", "Three", null, 1, null, text("third page again"));
+        List<CorpusStore.StoredPage> pages = CorpusStore.open(directory).pages();
+        assertEquals(3, pages.size());
+        assertEquals("third page again", pages.get(2).content().text());
+    }
+
+    @Test
+    void startsOverWhenTheIndexIsFromAnotherFormat() throws IOException {
+        CorpusStore.open(directory).put("1", "One", null, 1, null, text("one"));
+        Files.write(directory.resolve("corpus-0.idx"), new byte[]{0, 0, 0, 1, 0, 0, 0, 1});
+
+        CorpusStore store = CorpusStore.open(directory);
+
+        assertTrue(store.pages().isEmpty());
+        store.put("2", "Two", null, 1, null, text("two"));
+        assertEquals("two", CorpusStore.open(directory).pages().get(0).content().text());
+    }
+
+    @Test
+    void compactionKeepsLivePagesAndDeletesTheOldGeneration() throws IOException {
+        CorpusStore store = CorpusStore.open(directory);
+        for (int version = 1; version <= 20; version++) {
+            for (int page = 0; page < 10; page++) {
+                store.put("p" + page, "Page " + page, null, version, null, text("page " + page + " version " + version));
+            }
+        }
+        store.remove("p9");
+        store.addRoot("p0");
+        PageContent handedOut = store.pages().get(0).content();
+        long liveBytes = (long) store.stats().get("liveBytes");
+
+        store.compact();
+
+        assertEquals(1L, store.stats().get("generation"));
+        assertEquals(liveBytes, store.stats().get("segmentBytes"));
+        assertEquals(10L, store.stats().get("indexRecords"));
+        assertFalse(Files.exists(directory.resolve("corpus-0.idx")));
+        assertFalse(Files.exists(directory.resolve("corpus-0.seg")));
+        assertEquals("page 0 version 20", handedOut.text());
+
+        store.put("p1", "Page 1", null, 21, null, text("page 1 version 21"));
+        CorpusStore reopened = CorpusStore.open(directory);
+        List<CorpusStore.StoredPage> pages = reopened.pages();
+        assertEquals(9, pages.size());
+        assertEquals("page 0 version 20", pages.get(0).content().text());
+        assertEquals("page 1 version 21", pages.get(1).content().text());
+        assertEquals(Set.of("p0"), reopened.roots());
+        assertEquals(1L, reopened.stats().get("generation"));
+    }
+
+    @Test
+    void needsCompactionOnceTheIndexLogOutgrowsThePages() throws IOException {
+        CorpusStore store = CorpusStore.open(directory);
+        assertFalse(store.needsCompaction());
+        for (int version = 1; version <= 5000; version++) {
+            store.put("1", "Page", null, version, null, text("v" + version));
+        }
+
+        assertTrue(store.needsCompaction());
+        store.compact();
+        assertFalse(store.needsCompaction());
+    }
+
+    private static PageContent text(String value) {
+        return () -> value;
+    }
+}
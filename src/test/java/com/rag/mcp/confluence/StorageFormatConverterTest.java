@@ -0,0 +1,71 @@
+package com.rag.mcp.confluence;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorageFormatConverterTest {
+
+    @Test
+    void convertsBlocksToMarkdown() {
+        String text = StorageFormatConverter.toText("<h1>Setup</h1><p>Run <code>make</code> first.<br/>Then wait.</p>"
+                + "<ul><li>One</li><li>Two</li></ul><ol><li>First</li><li>Second</li></ol>"
+                + "<table><tr><th>Key</th><th>Value</th></tr><tr><td>a</td><td>1</td></tr></table>");
+
+        assertEquals("# Setup\n\nRun `make` first.\nThen wait.\n\n- One\n- Two\n\n1. First\n2. Second\n\n"
+                + "| Key | Value |\n| --- | --- |\n| a | 1 |", text.strip());
+    }
+
+    @Test
+    void keepsCodeMacrosAsFencedBlocksAndDropsTheirParameters() {
+        String text = StorageFormatConverter.toText("<ac:structured-macro ac:name=\"code\">"
+                + "<ac:parameter ac:name=\"language\">java</ac:parameter>"
+                + "<ac:plain-text-body><![CDATA[if (a < b && c) {}]]></ac:plain-text-body></ac:structured-macro>");
+
+        assertEquals("```java\nif (a < b && c) {}\n```", text.strip());
+    }
+
+    @Test
+    void dropsScriptsAndCommentsAndKeepsLinkTitles() {
+        String text = StorageFormatConverter.toText("<script>alert(1)</script><!-- hidden -->"
+                + "<p>See <ac:link><ri:page ri:content-title=\"Other Page\"/></ac:link>.</p>");
+
+        assertEquals("See Other Page.", text.strip());
+    }
+
+    @Test
+    void decodesNamedAndNumericEntities() {
+        String text = StorageFormatConverter.toText("<p>Q&amp;A &lt;tag&gt; &#8212; &#x2713; &eacute; &bogus;</p>");
+
+        assertEquals("Q&A <tag> — ✓ é &bogus;", text.strip());
+        assertEquals("a & b", StorageFormatConverter.decodeEntities("a &amp; b"));
+    }
+
+    @Test
+    void reportsHeadingsAsSections() {
+        StorageFormatConverter.Result result = StorageFormatConverter.convert(
+                "<h1>Intro</h1><p>Hello.</p><h2>Details</h2><p>More.</p>");
+
+        List<StorageFormatConverter.Section> sections = result.sections();
+        assertEquals(2, sections.size());
+        assertEquals("Intro", sections.get(0).heading());
+        assertEquals(1, sections.get(0).level());
+        assertEquals("Details", sections.get(1).heading());
+        assertEquals(2, sections.get(1).level());
+        assertEquals(sections.get(0).end(), sections.get(1).start());
+        assertTrue(result.text().substring(sections.get(1).start(), sections.get(1).end()).contains("More."));
+    }
+
+    @Test
+    void handlesEmptyAndMalformedInput() {
+        assertEquals("", StorageFormatConverter.toText(null));
+        assertEquals("", StorageFormatConverter.toText(""));
+        String text = StorageFormatConverter.toText("<p>Unclosed <b>bold <i>text");
+        assertTrue(text.contains("Unclosed bold text"));
+        assertFalse(text.contains("<"));
+    }
+}
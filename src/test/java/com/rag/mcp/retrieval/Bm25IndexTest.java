@@ -0,0 +1,143 @@
+package com.rag.mcp.retrieval;
+
+import com.rag.mcp.model.ConfluencePage;
+import com.rag.mcp.model.PageContent;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Bm25IndexTest {
+
+    @Test
+    void ranksByTermWeightWithTitlesCountingMore() {
+        Bm25Index index = new Bm25Index();
+        index.indexPages(List.of(
+                page("1", "Release process", "How we cut a release branch and tag it.", 1),
+                page("2", "Onboarding", "New joiners read the release notes once.", 1),
+                page("3", "Incident review", "Postmortem template and severity levels.", 1)));
+
+        List<Bm25Index.ScoredPage> hits = index.search("release", 10, null);
+        assertEquals(List.of("1", "2"), ids(hits));
+        assertTrue(hits.get(0).score() > hits.get(1).score());
+        assertTrue(index.search("kubernetes", 10, null).isEmpty());
+    }
+
+    @Test
+    void restrictsResultsToTheGivenPages() {
+        Bm25Index index = new Bm25Index();
+        index.indexPages(List.of(
+                page("1", "Deploy", "deploy steps", 1),
+                page("2", "Deploy again", "deploy steps", 1)));
+
+        assertEquals(List.of("2"), ids(index.search("deploy", 10, Set.of("2", "unknown"))));
+        assertTrue(index.search("deploy", 10, Set.of()).isEmpty());
+        assertEquals(1, index.search("deploy", 1, null).size());
+    }
+
+    @Test
+    void decodesMultiByteFrequenciesAndDocIdGaps() {
+        Bm25Index index = new Bm25Index();
+        List<ConfluencePage> pages = new ArrayList<>();
+        pages.add(page("first", "First", "flux " + "capacitor ".repeat(200), 1));
+        for (int i = 0; i < 300; i++) {
+            pages.add(page("filler" + i, "Filler " + i, "nothing relevant here " + i, 1));
+        }
+        pages.add(page("last", "Last", "flux mentioned once", 1));
+        index.indexPages(pages);
+
+        // "flux" has a doc id gap of 301, and "capacitor" a term frequency of 200; both need two varint bytes.
+        assertEquals(List.of("last", "first"), ids(index.search("flux", 10, null)));
+        assertEquals(List.of("first"), ids(index.search("capacitor", 10, null)));
+    }
+
+    @Test
+    void reindexesOnlyChangedPagesAndDropsTheirOldTerms() {
+        Bm25Index index = new Bm25Index();
+        assertEquals(2, index.indexPages(List.of(page("1", "Runbook", "restart the cache", 1),
+                page("2", "Other", "unrelated", 1))));
+        assertEquals(0, index.indexPages(List.of(page("1", "Runbook", "restart the cache", 1))));
+        assertEquals(1, index.indexPages(List.of(page("1", "Runbook", "flush the queue", 2))));
+
+        assertTrue(index.search("cache", 10, null).isEmpty());
+        assertEquals(List.of("1"), ids(index.search("queue", 10, null)));
+        assertEquals(2, index.stats().get("pages"));
+    }
+
+    @Test
+    void removedPagesAreNoLongerFound() {
+        Bm25Index index = new Bm25Index();
+        index.indexPages(List.of(page("1", "Runbook", "restart the cache", 1),
+                page("2", "Runbook copy", "restart the cache", 1)));
+
+        index.removePage("1");
+        index.removePage("missing");
+
+        assertEquals(List.of("2"), ids(index.search("restart cache", 10, null)));
+        assertEquals(1, index.stats().get("pages"));
+    }
+
+    @Test
+    void compactsTombstonedPostingsAndKeepsSearchCorrect() {
+        Bm25Index index = new Bm25Index();
+        List<ConfluencePage> original = new ArrayList<>();
+        List<ConfluencePage> updated = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            original.add(page("p" + i, "Page " + i, "alpha topic" + i + " shared words about deployment", 1));
+            updated.add(page("p" + i, "Page " + i, "omega topic" + i + " shared words about deployment", 2));
+        }
+        index.indexPages(original);
+        Object postingBytes = index.stats().get("postingBytes");
+
+        // Every page changes at once, so half the postings are dead and the batch ends in a compaction.
+        assertEquals(300, index.indexPages(updated));
+
+        assertEquals(postingBytes, index.stats().get("postingBytes"));
+        assertEquals(300 * 8L, index.stats().get("postings"));
+        assertTrue(index.search("alpha", 10, null).isEmpty());
+        assertEquals(300, index.search("omega", 1000, null).size());
+        List<Bm25Index.ScoredPage> hits = index.search("topic17", 10, null);
+        assertEquals(List.of("p17"), ids(hits));
+        assertEquals(2, hits.get(0).page().getVersion());
+        assertEquals(List.of("p42"), ids(index.search("topic42", 10, Set.of("p42", "p43"))));
+    }
+
+    @Test
+    void unchangedStoredPagesAreNotDecodedAgain() {
+        AtomicInteger decodes = new AtomicInteger();
+        PageContent stored = new PageContent() {
+            @Override
+            public String text() {
+                decodes.incrementAndGet();
+                return "restart the cache";
+            }
+
+            @Override
+            public int contentHash() {
+                return "restart the cache".hashCode();
+            }
+        };
+        Bm25Index index = new Bm25Index();
+        index.indexPages(List.of(new ConfluencePage("1", "Runbook", null, 0, "https://wiki/1", stored, 3)));
+        ConfluencePage again = new ConfluencePage("1", "Runbook", null, 0, "https://wiki/1", stored, 3);
+
+        assertEquals(0, index.indexPages(List.of(again)));
+
+        assertEquals(1, decodes.get());
+        assertSame(again, index.search("cache", 1, null).get(0).page());
+    }
+
+    static ConfluencePage page(String id, String title, String content, int version) {
+        return new ConfluencePage(id, title, null, 0, "https://wiki/pages/" + id, content, version);
+    }
+
+    private static List<String> ids(List<Bm25Index.ScoredPage> hits) {
+        return hits.stream().map(hit -> hit.page().getPageId()).toList();
+    }
+}
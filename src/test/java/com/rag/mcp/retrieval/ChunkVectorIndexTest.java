@@ -0,0 +1,120 @@
+package com.rag.mcp.retrieval;
+
+import com.rag.mcp.model.ConfluencePage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkVectorIndexTest {
+    private final CountingEmbedder embedder = new CountingEmbedder();
+
+    @Test
+    void findsTheChunkThatAnswersTheQuery() throws Exception {
+        ChunkVectorIndex index = new ChunkVectorIndex(embedder, new TextChunker());
+        index.indexPages(List.of(
+                page("1", "Database failover", "Promote the replica and repoint the connection pool.", 1),
+                page("2", "Holiday calendar", "Offices close on public holidays.", 1)));
+
+        List<ScoredChunk> hits = index.search("promote replica failover", 1, null);
+        assertEquals("1", hits.get(0).chunk().page().getPageId());
+        assertEquals("Promote the replica and repoint the connection pool.", hits.get(0).chunk().text());
+        // Chunks point at a copy of the page without its text.
+        assertNull(hits.get(0).chunk().page().getContent());
+
+        List<ScoredChunk> restricted = index.search("promote replica failover", 5, Set.of("2"));
+        assertEquals(1, restricted.size());
+        assertEquals("2", restricted.get(0).chunk().page().getPageId());
+    }
+
+    @Test
+    void embedsOnlyPagesThatChanged() throws Exception {
+        ChunkVectorIndex index = new ChunkVectorIndex(embedder, new TextChunker());
+        ConfluencePage page = page("1", "Runbook", "Restart the cache.", 1);
+        assertEquals(1, index.indexPages(List.of(page)));
+        assertEquals(0, index.indexPages(List.of(page("1", "Runbook", "Restart the cache.", 1))));
+        assertEquals(1, embedder.chunks.get());
+
+        assertEquals(1, index.indexPages(List.of(page("1", "Runbook", "Flush the queue.", 2))));
+        assertEquals(1, index.stats().get("liveChunks"));
+        assertEquals(1, index.stats().get("deletedChunks"));
+        assertEquals("Flush the queue.", index.search("cache", 5, null).get(0).chunk().text());
+    }
+
+    @Test
+    void removedPagesAreNoLongerFound() throws Exception {
+        ChunkVectorIndex index = new ChunkVectorIndex(embedder, new TextChunker());
+        index.indexPages(List.of(page("1", "Runbook", "Restart the cache.", 1),
+                page("2", "Other", "Unrelated notes.", 1)));
+
+        index.removePage("1");
+        index.removePage("missing");
+
+        List<ScoredChunk> hits = index.search("restart cache", 5, null);
+        assertEquals(1, hits.size());
+        assertEquals("2", hits.get(0).chunk().page().getPageId());
+        assertEquals(1, index.stats().get("pages"));
+    }
+
+    @Test
+    void rebuildsTheGraphOnceTombstonesPileUpWithoutReembedding() throws Exception {
+        ChunkVectorIndex index = new ChunkVectorIndex(embedder, new TextChunker());
+        for (int version = 1; version <= 3; version++) {
+            List<ConfluencePage> pages = new ArrayList<>();
+            for (int i = 0; i < 800; i++) {
+                pages.add(page("p" + i, "Page " + i, "topic" + i + " revision" + version + " shared text", version));
+            }
+            index.indexPages(pages);
+        }
+
+        assertEquals(3 * 800, embedder.chunks.get());
+        assertEquals(800, index.stats().get("liveChunks"));
+        assertTrue((long) index.stats().get("rebuilds") >= 1);
+        assertTrue((int) index.stats().get("deletedChunks") < 800);
+        List<ScoredChunk> hits = index.search("topic17 revision3", 1, null);
+        assertEquals("p17", hits.get(0).chunk().page().getPageId());
+        assertEquals(3, hits.get(0).chunk().page().getVersion());
+
+        for (int i = 0; i < 800; i++) {
+            index.removePage("p" + i);
+        }
+        assertEquals(0, index.stats().get("liveChunks"));
+        assertTrue(index.search("topic17", 5, null).isEmpty());
+    }
+
+    private static ConfluencePage page(String id, String title, String content, int version) {
+        return new ConfluencePage(id, title, null, 0, "https://wiki/pages/" + id, content, version);
+    }
+
+    private static final class CountingEmbedder implements EmbeddingProvider {
+        private final HashingEmbeddingProvider delegate = new HashingEmbeddingProvider(64);
+        private final AtomicInteger chunks = new AtomicInteger();
+
+        @Override
+        public float[] embed(String text) {
+            return delegate.embed(text);
+        }
+
+        @Override
+        public List<float[]> embedAll(List<String> texts) {
+            chunks.addAndGet(texts.size());
+            return texts.stream().map(delegate::embed).toList();
+        }
+
+        @Override
+        public int dimensions() {
+            return delegate.dimensions();
+        }
+
+        @Override
+        public String name() {
+            return "counting";
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.rag.mcp.retrieval;
+
+import com.rag.mcp.model.ConfluencePage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class ContextRetrieverTest {
+    private final ChunkVectorIndex vectorIndex = new ChunkVectorIndex(new HashingEmbeddingProvider(), new TextChunker());
+    private final Bm25Index bm25Index = new Bm25Index();
+    private final ContextRetriever retriever = new ContextRetriever(vectorIndex, bm25Index,
+            ContextRetriever.Mode.BM25, 10, 10, 3);
+
+    @Test
+    void dropsTheLeastRecentlyRequestedPagesBeyondTheCap() throws Exception {
+        ConfluencePage a = page("a", "Deploy", "deploy the service");
+        ConfluencePage b = page("b", "Rollback", "roll the deploy back");
+        ConfluencePage c = page("c", "Alerts", "deploy alerts");
+        retriever.retrieve("deploy", List.of(a, b), null, null);
+        retriever.retrieve("deploy", List.of(c), "hybrid", null);
+        retriever.retrieve("deploy", List.of(a), null, null);
+
+        retriever.retrieve("deploy", List.of(page("d", "Backup", "deploy backups")), "hybrid", null);
+
+        Map<String, Object> stats = retriever.stats();
+        assertEquals(3, stats.get("indexedPages"));
+        assertEquals(1L, stats.get("evictions"));
+        assertEquals(List.of("a", "c", "d"), bm25Index.search("deploy", 10, null).stream()
+                .map(hit -> hit.page().getPageId()).sorted().toList());
+        assertEquals(2, vectorIndex.stats().get("pages"));
+    }
+
+    @Test
+    void anEvictedPageIsIndexedAgainWhenAskedAbout() throws Exception {
+        ConfluencePage first = page("1", "Runbook", "restart the queue");
+        retriever.retrieve("restart", List.of(first), null, null);
+        retriever.retrieve("other", List.of(page("2", "A", "x"), page("3", "B", "y"), page("4", "C", "z")), null, null);
+
+        List<ScoredChunk> hits = retriever.retrieve("restart", List.of(first), null, null);
+
+        assertEquals("1", hits.get(0).chunk().page().getPageId());
+        assertEquals(3, retriever.stats().get("indexedPages"));
+    }
+
+    private static ConfluencePage page(String id, String title, String content) {
+        return new ConfluencePage(id, title, null, 0, "https://wiki/pages/" + id, content, 1);
+    }
+}
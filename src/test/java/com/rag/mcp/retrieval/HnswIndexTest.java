@@ -0,0 +1,155 @@
+package com.rag.mcp.retrieval;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class HnswIndexTest {
+    private static final int DIMENSIONS = 16;
+
+    @Test
+    void findsTheExactNearestNeighboursOnRandomVectors() {
+        Random random = new Random(7);
+        HnswIndex index = new HnswIndex(DIMENSIONS);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            float[] vector = randomUnitVector(random);
+            vectors.add(vector);
+            assertEquals(i, index.add(vector));
+        }
+
+        int found = 0;
+        int queries = 50;
+        for (int q = 0; q < queries; q++) {
+            float[] query = randomUnitVector(random);
+            Set<Integer> exact = bruteForce(vectors, query, 10, Set.of());
+            for (HnswIndex.Hit hit : index.search(query, 10, null)) {
+                if (exact.contains(hit.node())) {
+                    found++;
+                }
+            }
+        }
+        assertTrue(found >= queries * 10 * 0.9, "recall@10 was " + found / (queries * 10.0));
+    }
+
+    @Test
+    void returnsHitsBySimilarityAndTheNodeItself() {
+        Random random = new Random(11);
+        HnswIndex index = new HnswIndex(DIMENSIONS);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            vectors.add(randomUnitVector(random));
+            index.add(vectors.get(i));
+        }
+
+        List<HnswIndex.Hit> hits = index.search(vectors.get(123), 5, null);
+        assertEquals(5, hits.size());
+        assertEquals(123, hits.get(0).node());
+        assertEquals(1.0f, hits.get(0).similarity(), 1e-5);
+        for (int i = 1; i < hits.size(); i++) {
+            assertTrue(hits.get(i - 1).similarity() >= hits.get(i).similarity());
+        }
+    }
+
+    @Test
+    void removedNodesAreNeverReturned() {
+        Random random = new Random(13);
+        HnswIndex index = new HnswIndex(DIMENSIONS);
+        List<float[]> vectors = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            vectors.add(randomUnitVector(random));
+            index.add(vectors.get(i));
+        }
+        Set<Integer> removed = new HashSet<>();
+        for (int node = 0; node < 500; node += 2) {
+            index.remove(node);
+            removed.add(node);
+        }
+        index.remove(0);
+
+        assertEquals(250, index.size());
+        assertEquals(250, index.deletedCount());
+        for (int q = 0; q < 20; q++) {
+            float[] query = vectors.get(q * 2);
+            List<HnswIndex.Hit> hits = index.search(query, 10, null);
+            assertEquals(10, hits.size());
+            for (HnswIndex.Hit hit : hits) {
+                assertFalse(removed.contains(hit.node()), "returned removed node " + hit.node());
+            }
+            assertEquals(bruteForce(vectors, query, 1, removed).iterator().next(), hits.get(0).node());
+        }
+    }
+
+    @Test
+    void widensTheSearchForSelectiveFilters() {
+        Random random = new Random(17);
+        HnswIndex index = new HnswIndex(DIMENSIONS);
+        for (int i = 0; i < 1000; i++) {
+            index.add(randomUnitVector(random));
+        }
+
+        // One node in a hundred passes the filter, far fewer than the default beam would visit.
+        List<HnswIndex.Hit> hits = index.search(randomUnitVector(random), 8, node -> node % 100 == 0);
+        assertEquals(8, hits.size());
+        for (HnswIndex.Hit hit : hits) {
+            assertEquals(0, hit.node() % 100);
+        }
+    }
+
+    @Test
+    void handlesEmptyIndexesAndBadInput() {
+        HnswIndex index = new HnswIndex(DIMENSIONS);
+        assertTrue(index.search(randomUnitVector(new Random(1)), 5, null).isEmpty());
+        assertThrows(IllegalArgumentException.class, () -> index.add(new float[DIMENSIONS + 1]));
+
+        float[] vector = randomUnitVector(new Random(2));
+        int node = index.add(vector);
+        assertTrue(index.search(vector, 0, null).isEmpty());
+        float[] copy = index.vector(node);
+        assertArrayEquals(vector, copy);
+        copy[0] = 42;
+        assertArrayEquals(vector, index.vector(node));
+    }
+
+    static float[] randomUnitVector(Random random) {
+        float[] vector = new float[DIMENSIONS];
+        double norm = 0;
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] = (float) random.nextGaussian();
+            norm += vector[i] * vector[i];
+        }
+        for (int i = 0; i < DIMENSIONS; i++) {
+            vector[i] /= (float) Math.sqrt(norm);
+        }
+        return vector;
+    }
+
+    private static Set<Integer> bruteForce(List<float[]> vectors, float[] query, int k, Set<Integer> excluded) {
+        List<Integer> nodes = new ArrayList<>();
+        for (int i = 0; i < vectors.size(); i++) {
+            if (!excluded.contains(i)) {
+                nodes.add(i);
+            }
+        }
+        nodes.sort((a, b) -> Float.compare(dot(vectors.get(b), query), dot(vectors.get(a), query)));
+        return new HashSet<>(nodes.subList(0, k));
+    }
+
+    private static float dot(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < a.length; i++) {
+            sum += a[i] * b[i];
+        }
+        return sum;
+    }
+}
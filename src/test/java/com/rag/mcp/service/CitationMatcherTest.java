@@ -0,0 +1,81 @@
+package com.rag.mcp.service;
+
+import com.rag.mcp.model.ConfluencePage;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class CitationMatcherTest {
+    private static final ConfluencePage DEPLOYMENT = page("100001", "Deployment");
+    private static final ConfluencePage DEPLOYMENT_GUIDE = page("100002", "Deployment Guide");
+    private static final ConfluencePage ON_CALL = page("100003", "On-call rota");
+    private static final ConfluencePage SHORT_ID = page("42", "Glossary");
+
+    private final CitationMatcher matcher = new CitationMatcher(List.of(DEPLOYMENT, DEPLOYMENT_GUIDE, ON_CALL, SHORT_ID));
+
+    @Test
+    void findsTitlesInOrderOfFirstCitation() {
+        List<ConfluencePage> cited = matcher.match("See [On-call rota] first, then the DEPLOYMENT page, then on-call rota again.");
+
+        assertEquals(List.of(ON_CALL, DEPLOYMENT), cited);
+    }
+
+    @Test
+    void dropsHitsNestedInALongerTitle() {
+        assertEquals(List.of(DEPLOYMENT_GUIDE), matcher.match("Follow the Deployment Guide."));
+        assertEquals(List.of(DEPLOYMENT_GUIDE, DEPLOYMENT), matcher.match("Deployment Guide, and Deployment."));
+    }
+
+    @Test
+    void requiresWordBoundaries() {
+        assertTrue(matcher.match("Redeployments and glossaryterms are not citations.").isEmpty());
+        assertEquals(List.of(SHORT_ID), matcher.match("(glossary)"));
+    }
+
+    @Test
+    void matchesIdsAndUrlsButNotShortIds() {
+        assertEquals(List.of(ON_CALL), matcher.match("Source: https://wiki.example.com/pages/100003"));
+        assertEquals(List.of(DEPLOYMENT_GUIDE), matcher.match("page 100002 has it"));
+        assertTrue(matcher.match("It took 42 minutes.").isEmpty());
+    }
+
+    @Test
+    void collapsesWhitespaceAndIgnoresCase() {
+        assertEquals(List.of(DEPLOYMENT_GUIDE), matcher.match("the deployment\n\n  GUIDE says"));
+    }
+
+    @Test
+    void streamedPiecesMatchLikeTheWholeText() {
+        String answer = "Per the Deployment Guide and the On-call rota (see Deployment), escalate to page 100001.";
+        List<ConfluencePage> whole = matcher.match(answer);
+
+        for (int split = 1; split < answer.length(); split++) {
+            CitationMatcher.Scan scan = matcher.scan();
+            scan.feed(answer.substring(0, split));
+            scan.feed(answer.substring(split));
+            assertEquals(whole, scan.finish(), "split at " + split);
+        }
+        CitationMatcher.Scan scan = matcher.scan();
+        for (char c : answer.toCharArray()) {
+            scan.feed(String.valueOf(c));
+        }
+        assertEquals(whole, scan.finish());
+    }
+
+    @Test
+    void citedSoFarIncludesAHitAwaitingItsEndBoundary() {
+        CitationMatcher.Scan scan = matcher.scan();
+        scan.feed("Read the Deployment");
+        assertEquals(List.of(DEPLOYMENT), scan.cited());
+
+        scan.feed(" Guide");
+        assertEquals(List.of(DEPLOYMENT_GUIDE), scan.finish());
+    }
+
+    private static ConfluencePage page(String id, String title) {
+        return new ConfluencePage(id, title, null, 0, "https://wiki.example.com/pages/" + id, "", 1);
+    }
+}
@@ -0,0 +1,93 @@
+package com.rag.mcp.service;
+
+import com.rag.mcp.model.ConfluencePage;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContextPackerTest {
+    private final ContextPacker packer = new ContextPacker();
+
+    @Test
+    void sendsEverythingWhenItFits() {
+        List<PageExcerpt> excerpts = List.of(excerpt("1", "Short page."), excerpt("2", "Another short page."));
+
+        ContextPacker.Packed packed = packer.pack(excerpts, 10_000, true);
+
+        assertEquals(excerpts, packed.excerpts());
+        assertEquals(0, packed.droppedTokens());
+        assertEquals(0, packed.truncatedPages());
+        assertEquals(TokenEstimator.estimate("Short page.") + TokenEstimator.estimate("Another short page.")
+                + 2 * ContextPacker.HEADER_TOKENS, packed.packedTokens());
+    }
+
+    @Test
+    void sharesTheBudgetByRankAndStaysWithinIt() {
+        List<PageExcerpt> excerpts = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            excerpts.add(excerpt(String.valueOf(i), sentences(400)));
+        }
+
+        ContextPacker.Packed packed = packer.pack(excerpts, 1_200, true);
+
+        assertTrue(packed.packedTokens() <= 1_200, "packed " + packed.packedTokens());
+        assertEquals(4, packed.excerpts().size());
+        assertEquals(4, packed.truncatedPages());
+        int first = TokenEstimator.estimate(packed.excerpts().get(0).text());
+        int last = TokenEstimator.estimate(packed.excerpts().get(3).text());
+        assertTrue(first > last, first + " <= " + last);
+        for (PageExcerpt excerpt : packed.excerpts()) {
+            assertTrue(excerpt.text().endsWith(". ..."), excerpt.text());
+        }
+    }
+
+    @Test
+    void settlesSmallPagesInFullBeforeCuttingLargeOnes() {
+        List<PageExcerpt> excerpts = List.of(excerpt("big", sentences(2_000)), excerpt("small", "Tiny note."));
+
+        ContextPacker.Packed packed = packer.pack(excerpts, 1_000, true);
+
+        assertEquals("Tiny note.", packed.excerpts().get(1).text());
+        assertEquals(1, packed.truncatedPages());
+        assertTrue(packed.packedTokens() <= 1_000);
+    }
+
+    @Test
+    void dropsTheLeastRelevantPagesWhenSharesGetTooSmall() {
+        List<PageExcerpt> excerpts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            excerpts.add(excerpt(String.valueOf(i), sentences(500)));
+        }
+
+        ContextPacker.Packed packed = packer.pack(excerpts, 600, true);
+
+        assertTrue(packed.droppedPages() > 0);
+        assertEquals(10, packed.excerpts().size() + packed.droppedPages());
+        assertEquals("0", packed.excerpts().get(0).page().getPageId());
+        assertTrue(packed.packedTokens() <= 600);
+    }
+
+    @Test
+    void cutsAtASentenceThenAWordBoundary() {
+        assertEquals("One two three. ...", ContextPacker.cut("One two three. Four five six seven eight.", 7));
+        assertEquals("Alpha beta gamma ...", ContextPacker.cut("Alpha beta gamma delta epsilon zeta eta", 8));
+        assertEquals("Fits.", ContextPacker.cut("Fits.", 10));
+    }
+
+    private static PageExcerpt excerpt(String id, String text) {
+        return new PageExcerpt(new ConfluencePage(id, "Page " + id, null, 0, "https://wiki/" + id, text, 1), text, 0);
+    }
+
+    // About the given number of tokens of short sentences.
+    private static String sentences(int tokens) {
+        StringBuilder text = new StringBuilder();
+        while (TokenEstimator.estimate(text) < tokens) {
+            text.append("The service restarts cleanly. ");
+        }
+        return text.toString().trim();
+    }
+}
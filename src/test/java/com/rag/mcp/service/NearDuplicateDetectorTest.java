@@ -0,0 +1,114 @@
+package com.rag.mcp.service;
+
+import com.rag.mcp.model.ConfluencePage;
+import com.rag.mcp.model.PageContent;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class NearDuplicateDetectorTest {
+    private final NearDuplicateDetector detector = new NearDuplicateDetector(0.8, 100);
+
+    @Test
+    void collapsesNearCopiesIntoThePageWithTheMostText() {
+        String runbook = words(200, 1);
+        ConfluencePage original = page("1", runbook, 1);
+        ConfluencePage copy = page("2", runbook.replaceFirst("^\\S+ \\S+", "changed intro") + " extra notes", 1);
+        ConfluencePage other = page("3", words(200, 2), 1);
+
+        NearDuplicateDetector.Result result = detector.deduplicate(List.of(original, copy, other));
+
+        assertEquals(List.of(copy, other), result.pages());
+        assertEquals(List.of(original), result.alternates().get("2"));
+        assertEquals(1, result.clusters());
+        assertEquals(1, result.pagesCollapsed());
+        assertTrue(result.estimatedTokensSaved() > 0);
+    }
+
+    @Test
+    void keepsDistinctPagesAndShortStubs() {
+        ConfluencePage stubA = page("1", "See the child pages.", 1);
+        ConfluencePage stubB = page("2", "See the child pages.", 1);
+        ConfluencePage a = page("3", words(200, 3), 1);
+        ConfluencePage b = page("4", words(200, 4), 1);
+
+        NearDuplicateDetector.Result result = detector.deduplicate(List.of(stubA, stubB, a, b));
+
+        assertEquals(List.of(stubA, stubB, a, b), result.pages());
+        assertTrue(result.alternates().isEmpty());
+        assertEquals(0, result.clusters());
+    }
+
+    @Test
+    void clustersAreTransitive() {
+        // Each copy grows the last by 50 words: neighbours overlap by about 0.86, the ends by about 0.75.
+        String a = words(300, 5);
+        String b = a + " " + words(50, 6);
+        String c = b + " " + words(50, 7);
+        assertTrue(NearDuplicateDetector.similarity(NearDuplicateDetector.compute(a), NearDuplicateDetector.compute(c)) < 0.8);
+
+        NearDuplicateDetector.Result result = detector.deduplicate(List.of(page("1", a, 1), page("2", b, 1), page("3", c, 1)));
+
+        assertEquals(List.of("3"), result.pages().stream().map(ConfluencePage::getPageId).toList());
+        assertEquals(List.of("1", "2"), result.alternates().get("3").stream().map(ConfluencePage::getPageId).toList());
+    }
+
+    @Test
+    void aPageReachedTwiceIsNotItsOwnAlternate() {
+        String text = words(200, 8);
+        ConfluencePage first = page("1", text, 1);
+        ConfluencePage again = page("1", text, 1);
+
+        NearDuplicateDetector.Result result = detector.deduplicate(List.of(first, again));
+
+        assertEquals(List.of(first), result.pages());
+        assertTrue(result.alternates().isEmpty());
+        assertEquals(1, result.pagesCollapsed());
+    }
+
+    @Test
+    void cachedSignaturesDoNotDecodeStoredText() {
+        String text = words(200, 9);
+        AtomicInteger decodes = new AtomicInteger();
+        PageContent stored = new PageContent() {
+            @Override
+            public String text() {
+                decodes.incrementAndGet();
+                return text;
+            }
+
+            @Override
+            public int contentHash() {
+                return text.hashCode();
+            }
+        };
+
+        for (int run = 0; run < 3; run++) {
+            detector.deduplicate(List.of(new ConfluencePage("1", "Stored", null, 0, "https://wiki/1", stored, 4),
+                    new ConfluencePage("2", "Unversioned", null, 0, "https://wiki/2", stored, 0)));
+        }
+
+        assertEquals(2, decodes.get());
+    }
+
+    private static ConfluencePage page(String id, String content, int version) {
+        return new ConfluencePage(id, "Page " + id, null, 0, "https://wiki/pages/" + id, content, version);
+    }
+
+    // Random prose from a small vocabulary, so separate seeds share words but not phrases.
+    private static String words(int count, long seed) {
+        String[] vocabulary = {"deploy", "service", "cluster", "restart", "config", "release", "branch", "alert",
+                "owner", "backup", "database", "queue", "latency", "rollback", "ticket", "review", "metric", "token"};
+        Random random = new Random(seed);
+        StringBuilder text = new StringBuilder();
+        for (int i = 0; i < count; i++) {
+            text.append(i == 0 ? "" : " ").append(vocabulary[random.nextInt(vocabulary.length)]);
+        }
+        return text.toString();
+    }
+}
@@ -0,0 +1,107 @@
+package com.rag.mcp.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class SingleFlightTest {
+    private final SingleFlight<String, String> flight = new SingleFlight<>();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    @Test
+    void concurrentCallsForOneKeyShareOneLoad() throws Exception {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.execute("page", () -> load(source));
+        CompletableFuture<String> second = flight.execute("page", () -> load(new CompletableFuture<>()));
+        CompletableFuture<String> other = flight.execute("other", () -> load(CompletableFuture.completedFuture("x")));
+
+        source.complete("body");
+
+        assertEquals("body", SingleFlight.await(first));
+        assertEquals("body", SingleFlight.await(second));
+        assertEquals("x", SingleFlight.await(other));
+        assertEquals(2, loads.get());
+        assertEquals(1L, flight.stats().get("coalesced"));
+        assertEquals(0, flight.stats().get("inFlight"));
+    }
+
+    @Test
+    void finishedCallsAreNotCached() throws Exception {
+        assertEquals("a", SingleFlight.await(flight.execute("k", () -> load(CompletableFuture.completedFuture("a")))));
+        assertEquals("b", SingleFlight.await(flight.execute("k", () -> load(CompletableFuture.completedFuture("b")))));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void failuresReachEveryCallerUnwrapped() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.execute("k", () -> load(source));
+        CompletableFuture<String> second = flight.execute("k", () -> load(source));
+
+        source.completeExceptionally(new IOException("boom"));
+
+        assertEquals("boom", assertThrows(IOException.class, () -> SingleFlight.await(first)).getMessage());
+        assertEquals("boom", assertThrows(IOException.class, () -> SingleFlight.await(second)).getMessage());
+        CompletableFuture<String> thrown = flight.execute("k", () -> {
+            throw new IllegalStateException("loader failed");
+        });
+        assertThrows(IllegalStateException.class, () -> SingleFlight.await(thrown));
+    }
+
+    @Test
+    void cancellingOneCallerLeavesTheLoadRunning() throws Exception {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.execute("k", () -> load(source));
+        CompletableFuture<String> second = flight.execute("k", () -> load(source));
+
+        first.cancel(true);
+        source.complete("body");
+
+        assertFalse(source.isCancelled());
+        assertEquals("body", SingleFlight.await(second));
+    }
+
+    @Test
+    void theLoadIsCancelledOnceEveryCallerGaveUp() throws Exception {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.execute("k", () -> load(source));
+        CompletableFuture<String> second = flight.execute("k", () -> load(source));
+
+        first.cancel(true);
+        second.cancel(true);
+
+        assertTrue(source.isCancelled());
+        assertEquals(1L, flight.stats().get("abandoned"));
+        assertEquals("fresh", SingleFlight.await(flight.execute("k", () -> load(CompletableFuture.completedFuture("fresh")))));
+        assertEquals(2, loads.get());
+    }
+
+    @Test
+    void aCallerThatTimesOutGivesUpItsView() {
+        CompletableFuture<String> source = new CompletableFuture<>();
+        CompletableFuture<String> first = flight.execute("k", () -> load(source));
+        CompletableFuture<String> second = flight.execute("k", () -> load(source));
+
+        assertThrows(TimeoutException.class, () -> SingleFlight.await(first, Duration.ofMillis(20)));
+        assertTrue(first.isCancelled());
+        assertFalse(source.isCancelled());
+
+        assertThrows(TimeoutException.class, () -> SingleFlight.await(second, Duration.ofMillis(20)));
+        assertTrue(source.isCancelled());
+        assertEquals(0, flight.stats().get("inFlight"));
+    }
+
+    private CompletableFuture<String> load(CompletableFuture<String> result) {
+        loads.incrementAndGet();
+        return result;
+    }
+}
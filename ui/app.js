@@ -42,7 +42,7 @@ function updateRemoveButtons() {
 // Initialize remove buttons
 updateRemoveButtons();
 
-submitBtn.addEventListener('click', () => executeRequest('/api/query', true));
+submitBtn.addEventListener('click', () => executeRequest('/api/query/stream', true));
 extractBtn.addEventListener('click', () => executeRequest('/api/extract', false));
 
 async function executeRequest(endpoint, requireQuery) {
@@ -83,11 +83,14 @@ async function executeRequest(endpoint, requireQuery) {
 
     const res = await fetch(endpoint, {
       method: 'POST',
-      headers: { 'Content-Type': 'application/json' },
+      headers: { 'Content-Type': 'application/json', 'Accept': 'application/x-ndjson, text/event-stream, application/json' },
       body: JSON.stringify(payload)
     });
 
-    const data = await res.json();
+    const contentType = res.headers.get('Content-Type') || '';
+    const data = contentType.startsWith('text/event-stream') ? await readEventStream(res)
+      : contentType.startsWith('application/x-ndjson') ? await readNdjsonStream(res)
+      : await res.json();
 
     if (data.status === 'error') {
       showError(data.message || 'Unknown error');
@@ -103,11 +106,106 @@ async function executeRequest(endpoint, requireQuery) {
   }
 }
 
+// Reads the SSE response of /api/query/stream: progress events update the loading text,
+// delta events grow the answer in place, and the done/error event carries the final payload.
+async function readEventStream(res) {
+  const reader = res.body.getReader();
+  const decoder = new TextDecoder();
+  let buffer = '';
+  let answer = '';
+  let result = { status: 'error', message: 'Stream ended unexpectedly' };
+
+  while (true) {
+    const { value, done } = await reader.read();
+    if (done) break;
+    buffer += decoder.decode(value, { stream: true });
+
+    let boundary;
+    while ((boundary = buffer.indexOf('\n\n')) >= 0) {
+      const block = buffer.slice(0, boundary);
+      buffer = buffer.slice(boundary + 2);
+
+      let event = 'message';
+      let payload = '';
+      for (const line of block.split('\n')) {
+        if (line.startsWith('event:')) event = line.slice(6).trim();
+        else if (line.startsWith('data:')) payload += line.slice(5).trim();
+      }
+      if (!payload) continue;
+      const data = JSON.parse(payload);
+
+      if (event === 'progress') {
+        setLoadingText(progressText(data));
+      } else if (event === 'delta') {
+        answer += data.text;
+        renderPartialAnswer(answer);
+      } else if (event === 'done' || event === 'error') {
+        result = data;
+      }
+    }
+  }
+  return result;
+}
+
+// Reads the NDJSON response of /api/extract: one page per line as it is crawled, then a summary
+// (or error) line that has a status field.
+async function readNdjsonStream(res) {
+  const reader = res.body.getReader();
+  const decoder = new TextDecoder();
+  let buffer = '';
+  const pages = [];
+  let result = { status: 'error', message: 'Stream ended unexpectedly' };
+
+  while (true) {
+    const { value, done } = await reader.read();
+    if (done) break;
+    buffer += decoder.decode(value, { stream: true });
+
+    let newline;
+    while ((newline = buffer.indexOf('\n')) >= 0) {
+      const line = buffer.slice(0, newline).trim();
+      buffer = buffer.slice(newline + 1);
+      if (!line) continue;
+      const data = JSON.parse(line);
+      if (data.status) {
+        result = data;
+      } else {
+        pages.push(data);
+        setLoadingText(`Fetched ${pages.length} pages\u2026`);
+      }
+    }
+  }
+  return result.status === 'error' ? result : { ...result, pages };
+}
+
+function progressText(data) {
+  if (data.stage === 'crawl') return 'Fetching Confluence pages\u2026';
+  if (data.stage === 'retrieval') return `Selecting context from ${data.retrievedPageCount} pages\u2026`;
+  if (data.stage === 'map') return `Reading pages in batches: ${data.completedBatches} of ${data.batches} done\u2026`;
+  if (data.stage === 'merge') return `Merging findings: ${data.completedBatches} of ${data.batches} done\u2026`;
+  if (data.stage === 'generation') return `Generating answer with ${data.provider} from ${data.contextPageCount} pages\u2026`;
+  return 'Processing\u2026';
+}
+
+function setLoadingText(text) {
+  loadingArea.querySelector('p').textContent = text;
+}
+
+function renderPartialAnswer(answer) {
+  responseArea.style.display = 'block';
+  responseContent.innerHTML = `
+    <div class="status-bar success"><span class="dot"></span> Generating&hellip;</div>
+    <div class="answer-box">${renderMarkdown(answer, [])}</div>`;
+}
+
 function setLoading(on) {
   submitBtn.disabled = on;
   extractBtn.disabled = on;
   loadingArea.style.display = on ? 'block' : 'none';
-  if (on) responseArea.style.display = 'none';
+  if (on) {
+    responseArea.style.display = 'none';
+    setLoadingText('Fetching data and processing\u2026');
+  }
 }
 
 function showError(msg) {